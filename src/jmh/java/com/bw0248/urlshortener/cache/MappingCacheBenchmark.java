@@ -0,0 +1,72 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Lookups through MappingCache as done by @Cacheable on ShortenerService::getMappedLongUrl,
+ *  for cache sizes smaller and larger than the set of requested short urls (i.e. hit and eviction heavy workloads).
+ *  The loader simulates a storage lookup without I/O, so only cache overhead is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MappingCacheBenchmark {
+    private static final int KEYS = 100_000;
+
+    @Param({"1000", "100000"})
+    private long maxSize;
+
+    private MappingCache cache;
+    private String[] shortUrls;
+    private String[] unknownShortUrls;
+
+    @Setup
+    public void setup() {
+        val config = new MappingCacheConfig();
+        config.setMaxSize(maxSize);
+        config.setExpireAfterAccess(Duration.ofHours(1));
+        config.setExpireAfterWrite(Duration.ZERO);
+        config.setNegativeTtl(Duration.ofSeconds(30));
+        config.setNegativeMaxSize(maxSize);
+        cache = new MappingCache(config);
+        shortUrls = new String[KEYS];
+        unknownShortUrls = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            shortUrls[i] = "s" + i;
+            unknownShortUrls[i] = "u" + i;
+            cache.put(shortUrls[i], "https://example.com/" + i);
+        }
+    }
+
+    @Benchmark
+    public Object knownMapping() {
+        val shortUrl = shortUrls[ThreadLocalRandom.current().nextInt(KEYS)];
+        return cache.get(shortUrl, () -> "https://example.com/" + shortUrl);
+    }
+
+    @Benchmark
+    public Object unknownMapping() {
+        return cache.get(unknownShortUrls[ThreadLocalRandom.current().nextInt(KEYS)], () -> null);
+    }
+}
@@ -0,0 +1,60 @@
+package com.bw0248.urlshortener.mapping;
+
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Encoding and decoding of sequence ids across alphabets (power of two and other bases) and id magnitudes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequenceMappingBenchmark {
+    private static final Map<String, SequenceMappingConfig> ALPHABETS = Map.of(
+            "base8", SequenceMappingConfig.base8(),
+            "base36", SequenceMappingConfig.base36(),
+            "base64", SequenceMappingConfig.withAlphabet(
+                    "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_")
+    );
+
+    @Param({"base8", "base36", "base64"})
+    private String alphabet;
+
+    @Param({"1000", "1000000000", "1000000000000000"})
+    private long sequenceId;
+
+    private SequenceMappingStrategy strategy;
+    private String shortUrl;
+
+    @Setup
+    public void setup() {
+        strategy = new SequenceMappingStrategy(ALPHABETS.get(alphabet));
+        shortUrl = strategy.encode(sequenceId);
+    }
+
+    @Benchmark
+    public String map() {
+        return strategy.map("https://example.com", sequenceId);
+    }
+
+    @Benchmark
+    public long decode() {
+        return strategy.decode(shortUrl);
+    }
+}
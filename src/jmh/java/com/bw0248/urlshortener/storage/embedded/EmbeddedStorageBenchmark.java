@@ -0,0 +1,78 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import com.bw0248.urlshortener.config.EmbeddedStorageConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ *  Lookups of EmbeddedUrlStorage, i.e. what a redirect costs on a cache miss without mongo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddedStorageBenchmark {
+    @Param({"1000000"})
+    private int mappings;
+
+    private Path directory;
+    private EmbeddedUrlStorage storage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("embedded-storage-benchmark");
+        val config = new EmbeddedStorageConfig();
+        config.setDirectory(directory.toString());
+        config.setRegionSize(64 * 1024 * 1024);
+        config.setIdReservationSize(1000);
+        config.setCompactionThreshold(0.5);
+        storage = new EmbeddedUrlStorage(config, new ShortenerMetrics(new SimpleMeterRegistry()));
+        for (int i = 0; i < mappings; i++) {
+            storage.insertMapping(new UrlMapping("https://example.com/some/path/" + i, "s" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> findKnownShortUrl() {
+        return storage.findMappingByShortUrl("s" + ThreadLocalRandom.current().nextInt(mappings));
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> findUnknownShortUrl() {
+        return storage.findMappingByShortUrl("u" + ThreadLocalRandom.current().nextInt(mappings));
+    }
+}
@@ -0,0 +1,64 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Conversion between UrlMapping and UrlMappingDocument done for every insert and storage lookup,
+ *  with and without dictionary compression of long urls
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentConversionBenchmark {
+    @Param({
+            "https://example.com",
+            "https://shop.example.com/products?utm_source=newsletter&utm_medium=email&utm_campaign=spring&ref=a1b2c3"
+    })
+    private String longUrl;
+
+    @Param({"false", "true"})
+    private boolean compressed;
+
+    private UrlCodec codec;
+    private UrlMapping mapping;
+    private UrlMappingDocument document;
+
+    @Setup
+    public void setup() {
+        val config = new UrlCodecConfig();
+        config.setEnabled(compressed);
+        codec = new UrlCodec(config, Optional.empty());
+        mapping = new UrlMapping(longUrl, "abc123");
+        document = UrlMappingDocument.from(mapping, codec);
+    }
+
+    @Benchmark
+    public UrlMappingDocument toDocument() {
+        return UrlMappingDocument.from(mapping, codec);
+    }
+
+    @Benchmark
+    public UrlMapping toUrlMapping() {
+        return MongoUrlStorage.toUrlMapping(document, codec);
+    }
+}
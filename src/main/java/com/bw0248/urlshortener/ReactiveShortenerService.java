@@ -0,0 +1,137 @@
+package com.bw0248.urlshortener;
+
+import com.bw0248.urlshortener.cache.MappingCache;
+import com.bw0248.urlshortener.cache.MappingExpiry;
+import com.bw0248.urlshortener.config.MappingStrategyConfig;
+import com.bw0248.urlshortener.config.ServiceConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.ReactiveUrlStorage;
+import io.micrometer.core.instrument.Timer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ *  Reactive counterpart of ShortenerService for profile reactive - no method blocks the calling thread.
+ *  Failed inserts are retried with a backoff timer instead of sleeping, so waiting retries do not occupy threads.
+ *  Uses ReactiveUrlStorage directly, the decorators of the blocking UrlStorage (see StorageConfig) do not apply.
+ */
+@Service
+@Profile("reactive")
+@Slf4j
+public class ReactiveShortenerService {
+    private static final Duration RETRY_BACKOFF = Duration.ofMillis(100);
+
+    private final ReactiveUrlStorage storage;
+    private final UrlMappingStrategy mappingStrategy;
+    private final ServiceConfig config;
+    private final MappingCache mappingCache;
+    private final MappingExpiry expiry;
+    private final ShortenerMetrics metrics;
+    private final RetryBackoffSpec storageErrorRetry;
+
+    @Autowired
+    public ReactiveShortenerService(
+            final ReactiveUrlStorage storage,
+            @Qualifier(MappingStrategyConfig.ACTIVE) final UrlMappingStrategy mappingStrategy,
+            final ServiceConfig config,
+            final MappingCache mappingCache,
+            final MappingExpiry expiry,
+            final ShortenerMetrics metrics) {
+        this.storage = storage;
+        this.mappingStrategy = mappingStrategy;
+        this.config = config;
+        this.mappingCache = mappingCache;
+        this.expiry = expiry;
+        this.metrics = metrics;
+        // in case of a general storage error e.g. DB not reachable
+        this.storageErrorRetry = Retry
+                .backoff(config.getMaxRetries(), RETRY_BACKOFF)
+                .filter(StorageException.class::isInstance)
+                .doBeforeRetry(signal -> {
+                    log.warn("storage error when inserting UrlMapping");
+                    metrics.storageRetry();
+                })
+                .onRetryExhaustedThrow((spec, signal) -> {
+                    log.error("not able to insert UrlMapping into storage");
+                    metrics.storageRetriesExhausted();
+                    return signal.failure();
+                });
+    }
+
+    /**
+     * Shorten supplied url with configured mapping strategy and insert into storage.
+     * StorageExceptions are retried according to config::maxRetries, the sequence id is reserved only once.
+     * If config::deduplicate is set, an existing mapping for url is returned instead of creating a new one.
+     * Expiring mappings are never deduplicated.
+     *
+     * @param url
+     * @param expiresAt null if the mapping does not expire
+     * @return Mono of stored UrlMapping, empty if url could not be shortened
+     */
+    public Mono<UrlMapping> shorten(@NonNull final String url, final Instant expiresAt) {
+        val sequence = mappingStrategy.usesSequence()
+                ? Mono.defer(() -> {
+                    val allocation = Timer.start();
+                    return storage.nextUniqueId().doOnSuccess(id -> metrics.sequenceAllocated(allocation));
+                })
+                : Mono.just(UrlMappingStrategy.NO_SEQUENCE);
+        val created = sequence
+                .flatMap(sequenceId -> insert(url, sequenceId, expiresAt, 1))
+                // see ShortenerService::shorten
+                .doOnNext(mapping -> mappingCache.evict(mapping.getShortUrl()))
+                .onErrorResume(StorageException.class, e -> Mono.empty());
+        return config.isDeduplicate() && expiresAt == null
+                ? storage.findMappingByLongUrl(url).filter(mapping -> mapping.getExpiresAt() == null).switchIfEmpty(created)
+                : created;
+    }
+
+    public Mono<UrlMapping> shorten(@NonNull final String url) {
+        return shorten(url, null);
+    }
+
+    // short urls rejected as duplicate are replaced according to UrlMappingStrategy::retryCollision
+    private Mono<UrlMapping> insert(final String url, final long sequenceId, final Instant expiresAt, final int attempt) {
+        val mapping = new UrlMapping(url, mappingStrategy.map(url, sequenceId), expiresAt);
+        return Mono.defer(() -> storage.insertMapping(mapping))
+                .retryWhen(storageErrorRetry)
+                .onErrorResume(DuplicateShortUrlException.class, e ->
+                        mappingStrategy.retryCollision(mapping.getShortUrl(), attempt)
+                                ? insert(url, sequenceId, expiresAt, attempt + 1)
+                                : Mono.error(e));
+    }
+
+    /**
+     * Retrieve corresponding longUrl for supplied shortUrl, using the same MappingCache as ShortenerService.
+     * Unlike the blocking path, concurrent lookups of the same uncached shortUrl are not coalesced.
+     * Expired mappings are reported as empty, see ShortenerService::getMappedLongUrl.
+     *
+     * @param shortUrl
+     * @return Mono of corresponding longUrl, empty if unknown
+     */
+    public Mono<String> getMappedLongUrl(final String shortUrl) {
+        val cached = mappingCache.get(shortUrl);
+        if (cached != null) {
+            return Mono.justOrEmpty((String) cached.get());
+        }
+        return storage.findMappingByShortUrl(shortUrl)
+                .filter(expiry::track)
+                .map(UrlMapping::getLongUrl)
+                .doOnNext(longUrl -> mappingCache.put(shortUrl, longUrl))
+                .switchIfEmpty(Mono.fromRunnable(() -> mappingCache.put(shortUrl, null)));
+    }
+}
@@ -1,12 +1,18 @@
 package com.bw0248.urlshortener;
 
+import com.bw0248.urlshortener.cache.MappingCache;
+import com.bw0248.urlshortener.cache.MappingExpiry;
+import com.bw0248.urlshortener.config.MappingStrategyConfig;
 import com.bw0248.urlshortener.config.ServiceConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
 import com.bw0248.urlshortener.exception.StorageException;
 import com.bw0248.urlshortener.mapping.UrlMapping;
 import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
 import com.bw0248.urlshortener.storage.UrlStorage;
-import dev.failsafe.Failsafe;
-import dev.failsafe.RetryPolicy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Timer;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
@@ -15,9 +21,13 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -25,63 +35,164 @@ public class ShortenerService {
     private final UrlStorage storage;
     private final UrlMappingStrategy mappingStrategy;
     private final ServiceConfig config;
+    private final ShortenerMetrics metrics;
+    private final MappingExpiry expiry;
+    private final MappingCache cache;
+    private final Optional<Cache<String, UrlMapping>> shortenedUrls;     // longUrl -> mapping, only for deduplication
 
     @Autowired
     public ShortenerService(
             final UrlStorage storage,
-            @Qualifier("SequenceMapping") final UrlMappingStrategy mappingStrategy,
-            final ServiceConfig config) {
+            @Qualifier(MappingStrategyConfig.ACTIVE) final UrlMappingStrategy mappingStrategy,
+            final ServiceConfig config,
+            final ShortenerMetrics metrics,
+            final MappingExpiry expiry,
+            final MappingCache cache) {
         this.storage = storage;
         this.mappingStrategy = mappingStrategy;
         this.config = config;
+        this.metrics = metrics;
+        this.expiry = expiry;
+        this.cache = cache;
+        this.shortenedUrls = config.isDeduplicate()
+                ? Optional.of(Caffeine.newBuilder().maximumSize(config.getDedupCacheSize()).build())
+                : Optional.empty();
     }
 
-    public List<UrlMapping> getAllMappings() {
-        return storage.findAllMappings();
+    public List<UrlMapping> getMappings(final String afterShortUrl, final int limit) {
+        return storage.findMappings(afterShortUrl, limit);
+    }
+
+    /**
+     * @return all mappings backed by a storage cursor - has to be closed by the caller
+     */
+    public Stream<UrlMapping> streamAllMappings() {
+        return storage.streamAllMappings();
     }
 
     /**
      * Shorten supplied url with configured mapping strategy and insert into storage.
-     * Potential StorageExceptions are handled according to config::maxRetries.
+     * Failed storage calls are retried by the storage (see ResilientUrlStorage), a StorageException means they
+     * were retried without success or rejected right away.
+     *
+     * Mapping strategies that might produce collisions (e.g. RandomMappingStrategy) decide whether a short url
+     * rejected as duplicate is replaced by another one (see UrlMappingStrategy::retryCollision).
+     *
+     * If config::deduplicate is set, an existing mapping for url is returned instead of creating a new one.
+     * Existing mappings are looked up in a bounded in-memory cache first, then in storage.
+     * Concurrent requests for the same new url might still create multiple mappings.
+     * Expiring mappings are never deduplicated.
      *
-     * For possible future implementations of mapping strategies that might produce collisions (e.g. randomized mapping)
-     * an additional policy for DuplicateKeyErrors can be implemented.
+     * The new short url is evicted from the MappingCache, it might have been remembered as unknown
+     * if it was looked up before it existed (sequence codes are predictable, e.g. for scanners).
      *
      * @param url
+     * @param expiresAt null if the mapping does not expire
      * @return Optional of UrlMapping in case of success, otherwise Optional::empty
+     * @throws StorageException if storage is not available
      */
+    public Optional<UrlMapping> shorten(@NonNull final String url, final Instant expiresAt) {
+        if (config.isDeduplicate() && expiresAt == null) {
+            val existing = findExistingMapping(url);
+            if (existing.isPresent()) {
+                return existing;
+            }
+        }
+
+        val mapping = insertIntoStorage(url, nextSequenceId(), expiresAt);
+        mapping.ifPresent(created -> cache.evict(created.getShortUrl()));
+        if (expiresAt == null) {
+            shortenedUrls.ifPresent(cache -> mapping.ifPresent(m -> cache.put(url, m)));
+        }
+        return mapping;
+    }
+
     public Optional<UrlMapping> shorten(@NonNull final String url) {
-        // in case of a general storage error e.g. DB not reachable
-        RetryPolicy<Optional<UrlMapping>> storageErrorPolicy = RetryPolicy
-                .<Optional<UrlMapping>>builder()
-                .withMaxRetries(config.getMaxRetries())
-                .handle(StorageException.class)
-                .withDelay(Duration.ofMillis(100))
-                .onFailedAttempt(e -> log.warn("storage error when inserting UrlMapping"))
-                .onRetriesExceeded(e -> log.error("not able to insert UrlMapping into storage"))
-                .build();
+        return shorten(url, null);
+    }
 
-        val sequenceId = storage.nextUniqueId();
-        return Failsafe
-                .with(storageErrorPolicy)
-                .get(() -> insertIntoStorage(url, sequenceId));
+    /**
+     * Shorten all supplied urls with a single reservation of sequence ids and a single bulk insert.
+     * There are no retries for batches, failing urls are reported as Optional::empty.
+     *
+     * @param urls
+     * @param expiries per supplied url (same order) its expiresAt, null entries for mappings that do not expire
+     * @return per supplied url (same order) Optional of UrlMapping in case of success, otherwise Optional::empty
+     */
+    public List<Optional<UrlMapping>> shortenAll(@NonNull final List<String> urls, @NonNull final List<Instant> expiries) {
+        if (urls.isEmpty()) {
+            return List.of();
+        }
+        val usesSequence = mappingStrategy.usesSequence();
+        val firstSequenceId = usesSequence ? storage.reserveUniqueIds(urls.size()) : UrlMappingStrategy.NO_SEQUENCE;
+        val mappings = IntStream.range(0, urls.size())
+                .mapToObj(i -> new UrlMapping(
+                        urls.get(i),
+                        mappingStrategy.map(urls.get(i), usesSequence ? firstSequenceId + i : firstSequenceId),
+                        expiries.get(i)))
+                .collect(Collectors.toList());
+        try {
+            val inserted = storage.insertMappings(mappings);
+            inserted.forEach(mapping -> mapping.ifPresent(created -> cache.evict(created.getShortUrl())));
+            return inserted;
+        } catch (StorageException e) {
+            log.error("not able to insert batch of {} UrlMappings into storage", mappings.size());
+            return Collections.nCopies(mappings.size(), Optional.empty());
+        }
+    }
+
+    public List<Optional<UrlMapping>> shortenAll(@NonNull final List<String> urls) {
+        return shortenAll(urls, Collections.nCopies(urls.size(), null));
     }
 
     /**
      * Retrieve corresponding longUrl from storage for supplied shortUrl
-     * Mappings are cached in a basic Spring-Boot cache for now which defaults to a ConcurrentHashMap with max entries of 32
+     * Mappings are cached in a bounded MappingCache (see CacheConfig), unknown shortUrls are cached for a short time.
+     * Concurrent lookups of the same uncached shortUrl are coalesced into a single storage lookup (sync = true).
+     * Expiring mappings are evicted from the cache at their deadline, expired ones are reported as empty
+     * (see MappingExpiry::isExpired to tell them apart from unknown ones).
      *
      * @param shortUrl
      * @return Optional containing corresponding longUrl if present
      */
-    @Cacheable("mappings")
+    @Cacheable(value = MappingCache.NAME, sync = true)
     public Optional<String> getMappedLongUrl(final String shortUrl) {
         return storage.findMappingByShortUrl(shortUrl)
+                .filter(expiry::track)
                 .map(UrlMapping::getLongUrl);
     }
 
-    private Optional<UrlMapping> insertIntoStorage(final String longUrl, final long sequenceId) {
-        val shortUrl = mappingStrategy.map(longUrl, sequenceId);
-        return storage.insertMapping(new UrlMapping(longUrl, shortUrl));
+    private Optional<UrlMapping> findExistingMapping(final String longUrl) {
+        val cached = shortenedUrls.map(cache -> cache.getIfPresent(longUrl));
+        if (cached.isPresent()) {
+            return cached;
+        }
+        val stored = storage.findMappingByLongUrl(longUrl)
+                .filter(mapping -> mapping.getExpiresAt() == null);
+        shortenedUrls.ifPresent(cache -> stored.ifPresent(m -> cache.put(longUrl, m)));
+        return stored;
+    }
+
+    private long nextSequenceId() {
+        if (!mappingStrategy.usesSequence()) {
+            return UrlMappingStrategy.NO_SEQUENCE;
+        }
+        val allocation = Timer.start();
+        val sequenceId = storage.nextUniqueId();
+        metrics.sequenceAllocated(allocation);
+        return sequenceId;
+    }
+
+    private Optional<UrlMapping> insertIntoStorage(final String longUrl, final long sequenceId, final Instant expiresAt) {
+        for (int attempt = 1; ; attempt++) {
+            val shortUrl = mappingStrategy.map(longUrl, sequenceId);
+            try {
+                return storage.insertMapping(new UrlMapping(longUrl, shortUrl, expiresAt));
+            } catch (DuplicateShortUrlException e) {
+                if (!mappingStrategy.retryCollision(shortUrl, attempt)) {
+                    throw e;
+                }
+            }
+        }
     }
 }
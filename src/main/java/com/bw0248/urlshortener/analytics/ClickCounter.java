@@ -0,0 +1,135 @@
+package com.bw0248.urlshortener.analytics;
+
+import com.bw0248.urlshortener.config.ClickAnalyticsConfig;
+import com.bw0248.urlshortener.storage.ClickStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Clicks per short url, counted in memory on every redirect and added to ClickStorage periodically.
+ *
+ *  Each short url has its own LongAdder, so concurrent redirects of the same hot short url increment
+ *  different cells instead of contending on a lock or a single atomic. Counts are drained with sumThenReset
+ *  and written in batches of flush-batch-size. Short urls without clicks since the last flush are dropped
+ *  from memory, at most max-keys short urls are counted between flushes - clicks of further ones are dropped.
+ *  Counters of dropped short urls are drained once more with the next flush, so clicks recorded by threads
+ *  that looked them up right before are not lost. Counts of failed writes are added back and retried with the next flush.
+ *
+ *  While a batch is written its clicks are neither reported as pending nor as stored.
+ */
+@Slf4j
+@Component
+public class ClickCounter {
+    private final ClickStorage storage;
+    private final ClickAnalyticsConfig config;
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private Map<String, LongAdder> retired = Map.of();     // guarded by flush
+    private final Counter droppedClicks;
+    private final Counter flushedClicks;
+    private final Timer flushes;
+
+    @Autowired
+    public ClickCounter(final ClickStorage storage, final ClickAnalyticsConfig config, final MeterRegistry meterRegistry) {
+        this.storage = storage;
+        this.config = config;
+        this.droppedClicks = Counter.builder("shortener.clicks.dropped")
+                .description("clicks not counted as max-keys short urls were counted already")
+                .register(meterRegistry);
+        this.flushedClicks = Counter.builder("shortener.clicks.flushed")
+                .description("clicks added to storage")
+                .register(meterRegistry);
+        this.flushes = Timer.builder("shortener.clicks.flush")
+                .register(meterRegistry);
+        Gauge.builder("shortener.clicks.tracked", counters, Map::size)
+                .description("short urls with clicks counted in memory")
+                .register(meterRegistry);
+    }
+
+    public void record(final String shortUrl) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        var counter = counters.get(shortUrl);
+        if (counter == null) {
+            if (counters.size() >= config.getMaxKeys()) {
+                droppedClicks.increment();
+                return;
+            }
+            counter = counters.computeIfAbsent(shortUrl, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * @param shortUrl
+     * @return stored clicks of shortUrl plus clicks not flushed yet
+     */
+    public long clicks(final String shortUrl) {
+        val pending = counters.get(shortUrl);
+        return storage.clickCount(shortUrl) + (pending == null ? 0 : pending.sum());
+    }
+
+    @Scheduled(
+            initialDelayString = "${click-analytics.flush-interval-ms}",
+            fixedDelayString = "${click-analytics.flush-interval-ms}")
+    @PreDestroy
+    public synchronized void flush() {
+        val sample = Timer.start();
+        val batch = new HashMap<String, Long>();
+        // clicks recorded by threads that looked up short urls right before they were dropped by the previous flush
+        retired.forEach((shortUrl, counter) -> add(batch, shortUrl, counter.sumThenReset()));
+        val dropped = new HashMap<String, LongAdder>();
+        for (val entry : counters.entrySet()) {
+            val count = entry.getValue().sumThenReset();
+            if (count == 0 && counters.remove(entry.getKey(), entry.getValue())) {
+                dropped.put(entry.getKey(), entry.getValue());
+            }
+            add(batch, entry.getKey(), count);
+        }
+        retired = dropped;
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        sample.stop(flushes);
+    }
+
+    private void add(final Map<String, Long> batch, final String shortUrl, final long count) {
+        if (count == 0) {
+            return;
+        }
+        batch.merge(shortUrl, count, Long::sum);
+        if (batch.size() >= config.getFlushBatchSize()) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(final Map<String, Long> batch) {
+        Map<String, Long> failed;
+        try {
+            failed = storage.addClicks(batch);
+        } catch (RuntimeException e) {
+            log.warn("could not add clicks of {} short urls to storage, retrying with next flush", batch.size(), e);
+            failed = batch;
+        }
+        flushedClicks.increment(sum(batch) - sum(failed));
+        failed.forEach((shortUrl, count) -> counters.computeIfAbsent(shortUrl, key -> new LongAdder()).add(count));
+    }
+
+    private static long sum(final Map<String, Long> clicks) {
+        return clicks.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -0,0 +1,120 @@
+package com.bw0248.urlshortener.api;
+
+import com.bw0248.urlshortener.ReactiveShortenerService;
+import com.bw0248.urlshortener.analytics.ClickCounter;
+import com.bw0248.urlshortener.api.dto.ShortenRequest;
+import com.bw0248.urlshortener.api.dto.ShortenResponse;
+import com.bw0248.urlshortener.cache.HotKeyTracker;
+import com.bw0248.urlshortener.cache.MappingExpiry;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+
+/**
+ *  WebFlux endpoints for profile reactive, replaces ShortenerController.
+ *  Only health, shortening and redirects are served - admin endpoints (/api/all, /api/export, /api/hot-keys),
+ *  click counts and batches are available with the default servlet stack.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveShortenerController {
+    private final ReactiveShortenerService service;
+    private final ShortenerMetrics metrics;
+    private final RedirectResponseCache redirects;
+    private final ApplicationAvailability availability;
+    private final ClickCounter clicks;
+    private final HotKeyTracker hotKeys;
+    private final MappingExpiry expiry;
+
+    @Autowired
+    public ReactiveShortenerController(
+            final ReactiveShortenerService service,
+            final ShortenerMetrics metrics,
+            final RedirectResponseCache redirects,
+            final ApplicationAvailability availability,
+            final ClickCounter clicks,
+            final HotKeyTracker hotKeys,
+            final MappingExpiry expiry) {
+        this.service = service;
+        this.metrics = metrics;
+        this.redirects = redirects;
+        this.availability = availability;
+        this.clicks = clicks;
+        this.hotKeys = hotKeys;
+        this.expiry = expiry;
+    }
+
+    // see ShortenerController::healthCheck
+    // TODO: should only be allowed for admin
+    @GetMapping("/api/health")
+    public ResponseEntity<Void> healthCheck() {
+        return availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    @PostMapping("/api/shorten")
+    public Mono<ShortenResponse> createMapping(@Valid @RequestBody final ShortenRequest shortenRequest) {
+        if (!ShortenerController.isValidUrl(shortenRequest.getUrl())) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Url supplied"));
+        }
+        if (!ShortenerController.isValidExpiry(shortenRequest.getExpiresAt())) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "expiresAt has to be in the future"));
+        }
+        return Mono.defer(() -> {
+                    val sample = Timer.start();
+                    return service.shorten(shortenRequest.getUrl().strip(), shortenRequest.getExpiresAt())
+                            .doOnSuccess(mapping -> metrics.shortened(sample, mapping != null));
+                })
+                .map(ShortenResponse::from)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST, "Could not shorten " + shortenRequest.getUrl())
+                ));
+    }
+
+    // see ShortenerController::resolveShortUrl
+    @GetMapping("/{shortUrl}")
+    public Mono<ResponseEntity<Void>> resolveShortUrl(@PathVariable @NotBlank final String shortUrl) {
+        if (expiry.isExpired(shortUrl)) {
+            redirects.invalidate(shortUrl);
+            metrics.redirected(Timer.start(), false);
+            return Mono.just(RedirectResponseCache.GONE);
+        }
+        val cached = redirects.getIfPresent(shortUrl);
+        if (cached != null) {
+            clicks.record(shortUrl);
+            hotKeys.record(shortUrl);
+            metrics.redirected(Timer.start(), true);
+            return Mono.just(cached);
+        }
+        return Mono.defer(() -> {
+                    val sample = Timer.start();
+                    return service.getMappedLongUrl(shortUrl)
+                            .doOnSuccess(longUrl -> metrics.redirected(sample, longUrl != null));
+                })
+                .map(longUrl -> {
+                    clicks.record(shortUrl);
+                    hotKeys.record(shortUrl);
+                    return redirects.redirect(shortUrl, longUrl);
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> expiry.isExpired(shortUrl)
+                        ? RedirectResponseCache.GONE
+                        : RedirectResponseCache.NOT_FOUND));
+    }
+}
@@ -0,0 +1,75 @@
+package com.bw0248.urlshortener.api;
+
+import com.bw0248.urlshortener.config.RedirectCacheConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+
+/**
+ *  Immutable redirect responses per short url, built once and returned as is by every following request.
+ *  The Location header is encoded once when the response is built instead of by sendRedirect on every request.
+ */
+@Component
+public class RedirectResponseCache {
+    public static final ResponseEntity<Void> NOT_FOUND = ResponseEntity.notFound().build();
+    public static final ResponseEntity<Void> GONE = ResponseEntity.status(HttpStatus.GONE).build();
+
+    private final Cache<String, ResponseEntity<Void>> redirects;
+
+    @Autowired
+    public RedirectResponseCache(final RedirectCacheConfig config, final MeterRegistry meterRegistry) {
+        this.redirects = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, redirects, "redirects");
+    }
+
+    /**
+     * @param shortUrl
+     * @return cached redirect response for shortUrl, null if absent
+     */
+    public ResponseEntity<Void> getIfPresent(final String shortUrl) {
+        return redirects.getIfPresent(shortUrl);
+    }
+
+    public void invalidate(final String shortUrl) {
+        redirects.invalidate(shortUrl);
+    }
+
+    /**
+     * @return number of requests answered by a cached redirect response since startup
+     */
+    public long hitCount() {
+        return redirects.stats().hitCount();
+    }
+
+    /**
+     * Build and cache the redirect response of a resolved mapping
+     */
+    public ResponseEntity<Void> redirect(final String shortUrl, final String longUrl) {
+        val response = ResponseEntity.status(HttpStatus.FOUND).headers(location(longUrl)).<Void>build();
+        redirects.put(shortUrl, response);
+        return response;
+    }
+
+    private static HttpHeaders location(final String longUrl) {
+        val headers = new HttpHeaders();
+        try {
+            headers.setLocation(URI.create(longUrl));   // percent-encodes non-ASCII chars
+        } catch (IllegalArgumentException e) {
+            headers.set(HttpHeaders.LOCATION, longUrl);
+        }
+        return headers;
+    }
+}
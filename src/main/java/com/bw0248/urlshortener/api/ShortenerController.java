@@ -1,49 +1,132 @@
 package com.bw0248.urlshortener.api;
 
 import com.bw0248.urlshortener.ShortenerService;
+import com.bw0248.urlshortener.analytics.ClickCounter;
+import com.bw0248.urlshortener.api.dto.BatchShortenResponse;
+import com.bw0248.urlshortener.api.dto.ClickCountResponse;
 import com.bw0248.urlshortener.api.dto.ShortenRequest;
 import com.bw0248.urlshortener.api.dto.ShortenResponse;
+import com.bw0248.urlshortener.cache.HotKeyTracker;
+import com.bw0248.urlshortener.cache.MappingExpiry;
 import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotBlank;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RestController
+@Profile("!reactive")  // see ReactiveShortenerController
 @Slf4j
 public class ShortenerController {
+    static final String NEXT_PAGE_HEADER = "X-Next-After";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final byte[] NEWLINE = "\n".getBytes(StandardCharsets.UTF_8);
+
     private final ShortenerService service;
+    private final ObjectMapper mapper;
+    private final ShortenerMetrics metrics;
+    private final RedirectResponseCache redirects;
+    private final ApplicationAvailability availability;
+    private final ClickCounter clicks;
+    private final HotKeyTracker hotKeys;
+    private final MappingExpiry expiry;
 
     @Autowired
     public ShortenerController(
-            final ShortenerService service) {
+            final ShortenerService service,
+            final ObjectMapper mapper,
+            final ShortenerMetrics metrics,
+            final RedirectResponseCache redirects,
+            final ApplicationAvailability availability,
+            final ClickCounter clicks,
+            final HotKeyTracker hotKeys,
+            final MappingExpiry expiry) {
         this.service = service;
+        this.mapper = mapper;
+        this.metrics = metrics;
+        this.redirects = redirects;
+        this.availability = availability;
+        this.clicks = clicks;
+        this.hotKeys = hotKeys;
+        this.expiry = expiry;
     }
 
+    // 503 until the application is ready, e.g. while the cache is warmed up (see CacheWarmer)
     // TODO: should only be allowed for admin
     @GetMapping("/api/health")
-    @ResponseStatus(HttpStatus.OK)
-    public void healthCheck() {}
+    public ResponseEntity<Void> healthCheck() {
+        return availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
 
+    /**
+     * Page through all mappings ordered by shortUrl.
+     * If there might be more mappings, the shortUrl to continue after is returned in the X-Next-After header.
+     */
     // TODO: should only be allowed for admin
     @GetMapping("/api/all")
-    public List<UrlMapping> getAllMappings() {
-        return service.getAllMappings();
+    public ResponseEntity<List<UrlMapping>> getAllMappings(
+            @RequestParam(required = false) final String after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) final int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+        val mappings = service.getMappings(after, limit);
+        val response = ResponseEntity.ok();
+        if (mappings.size() == limit) {
+            response.header(NEXT_PAGE_HEADER, mappings.get(mappings.size() - 1).getShortUrl());
+        }
+        return response.body(mappings);
+    }
+
+    /**
+     * Export all mappings as newline delimited JSON.
+     * Mappings are read from a storage cursor and written to the response one by one, so memory usage is constant.
+     */
+    // TODO: should only be allowed for admin
+    @GetMapping("/api/export")
+    public ResponseEntity<StreamingResponseBody> exportMappings() {
+        StreamingResponseBody body = outputStream -> {
+            try (val mappings = service.streamAllMappings()) {
+                val iterator = mappings.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(mapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write(NEWLINE);
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
     }
 
     @PostMapping("/api/shorten")
@@ -51,26 +134,121 @@ public class ShortenerController {
         if (!isValidUrl(shortenRequest.getUrl())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Url supplied");
         }
-        return service.shorten(shortenRequest.getUrl().strip())
+        if (!isValidExpiry(shortenRequest.getExpiresAt())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "expiresAt has to be in the future");
+        }
+        val sample = Timer.start();
+        val mapping = service.shorten(shortenRequest.getUrl().strip(), shortenRequest.getExpiresAt());
+        metrics.shortened(sample, mapping.isPresent());
+        return mapping
                 .map(ShortenResponse::from)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.BAD_REQUEST, "Could not shorten " + shortenRequest.getUrl())
                 );
     }
 
+    /**
+     * Shorten a batch of urls at once. Invalid urls or urls that could not be stored do not fail the whole request,
+     * the result of each url is reported in the same order as supplied.
+     */
+    @PostMapping("/api/shorten/batch")
+    public List<BatchShortenResponse> createMappings(@RequestBody final List<ShortenRequest> shortenRequests) {
+        if (shortenRequests.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "batch size is limited to " + MAX_BATCH_SIZE);
+        }
+        val urls = shortenRequests.stream()
+                .map(ShortenRequest::getUrl)
+                .collect(Collectors.toList());
+        val errors = shortenRequests.stream()
+                .map(request -> !isValidUrl(request.getUrl())
+                        ? "Invalid Url supplied"
+                        : !isValidExpiry(request.getExpiresAt()) ? "expiresAt has to be in the future" : null)
+                .collect(Collectors.toList());
+        val valid = IntStream.range(0, urls.size())
+                .filter(i -> errors.get(i) == null)
+                .boxed()
+                .collect(Collectors.toList());
+        val shortened = service.shortenAll(
+                valid.stream().map(i -> urls.get(i).strip()).collect(Collectors.toList()),
+                valid.stream().map(i -> shortenRequests.get(i).getExpiresAt()).collect(Collectors.toList())
+        ).iterator();
+
+        return IntStream.range(0, urls.size())
+                .mapToObj(i -> {
+                    val url = urls.get(i);
+                    if (errors.get(i) != null) {
+                        return BatchShortenResponse.failure(url, errors.get(i));
+                    }
+                    return shortened.next()
+                            .map(BatchShortenResponse::success)
+                            .orElseGet(() -> BatchShortenResponse.failure(url, "Could not shorten " + url));
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Redirect to the long url of shortUrl. Hot short urls are answered with a cached response,
+     * unknown ones with a static 404 and expired ones with a static 410 instead of an exception.
+     */
     @GetMapping("/{shortUrl}")
-    public void resolveShortUrl(HttpServletResponse response, @PathVariable @NotBlank final String shortUrl) {
-        try {
-            response.sendRedirect(
-                    service.getMappedLongUrl(shortUrl)
-                            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "ShortUrl not found"))
-            );
-        } catch (IOException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not resolve shortUrl");
+    public ResponseEntity<Void> resolveShortUrl(@PathVariable @NotBlank final String shortUrl) {
+        val sample = Timer.start();
+        var response = gone(shortUrl);
+        if (response == null) {
+            response = redirects.getIfPresent(shortUrl);
         }
+        if (response == null) {
+            val longUrl = service.getMappedLongUrl(shortUrl);
+            response = longUrl.isPresent()
+                    ? redirects.redirect(shortUrl, longUrl.get())
+                    : expiry.isExpired(shortUrl) ? RedirectResponseCache.GONE : RedirectResponseCache.NOT_FOUND;
+        }
+        val found = response != RedirectResponseCache.NOT_FOUND && response != RedirectResponseCache.GONE;
+        if (found) {
+            clicks.record(shortUrl);
+            hotKeys.record(shortUrl);
+        }
+        metrics.redirected(sample, found);
+        return response;
+    }
+
+    /**
+     * Clicks of shortUrl, including clicks not added to storage yet (see ClickCounter)
+     */
+    @GetMapping("/api/clicks/{shortUrl}")
+    public ClickCountResponse getClickCount(@PathVariable final String shortUrl) {
+        if (service.getMappedLongUrl(shortUrl).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown short url " + shortUrl);
+        }
+        return new ClickCountResponse(shortUrl, clicks.clicks(shortUrl));
+    }
+
+    /**
+     * Most requested short urls with estimated requests per second, their mappings are pinned in the cache
+     */
+    // TODO: should only be allowed for admin
+    @GetMapping("/api/hot-keys")
+    public List<HotKeyTracker.HotKey> getHotKeys() {
+        return hotKeys.hottest();
+    }
+
+    /**
+     * @return static 410 response if shortUrl is known to be expired (see MappingExpiry), otherwise null
+     */
+    ResponseEntity<Void> gone(final String shortUrl) {
+        if (!expiry.isExpired(shortUrl)) {
+            return null;
+        }
+        redirects.invalidate(shortUrl);
+        return RedirectResponseCache.GONE;
+    }
+
+    static boolean isValidExpiry(final Instant expiresAt) {
+        return expiresAt == null || expiresAt.isAfter(Instant.now());
     }
 
-    private boolean isValidUrl(final String url) {
+    // package-private for benchmarks
+    static boolean isValidUrl(final String url) {
         try {
             new URL(url).toURI();
             return true;
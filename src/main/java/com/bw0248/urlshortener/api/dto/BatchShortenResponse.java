@@ -0,0 +1,26 @@
+package com.bw0248.urlshortener.api.dto;
+
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *  Result for a single url of a batch shorten request - either shortUrl or error is set
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchShortenResponse {
+    private String longUrl;
+    private String shortUrl;
+    private String error;
+
+    public static BatchShortenResponse success(final UrlMapping mapping) {
+        return new BatchShortenResponse(mapping.getLongUrl(), mapping.getShortUrl(), null);
+    }
+
+    public static BatchShortenResponse failure(final String longUrl, final String error) {
+        return new BatchShortenResponse(longUrl, null, error);
+    }
+}
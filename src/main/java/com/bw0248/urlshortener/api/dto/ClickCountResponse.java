@@ -0,0 +1,13 @@
+package com.bw0248.urlshortener.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClickCountResponse {
+    private String shortUrl;
+    private long clicks;
+}
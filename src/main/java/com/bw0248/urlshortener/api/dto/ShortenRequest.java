@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.extern.jackson.Jacksonized;
 
 import javax.validation.constraints.NotBlank;
+import java.time.Instant;
 
 @Data
 @Builder
@@ -12,4 +13,7 @@ import javax.validation.constraints.NotBlank;
 public class ShortenRequest {
     @NotBlank(message = "url may not be empty")
     private String url;
+
+    // optional, the short url is answered with 410 Gone afterwards
+    private Instant expiresAt;
 }
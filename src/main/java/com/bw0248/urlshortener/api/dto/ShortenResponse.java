@@ -1,18 +1,23 @@
 package com.bw0248.urlshortener.api.dto;
 
 import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ShortenResponse {
     private String longUrl;
     private String shortUrl;
+    private Instant expiresAt;
 
     public static ShortenResponse from(final UrlMapping mapping) {
-        return new ShortenResponse(mapping.getLongUrl(), mapping.getShortUrl());
+        return new ShortenResponse(mapping.getLongUrl(), mapping.getShortUrl(), mapping.getExpiresAt());
     }
 }
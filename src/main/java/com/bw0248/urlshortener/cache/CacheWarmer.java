@@ -0,0 +1,113 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.CacheWarmupConfig;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ *  Keeps a snapshot of the hottest short urls of the MappingCache on local disk (cache-warmup.enabled: true).
+ *
+ *  The snapshot is written periodically and on shutdown, one short url per line, most frequently used first.
+ *  On startup the mappings of the snapshot are loaded in batches and put into the cache before the application
+ *  reports ready (ApplicationRunners finish before readiness changes to ACCEPTING_TRAFFIC, see /api/health),
+ *  so a new instance starts with the hit ratio of the previous one.
+ *  Failures while warming up are logged and do not prevent startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache-warmup.enabled", havingValue = "true")
+public class CacheWarmer implements ApplicationRunner {
+    private final MappingCache cache;
+    private final UrlStorage storage;
+    private final MappingExpiry expiry;
+    private final CacheWarmupConfig config;
+    private final Path snapshotFile;
+
+    @Autowired
+    public CacheWarmer(
+            final MappingCache cache,
+            final UrlStorage storage,
+            final MappingExpiry expiry,
+            final CacheWarmupConfig config) {
+        this.cache = cache;
+        this.storage = storage;
+        this.expiry = expiry;
+        this.config = config;
+        this.snapshotFile = Paths.get(config.getSnapshotFile());
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        warmUp();
+    }
+
+    /**
+     * @return number of mappings put into the cache
+     */
+    public int warmUp() {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        val startedAt = Instant.now();
+        val deadline = startedAt.plus(config.getTimeout());
+        int loaded = 0;
+        try {
+            val shortUrls = Files.readAllLines(snapshotFile, StandardCharsets.UTF_8);
+            val count = Math.min(shortUrls.size(), config.getSnapshotSize());
+            for (int from = 0; from < count; from += config.getBatchSize()) {
+                if (Instant.now().isAfter(deadline)) {
+                    log.warn("cache warm-up timed out after {} of {} short urls", from, count);
+                    break;
+                }
+                val batch = shortUrls.subList(from, Math.min(count, from + config.getBatchSize()));
+                for (val mapping : storage.findMappingsByShortUrls(batch)) {
+                    if (!expiry.track(mapping)) {
+                        continue;
+                    }
+                    cache.put(mapping.getShortUrl(), mapping.getLongUrl());
+                    loaded++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("cache warm-up failed after {} mappings", loaded, e);
+        }
+        log.info("warmed up cache with {} mappings in {}", loaded, Duration.between(startedAt, Instant.now()));
+        return loaded;
+    }
+
+    @Scheduled(
+            initialDelayString = "${cache-warmup.snapshot-interval-ms}",
+            fixedDelayString = "${cache-warmup.snapshot-interval-ms}")
+    @PreDestroy
+    public void writeSnapshot() {
+        val shortUrls = cache.hottestKeys(config.getSnapshotSize());
+        if (shortUrls.isEmpty()) {
+            return;     // keep previous snapshot, e.g. if shut down right after startup
+        }
+        val tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Files.write(tmpFile, shortUrls, StandardCharsets.UTF_8);
+            Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("wrote snapshot of {} short urls", shortUrls.size());
+        } catch (IOException e) {
+            log.warn("could not write cache snapshot {}", snapshotFile, e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.Getter;
+import lombok.val;
+
+/**
+ *  Count-min sketch estimating how often strings (e.g. requested short urls) were added, in constant memory.
+ *  Estimates never undercount (apart from lost updates, see below) and overcount by hash collisions only.
+ *
+ *  Each of depth rows has width counters, a string increments one counter per row and its estimate is the
+ *  minimum of them. Increments are conservative (only counters equal to the current minimum are incremented),
+ *  which reduces the overcounting of rare strings colliding with frequent ones.
+ *  age() halves all counters, so estimates follow recent frequency instead of growing forever.
+ *
+ *  Counters are plain ints without synchronization - concurrent increments of the same counter may be lost,
+ *  which keeps the hot path free of CAS loops on the counters of the most requested strings.
+ *  Row indices are derived from String::hashCode (cached per String instance) via double hashing.
+ */
+public class CountMinSketch {
+    private final int[] counters;
+    @Getter private final int width;
+    @Getter private final int depth;
+    private final int mask;
+
+    public CountMinSketch(final int width, final int depth) {
+        if (width <= 0 || width > 1 << 30) {
+            throw new IllegalArgumentException("width must be in (0, 2^30], was " + width);
+        }
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth must be positive, was " + depth);
+        }
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;    // next power of two
+        this.depth = depth;
+        this.mask = this.width - 1;
+        try {
+            this.counters = new int[Math.multiplyExact(this.width, depth)];
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    "width " + this.width + " (rounded up to a power of two) times depth " + depth
+                            + " exceeds the maximum number of counters", e);
+        }
+    }
+
+    /**
+     * @param value
+     * @return estimate of value after the increment
+     */
+    public long increment(final String value) {
+        val h1 = mix(value.hashCode());
+        val h2 = mix(h1 + 0x9e3779b97f4a7c15L);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[index(h1, h2, row)]);
+        }
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        for (int row = 0; row < depth; row++) {
+            val index = index(h1, h2, row);
+            if (counters[index] == min) {
+                counters[index] = min + 1;
+            }
+        }
+        return min + 1;
+    }
+
+    public long estimate(final String value) {
+        val h1 = mix(value.hashCode());
+        val h2 = mix(h1 + 0x9e3779b97f4a7c15L);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[index(h1, h2, row)]);
+        }
+        return min;
+    }
+
+    public void age() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    public long memoryBytes() {
+        return (long) counters.length * Integer.BYTES;
+    }
+
+    private int index(final long h1, final long h2, final int row) {
+        return row * width + (int) ((h1 + row * h2) & mask);
+    }
+
+    // murmur3's 64 bit finalizer
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.HotKeyConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ *  Tracks the top-k most requested short urls with a CountMinSketch and pins their mappings in the MappingCache,
+ *  so traffic spikes on single short urls (e.g. viral links) are never answered by storage due to cache eviction.
+ *
+ *  Every redirect increments the sketch. Only short urls estimated above the coldest of the current top-k
+ *  take a lock to enter it, the long tail of short urls does not. Every aging interval the estimated rates
+ *  of the top-k are published (see hottest()), the sketch is aged and the pinned mappings are updated.
+ *  Short urls are pinned as soon as they enter the top-k. Only cached mappings can be pinned, so a top-k short url
+ *  whose mapping was not cached at that time is pinned on its next request, once its mapping was loaded again.
+ *  Rates are estimated from the aged counts assuming steady traffic: right before aging a short url with
+ *  r requests per interval T has a count of about r * T * (1 + 1/2 + 1/4 + ...) = 2 * r * T.
+ */
+@Component
+public class HotKeyTracker {
+    private final HotKeyConfig config;
+    private final MappingCache cache;
+    private final CountMinSketch sketch;
+    private final Map<String, Long> topK = new ConcurrentHashMap<>();     // short url -> estimate at last update
+    private volatile long threshold;                                     // estimate needed to enter a full topK
+    private volatile List<HotKey> hottest = List.of();
+
+    @Getter
+    @AllArgsConstructor
+    public static class HotKey {
+        private final String shortUrl;
+        private final double requestsPerSecond;
+    }
+
+    @Autowired
+    public HotKeyTracker(final HotKeyConfig config, final MappingCache cache, final MeterRegistry meterRegistry) {
+        this.config = config;
+        this.cache = cache;
+        this.sketch = new CountMinSketch(config.getSketchWidth(), config.getSketchDepth());
+        Gauge.builder("shortener.cache.pinned", cache, pinned -> pinned.pinnedKeys().size())
+                .description("mappings of hot short urls pinned in the mapping cache")
+                .register(meterRegistry);
+    }
+
+    public void record(final String shortUrl) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        val estimate = sketch.increment(shortUrl);
+        if (topK.containsKey(shortUrl)) {
+            cache.pin(shortUrl);
+        } else if (estimate > threshold) {
+            admit(shortUrl, estimate);
+        }
+    }
+
+    /**
+     * @return top-k short urls as of the last aging, most requested first
+     */
+    public List<HotKey> hottest() {
+        return hottest;
+    }
+
+    @Scheduled(
+            initialDelayString = "${hot-keys.aging-interval-ms}",
+            fixedDelayString = "${hot-keys.aging-interval-ms}")
+    public synchronized void age() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        val window = 2.0 * config.getAgingIntervalMs() / 1000;
+        hottest = topK.keySet()
+                .stream()
+                .map(shortUrl -> new HotKey(shortUrl, sketch.estimate(shortUrl) / window))
+                .sorted(Comparator.comparingDouble(HotKey::getRequestsPerSecond).reversed())
+                .collect(Collectors.toList());
+        sketch.age();
+        topK.replaceAll((shortUrl, estimate) -> sketch.estimate(shortUrl));
+        topK.values().removeIf(estimate -> estimate == 0);
+        updateThreshold();
+        cache.pinOnly(Set.copyOf(topK.keySet()));
+    }
+
+    private synchronized void admit(final String shortUrl, final long estimate) {
+        if (topK.containsKey(shortUrl)) {
+            return;
+        }
+        if (topK.size() >= config.getTopK()) {
+            // estimates of the top-k are refreshed, they might have grown since they were added
+            topK.replaceAll((key, previous) -> sketch.estimate(key));
+            val coldest = topK.entrySet()
+                    .stream()
+                    .min(Map.Entry.comparingByValue())
+                    .orElseThrow();
+            if (coldest.getValue() >= estimate) {
+                threshold = coldest.getValue();
+                return;
+            }
+            topK.remove(coldest.getKey());
+            cache.unpin(coldest.getKey());
+        }
+        topK.put(shortUrl, estimate);
+        cache.pin(shortUrl);
+        updateThreshold();
+    }
+
+    private void updateThreshold() {
+        threshold = topK.size() < config.getTopK()
+                ? 0
+                : topK.values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+}
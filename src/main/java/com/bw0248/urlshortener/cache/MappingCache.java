@@ -0,0 +1,296 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import lombok.val;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ *  Bounded cache for shortUrl -> longUrl mappings backed by Caffeine.
+ *
+ *  Known mappings are held in a size or weight bounded cache with expire-after-access/-write policies.
+ *  Unknown short urls are remembered in a separate, short-lived cache (negative caching),
+ *  so repeated lookups of non-existing short urls do not hit storage while new mappings become visible quickly.
+ *
+ *  Loads (see get(key, valueLoader)) are coalesced per key, so concurrent misses for the same short url
+ *  result in a single storage lookup. The loader runs outside of any lock (instead of inside Caffeine's compute,
+ *  which holds a monitor of the underlying ConcurrentHashMap), so a storage lookup on a virtual thread does not pin
+ *  its carrier thread - waiting callers park on the in-flight load. Loads are still recorded in the cache statistics
+ *  of the Caffeine cache, a load without mapping counts as failed load like it would in Caffeine.
+ *
+ *  Mappings of hot short urls can be pinned (see HotKeyTracker): a copy is kept outside of Caffeine, so they are
+ *  answered from the cache even if size bounds or expiry dropped them. They are put back into Caffeine on access.
+ *
+ *  Long urls are held encoded by UrlCodec (if url-codec.enabled), so more mappings fit into the same memory
+ *  and weight bound. They are decoded on every read.
+ */
+public class MappingCache extends AbstractValueAdaptingCache {
+    public static final String NAME = "mappings";
+
+    private final StatsCounter mappingsStats = new ConcurrentStatsCounter();
+    private final Cache<Object, Object> mappings;
+    private final Optional<Cache<Object, Boolean>> unknownMappings;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, Object> pinned = new ConcurrentHashMap<>();
+    private final LongAdder pinnedHits = new LongAdder();
+    private final UrlCodec codec;
+
+    public MappingCache(final MappingCacheConfig config) {
+        this(config, UrlCodec.disabled());
+    }
+
+    public MappingCache(final MappingCacheConfig config, final UrlCodec codec) {
+        super(true);
+        this.codec = codec;
+        this.mappings = buildMappingsCache(config, mappingsStats);
+        this.unknownMappings = config.isNegativeCaching()
+                ? Optional.of(Caffeine.newBuilder()
+                        .maximumSize(config.getNegativeMaxSize())
+                        .expireAfterWrite(config.getNegativeTtl())
+                        .recordStats()
+                        .build())
+                : Optional.empty();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Cache<Object, Object> getNativeCache() {
+        return mappings;
+    }
+
+    public Optional<Cache<Object, Boolean>> getUnknownMappingsCache() {
+        return unknownMappings;
+    }
+
+    /**
+     * @param limit
+     * @return up to limit short urls of cached mappings, most frequently used first
+     */
+    public List<String> hottestKeys(final int limit) {
+        return mappings.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).keySet().stream()
+                        .map(String::valueOf)
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+    }
+
+    /**
+     * Pins the cached mappings of keys, mappings pinned before that are not included in keys are unpinned.
+     * Keys without cached mapping are not pinned.
+     *
+     * @param keys
+     */
+    public void pinOnly(final Set<?> keys) {
+        pinned.keySet().retainAll(keys);
+        keys.forEach(this::pin);
+    }
+
+    /**
+     * Pins the cached mapping of key, if there is one
+     *
+     * @param key
+     */
+    public void pin(final Object key) {
+        if (!pinned.containsKey(key)) {
+            // computeIfPresent is atomic with a concurrent evict of the same key, so evicted mappings are not pinned again
+            mappings.asMap().computeIfPresent(key, (cachedKey, value) -> {
+                pinned.put(cachedKey, value);
+                return value;
+            });
+        }
+    }
+
+    public void unpin(final Object key) {
+        pinned.remove(key);
+    }
+
+    public Set<Object> pinnedKeys() {
+        return Collections.unmodifiableSet(pinned.keySet());
+    }
+
+    /**
+     * @return number of lookups answered by pinned mappings that were no longer held by Caffeine
+     */
+    public long pinnedHitCount() {
+        return pinnedHits.sum();
+    }
+
+    @Override
+    protected Object lookup(final Object key) {
+        val value = mappings.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        val pinnedValue = pinned.get(key);
+        if (pinnedValue != null) {
+            pinnedHits.increment();
+            mappings.put(key, pinnedValue);
+            return pinnedValue;
+        }
+        return isKnownToBeMissing(key) ? toStoreValue(null) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        val cached = lookup(key);
+        if (cached != null) {
+            return (T) fromStoreValue(cached);
+        }
+        val load = new CompletableFuture<Object>();
+        val inFlight = inFlightLoads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return (T) fromStoreValue(await(inFlight));
+        }
+        try {
+            // a concurrent load might have finished between lookup and registering this one
+            val loaded = Optional.ofNullable(peek(key)).orElseGet(() -> load(key, valueLoader));
+            // stored only while the load is still registered - an evict during the load (e.g. the mapping was just
+            // created) removed it, the result might be outdated then. Serialized with evict by the map entry of key.
+            inFlightLoads.computeIfPresent(key, (loadedKey, registered) -> {
+                if (registered == load) {
+                    store(loadedKey, loaded);
+                    return null;
+                }
+                return registered;
+            });
+            load.complete(loaded);
+            return (T) fromStoreValue(loaded);
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, load);
+        }
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        store(key, value == null ? null : toStoreValue(value));
+    }
+
+    @Override
+    public void evict(final Object key) {
+        // also cancels storing the result of an in-flight load of key, see get(key, valueLoader)
+        inFlightLoads.compute(key, (evictedKey, inFlight) -> {
+            mappings.invalidate(evictedKey);
+            pinned.remove(evictedKey);
+            unknownMappings.ifPresent(cache -> cache.invalidate(evictedKey));
+            return null;
+        });
+    }
+
+    @Override
+    public void clear() {
+        mappings.invalidateAll();
+        pinned.clear();
+        unknownMappings.ifPresent(Cache::invalidateAll);
+    }
+
+    @Override
+    protected Object toStoreValue(final Object userValue) {
+        return super.toStoreValue(userValue instanceof String ? codec.encode((String) userValue) : userValue);
+    }
+
+    @Override
+    protected Object fromStoreValue(final Object storeValue) {
+        val value = super.fromStoreValue(storeValue);
+        return value instanceof String ? codec.decode((String) value) : value;
+    }
+
+    // storeValue null (or the store value of null) remembers key as unknown
+    private void store(final Object key, final Object storeValue) {
+        if (storeValue == null || storeValue == NullValue.INSTANCE) {
+            unknownMappings.ifPresent(cache -> cache.put(key, Boolean.TRUE));
+            return;
+        }
+        mappings.put(key, storeValue);
+        pinned.replace(key, storeValue);
+        unknownMappings.ifPresent(cache -> cache.invalidate(key));
+    }
+
+    // like lookup, but without recording cache statistics
+    private Object peek(final Object key) {
+        val value = Optional.ofNullable(mappings.asMap().get(key)).orElseGet(() -> pinned.get(key));
+        if (value != null) {
+            return value;
+        }
+        val knownToBeMissing = unknownMappings
+                .map(cache -> cache.asMap().containsKey(key))
+                .orElse(false);
+        return knownToBeMissing ? toStoreValue(null) : null;
+    }
+
+    private boolean isKnownToBeMissing(final Object key) {
+        return unknownMappings
+                .map(cache -> cache.getIfPresent(key) != null)
+                .orElse(false);
+    }
+
+    // store value of loaded value, null if there is no mapping
+    private Object load(final Object key, final Callable<?> valueLoader) {
+        val startedAt = System.nanoTime();
+        try {
+            val value = valueLoader.call();
+            if (value == null) {
+                mappingsStats.recordLoadFailure(System.nanoTime() - startedAt);
+                return null;
+            }
+            mappingsStats.recordLoadSuccess(System.nanoTime() - startedAt);
+            return toStoreValue(value);
+        } catch (Exception e) {
+            mappingsStats.recordLoadFailure(System.nanoTime() - startedAt);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private static Object await(final CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static Cache<Object, Object> buildMappingsCache(final MappingCacheConfig config, final StatsCounter stats) {
+        val builder = Caffeine.newBuilder().recordStats(() -> stats);
+        if (config.isWeightBounded()) {
+            builder.maximumWeight(config.getMaxWeight())
+                    .weigher((key, value) -> weigh(key) + weigh(value));
+        } else {
+            builder.maximumSize(config.getMaxSize());
+        }
+        if (!config.getExpireAfterAccess().isZero()) {
+            builder.expireAfterAccess(config.getExpireAfterAccess());
+        }
+        if (!config.getExpireAfterWrite().isZero()) {
+            builder.expireAfterWrite(config.getExpireAfterWrite());
+        }
+        return builder.build();
+    }
+
+    private static int weigh(final Object keyOrValue) {
+        return keyOrValue instanceof String ? ((String) keyOrValue).length() : 1;
+    }
+}
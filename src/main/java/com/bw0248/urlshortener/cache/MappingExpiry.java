@@ -0,0 +1,102 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.ExpiryConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+
+/**
+ *  Evicts cached mappings with expiresAt from the MappingCache at their deadline and remembers expired short urls,
+ *  so they are answered with 410 Gone without a storage lookup (see isExpired).
+ *
+ *  Mappings are scheduled in a TimerWheel when they are loaded into the cache (see track), the wheel is advanced
+ *  every tick-ms. Expired mappings are removed from storage independently (TTL index with mongo, compaction
+ *  with the embedded engine), mappings loaded from storage after their deadline are recognized as expired by track.
+ *  Short urls are remembered as expired for gone-ttl, afterwards they are answered like unknown short urls.
+ */
+@Component
+public class MappingExpiry {
+    private final MappingCache cache;
+    private final long tickMs;
+    private final TimerWheel wheel;
+    private final Cache<String, Boolean> expired;
+    private final Counter expirations;
+
+    @Autowired
+    public MappingExpiry(final MappingCache cache, final ExpiryConfig config, final MeterRegistry meterRegistry) {
+        this.cache = cache;
+        this.tickMs = config.getTickMs();
+        this.wheel = new TimerWheel(currentTick());
+        this.expired = Caffeine.newBuilder()
+                .maximumSize(config.getGoneMaxSize())
+                .expireAfterWrite(config.getGoneTtl())
+                .build();
+        this.expirations = Counter.builder("shortener.expiry.expired")
+                .description("cached or loaded mappings that expired")
+                .register(meterRegistry);
+        Gauge.builder("shortener.expiry.scheduled", this, MappingExpiry::scheduled)
+                .description("cached mappings waiting for their deadline in the timer wheel")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Call for every mapping that is about to be cached
+     *
+     * @param mapping
+     * @return false if mapping is expired already, it must not be cached then
+     */
+    public boolean track(final UrlMapping mapping) {
+        if (mapping.getExpiresAt() == null) {
+            return true;
+        }
+        if (!mapping.getExpiresAt().isAfter(Instant.now())) {
+            expire(mapping.getShortUrl());
+            return false;
+        }
+        // ceil, so mappings are never evicted before their deadline
+        val deadline = Math.floorDiv(mapping.getExpiresAt().toEpochMilli() + tickMs - 1, tickMs);
+        synchronized (wheel) {
+            wheel.schedule(mapping.getShortUrl(), deadline);
+        }
+        return true;
+    }
+
+    public boolean isExpired(final String shortUrl) {
+        return expired.getIfPresent(shortUrl) != null;
+    }
+
+    @Scheduled(fixedRateString = "${expiry.tick-ms}")
+    public void advance() {
+        val due = new ArrayList<String>();
+        synchronized (wheel) {
+            wheel.advance(currentTick(), due::add);
+        }
+        due.forEach(this::expire);
+    }
+
+    private void expire(final String shortUrl) {
+        expired.put(shortUrl, Boolean.TRUE);
+        cache.evict(shortUrl);
+        expirations.increment();
+    }
+
+    private int scheduled() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    private long currentTick() {
+        return Math.floorDiv(System.currentTimeMillis(), tickMs);
+    }
+}
@@ -0,0 +1,218 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *  Bounded store of sequence id -> long url that keeps the long urls off-heap.
+ *
+ *  Long urls are appended as UTF-8 to direct memory segments (record: long id, int length, bytes), ids are mapped
+ *  to the location of their record by a primitive open-addressing map (two long[], no objects per entry).
+ *  Compared to caching String keys, String values and their wrappers on the heap, an entry costs its url bytes
+ *  plus ~28-44 bytes and there is nothing for the garbage collector to trace.
+ *
+ *  Once all segments are full the oldest segment is reused and its entries are dropped (FIFO eviction).
+ *  Lookups use optimistic reads of a StampedLock and only fall back to a read lock if they raced with a write.
+ */
+public class OffHeapMappingStore {
+    private static final long EMPTY = 0;    // ids are stored as id + 1
+    private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final ByteBuffer[] segments;
+    private final int segmentSize;
+    private final int[] segmentEnds;
+    private final StampedLock lock = new StampedLock();
+    private long[] keys;
+    private long[] locations;
+    private int size;
+    private int currentSegment;
+
+    public OffHeapMappingStore(final long capacityBytes, final int segmentSize) {
+        if (segmentSize <= RECORD_HEADER_SIZE || capacityBytes < segmentSize) {
+            throw new IllegalArgumentException("capacity has to hold at least one segment of more than " + RECORD_HEADER_SIZE + " bytes");
+        }
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[(int) (capacityBytes / segmentSize)];
+        this.segmentEnds = new int[segments.length];
+        this.keys = new long[1024];
+        this.locations = new long[1024];
+    }
+
+    /**
+     * @param id
+     * @return long url stored for id, null if absent
+     */
+    public String get(final long id) {
+        val stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                val value = read(id);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // inconsistent state of a concurrent write, retried with read lock
+            }
+        }
+        val readStamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    /**
+     * Store longUrl for id, long urls exceeding a segment are not stored
+     */
+    public void put(final long id, final String longUrl) {
+        val bytes = longUrl.getBytes(StandardCharsets.UTF_8);
+        val recordSize = RECORD_HEADER_SIZE + bytes.length;
+        if (id < 0 || recordSize > segmentSize) {
+            return;
+        }
+        val stamp = lock.writeLock();
+        try {
+            if (segmentEnds[currentSegment] + recordSize > segmentSize) {
+                currentSegment = (currentSegment + 1) % segments.length;
+                evict(currentSegment);
+            }
+            val segment = segment(currentSegment);
+            val position = segmentEnds[currentSegment];
+            segment.putLong(position, id);
+            segment.putInt(position + Long.BYTES, bytes.length);
+            segment.duplicate().position(position + RECORD_HEADER_SIZE).put(bytes);
+            segmentEnds[currentSegment] = position + recordSize;
+            putLocation(id, (long) currentSegment * segmentSize + position);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        val stamp = lock.writeLock();
+        try {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(segmentEnds, 0);
+            size = 0;
+            currentSegment = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return off-heap memory allocated for long urls
+     */
+    public long memoryBytes() {
+        return Arrays.stream(segments).filter(segment -> segment != null).count() * segmentSize;
+    }
+
+    private String read(final long id) {
+        val keys = this.keys;
+        val locations = this.locations;
+        val slot = findSlot(keys, id);
+        if (keys[slot] == EMPTY) {
+            return null;
+        }
+        val location = locations[slot];
+        val segment = segments[(int) (location / segmentSize)];
+        val position = (int) (location % segmentSize);
+        val length = segment.getInt(position + Long.BYTES);
+        if (length < 0 || length > segmentSize) {
+            throw new IllegalStateException("inconsistent record at " + location);
+        }
+        val bytes = new byte[length];
+        segment.duplicate().position(position + RECORD_HEADER_SIZE).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // drop all entries whose latest record is in segmentIndex
+    private void evict(final int segmentIndex) {
+        val segment = segments[segmentIndex];
+        var position = 0;
+        while (position < segmentEnds[segmentIndex]) {
+            val id = segment.getLong(position);
+            val slot = findSlot(keys, id);
+            if (keys[slot] != EMPTY && locations[slot] == (long) segmentIndex * segmentSize + position) {
+                removeSlot(slot);
+            }
+            position += RECORD_HEADER_SIZE + segment.getInt(position + Long.BYTES);
+        }
+        segmentEnds[segmentIndex] = 0;
+    }
+
+    private ByteBuffer segment(final int segmentIndex) {
+        if (segments[segmentIndex] == null) {
+            segments[segmentIndex] = ByteBuffer.allocateDirect(segmentSize);
+        }
+        return segments[segmentIndex];
+    }
+
+    private void putLocation(final long id, final long location) {
+        if ((size + 1) * 2L > keys.length) {
+            resize();
+        }
+        val slot = findSlot(keys, id);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = id + 1;
+            size++;
+        }
+        locations[slot] = location;
+    }
+
+    private void resize() {
+        val resizedKeys = new long[keys.length * 2];
+        val resizedLocations = new long[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                val slot = findSlot(resizedKeys, keys[i] - 1);
+                resizedKeys[slot] = keys[i];
+                resizedLocations[slot] = locations[i];
+            }
+        }
+        locations = resizedLocations;
+        keys = resizedKeys;
+    }
+
+    // backward shift deletion keeps probe sequences intact without tombstones
+    private void removeSlot(int slot) {
+        val mask = keys.length - 1;
+        var next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            val home = (int) mix(keys[next] - 1) & mask;
+            // move entry at next into the gap unless its home lies cyclically in (slot, next]
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                locations[slot] = locations[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[slot] = EMPTY;
+        size--;
+    }
+
+    // slot of id, or the empty slot it would be inserted at
+    private static int findSlot(final long[] keys, final long id) {
+        val mask = keys.length - 1;
+        var slot = (int) mix(id) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(final long id) {
+        var hash = id * 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 32);
+    }
+}
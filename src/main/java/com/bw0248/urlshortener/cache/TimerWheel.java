@@ -0,0 +1,143 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ *  Hierarchical timer wheel for deadlines of keys (e.g. expiring short urls), measured in ticks.
+ *
+ *  There are LEVELS wheels of 64 buckets each. A key is placed in the lowest level whose span covers its
+ *  deadline - level 0 buckets are single ticks, level 1 buckets 64 ticks, level 2 buckets 64^2 ticks and so on,
+ *  so 4 levels cover 64^4 ticks (~194 days for 1 second ticks). Deadlines beyond that are parked in the top level
+ *  and placed again once it is cascaded. When a lower level wraps around, the next bucket of the level above is
+ *  cascaded: its keys are placed again relative to the current tick, ending up in level 0 by their deadline.
+ *
+ *  Scheduling and cancelling are O(1), advancing by one tick touches a single level 0 bucket plus a cascaded
+ *  bucket every 64 ticks - independent of the number of scheduled keys.
+ *
+ *  Not thread-safe.
+ */
+public class TimerWheel {
+    private static final int BITS = 6;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private final Map<String, Timer>[][] wheels;
+    private final Map<String, Timer> timers = new HashMap<>();
+    private long currentTick;
+
+    private static class Timer {
+        private final String key;
+        private final long deadline;
+        private Map<String, Timer> bucket;
+
+        private Timer(final String key, final long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(final long currentTick) {
+        this.currentTick = currentTick;
+        this.wheels = new Map[LEVELS][BUCKETS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                wheels[level][i] = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Schedules key to expire at deadline, replacing a previous deadline of key.
+     * Deadlines that passed already expire with the next tick.
+     *
+     * @param key
+     * @param deadline tick
+     */
+    public void schedule(final String key, final long deadline) {
+        cancel(key);
+        val timer = new Timer(key, Math.max(deadline, currentTick + 1));
+        timers.put(key, timer);
+        place(timer);
+    }
+
+    public boolean cancel(final String key) {
+        val timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        timer.bucket.remove(key);
+        return true;
+    }
+
+    /**
+     * Advances the wheel tick by tick up to tick, passing each key whose deadline is reached to expired
+     *
+     * @param tick
+     * @param expired
+     */
+    public void advance(final long tick, final Consumer<String> expired) {
+        while (currentTick < tick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(wheels[level][index(currentTick, level)]);
+                }
+            }
+            val bucket = wheels[0][index(currentTick, 0)];
+            if (!bucket.isEmpty()) {
+                val due = new ArrayList<>(bucket.values());
+                bucket.clear();
+                for (val timer : due) {
+                    timers.remove(timer.key);
+                    expired.accept(timer.key);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    private void cascade(final Map<String, Timer> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        val cascaded = new ArrayList<>(bucket.values());
+        bucket.clear();
+        cascaded.forEach(this::place);
+    }
+
+    private void place(final Timer timer) {
+        val delta = timer.deadline - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                put(timer, wheels[level][index(timer.deadline, level)]);
+                return;
+            }
+        }
+        // beyond the span of the wheel, placed again when the furthest bucket of the top level is cascaded
+        put(timer, wheels[LEVELS - 1][index(currentTick + SPAN - 1, LEVELS - 1)]);
+    }
+
+    private static void put(final Timer timer, final Map<String, Timer> bucket) {
+        timer.bucket = bucket;
+        bucket.put(timer.key, timer);
+    }
+
+    private static int index(final long tick, final int level) {
+        return (int) ((tick >>> (BITS * level)) & MASK);
+    }
+}
@@ -0,0 +1,165 @@
+package com.bw0248.urlshortener.codec;
+
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Compresses long urls with a shared, versioned UrlDictionary, applied to long urls in the MappingCache and
+ *  in mongo documents (see MongoMappingLayout).
+ *
+ *  Encoded urls start with a marker char (0x01) and the dictionary version in two chars, so encoded and plain urls
+ *  can be mixed: urls stored before the codec was enabled are returned as is, and urls encoded with an older
+ *  dictionary are decoded with that version. Dictionaries are shared between instances via UrlDictionaryStore,
+ *  versions trained by other instances are loaded on first use. Without store (embedded storage) dictionaries are
+ *  only kept in memory, which suffices as encoded urls are only cached then.
+ *
+ *  Urls with chars other than printable ASCII are not encoded.
+ */
+@Slf4j
+@Component
+public class UrlCodec {
+    private static final char MARKER = 0x01;
+    private static final char FIRST_VERSION_CHAR = 0x20;
+    private static final int VERSION_CHARS = 95;
+    private static final int HEADER_LENGTH = 3;
+    private static final int MAX_VERSION = VERSION_CHARS * VERSION_CHARS - 1;
+    private static final int ESCAPED = 0;       // version of plain urls that start with the marker themselves
+
+    private final boolean enabled;
+    private final Optional<UrlDictionaryStore> store;
+    private final ConcurrentMap<Integer, UrlDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final LongAdder plainChars = new LongAdder();
+    private final LongAdder encodedChars = new LongAdder();
+    private volatile UrlDictionary current = UrlDictionary.DEFAULT;
+
+    @Autowired
+    public UrlCodec(final UrlCodecConfig config, final Optional<UrlDictionaryStore> store) {
+        this.enabled = config.isEnabled();
+        this.store = store;
+        dictionaries.put(UrlDictionary.DEFAULT.getVersion(), UrlDictionary.DEFAULT);
+        refresh();
+    }
+
+    private UrlCodec() {
+        this.enabled = false;
+        this.store = Optional.empty();
+        dictionaries.put(UrlDictionary.DEFAULT.getVersion(), UrlDictionary.DEFAULT);
+    }
+
+    /**
+     * @return codec that does not encode, urls encoded with the default dictionary are still decoded
+     */
+    public static UrlCodec disabled() {
+        return new UrlCodec();
+    }
+
+    public String encode(final String url) {
+        if (url.isEmpty() || !enabled) {
+            return escape(url);
+        }
+        val dictionary = current;
+        val encoded = dictionary.encode(url);
+        if (encoded == null || encoded.length() + HEADER_LENGTH >= url.length()) {
+            return escape(url);
+        }
+        plainChars.add(url.length());
+        encodedChars.add(encoded.length() + HEADER_LENGTH);
+        return header(dictionary.getVersion()) + encoded;
+    }
+
+    /**
+     * @param stored
+     * @return url of an encoded or plain stored url
+     * @throws IllegalStateException if the dictionary stored was encoded with is unknown
+     */
+    public String decode(final String stored) {
+        if (stored == null || stored.isEmpty() || stored.charAt(0) != MARKER) {
+            return stored;
+        }
+        val version = (stored.charAt(1) - FIRST_VERSION_CHAR) * VERSION_CHARS + (stored.charAt(2) - FIRST_VERSION_CHAR);
+        if (version == ESCAPED) {
+            return stored.substring(HEADER_LENGTH);
+        }
+        return dictionary(version).decode(stored, HEADER_LENGTH);
+    }
+
+    public UrlDictionary current() {
+        return current;
+    }
+
+    /**
+     * @return encoded size relative to the plain size of urls encoded since startup, 1 if none were encoded
+     */
+    public double compressionRatio() {
+        val plain = plainChars.sum();
+        return plain == 0 ? 1 : (double) encodedChars.sum() / plain;
+    }
+
+    /**
+     *  Stores dictionary and encodes with it from now on.
+     *
+     * @param dictionary version has to be above all known versions
+     * @return false if another instance stored a dictionary with the same version before, the latest dictionary
+     *  of the store is used then
+     */
+    public boolean adopt(final UrlDictionary dictionary) {
+        if (dictionary.getVersion() <= current.getVersion() || dictionary.getVersion() > MAX_VERSION) {
+            throw new IllegalArgumentException("invalid dictionary version " + dictionary.getVersion());
+        }
+        if (store.isPresent() && !store.get().insert(dictionary)) {
+            log.info("dictionary version {} has been trained by another instance", dictionary.getVersion());
+            refresh();
+            return false;
+        }
+        dictionaries.put(dictionary.getVersion(), dictionary);
+        current = dictionary;
+        log.info("encoding urls with dictionary version {} ({} tokens)", dictionary.getVersion(), dictionary.getTokens().size());
+        return true;
+    }
+
+    /**
+     *  Loads all dictionaries of the store and encodes with the latest one.
+     */
+    public void refresh() {
+        store.ifPresent(dictionaryStore -> dictionaryStore.findAll()
+                .forEach(dictionary -> dictionaries.putIfAbsent(dictionary.getVersion(), dictionary)));
+        current = dictionaries.values().stream()
+                .max(Comparator.comparingInt(UrlDictionary::getVersion))
+                .orElse(UrlDictionary.DEFAULT);
+    }
+
+    private UrlDictionary dictionary(final int version) {
+        val dictionary = dictionaries.get(version);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        // trained by another instance since the last refresh
+        return store.flatMap(dictionaryStore -> dictionaryStore.find(version))
+                .map(found -> {
+                    dictionaries.putIfAbsent(version, found);
+                    return found;
+                })
+                .orElseThrow(() -> new IllegalStateException("unknown url dictionary version " + version));
+    }
+
+    // plain urls are only prefixed in the unlikely case they start with the marker
+    private static String escape(final String url) {
+        return !url.isEmpty() && url.charAt(0) == MARKER ? header(ESCAPED) + url : url;
+    }
+
+    private static String header(final int version) {
+        return new String(new char[] {
+                MARKER,
+                (char) (FIRST_VERSION_CHAR + version / VERSION_CHARS),
+                (char) (FIRST_VERSION_CHAR + version % VERSION_CHARS)});
+    }
+}
@@ -0,0 +1,208 @@
+package com.bw0248.urlshortener.codec;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ *  Versioned dictionary of common url parts (schemes, hosts, tracking parameter names) used by UrlCodec.
+ *
+ *  Urls are encoded by replacing the longest token at each position with a two char reference.
+ *  Literals and references only use chars below 0x80, so encoded urls take one byte per char in a Java String
+ *  (compact strings) as well as in a BSON string:
+ *  literals are printable ASCII (0x20 - 0x7E), a reference is a char 0x02 - 0x1F followed by a printable ASCII char,
+ *  which allows for MAX_TOKENS tokens. Tokens shorter than 3 chars would not save anything.
+ */
+public class UrlDictionary {
+    public static final int MAX_TOKENS = 30 * 95;
+    public static final int MIN_TOKEN_LENGTH = 3;
+    private static final char FIRST_REFERENCE = 0x02;
+    private static final char FIRST_PRINTABLE = 0x20;
+    private static final char LAST_PRINTABLE = 0x7E;
+    private static final int PRINTABLE_CHARS = LAST_PRINTABLE - FIRST_PRINTABLE + 1;
+    private static final String DELIMITERS = "/?&=#.";
+
+    /**
+     *  Built-in dictionary, always available - it must never change, as urls encoded with it could not be decoded anymore.
+     */
+    public static final UrlDictionary DEFAULT = new UrlDictionary(1, List.of(
+            "https://www.", "http://www.", "https://", "http://",
+            ".com/", ".org/", ".net/", ".de/", ".co.uk/", ".io/", ".html", ".php", ".aspx",
+            "?utm_source=", "&utm_source=", "&utm_medium=", "&utm_campaign=", "&utm_term=", "&utm_content=",
+            "?ref=", "&ref=", "?id=", "&id=", "?q=", "&lang=", "?page=", "&page=",
+            "youtube.com/watch?v=", "youtu.be/", "github.com/", "amazon.com/", "google.com/", "wikipedia.org/wiki/",
+            "/index", "/products/", "/product/", "/blog/", "/news/", "/article/", "/search", "/category/", "/en/"));
+
+    @Getter private final int version;
+    @Getter private final List<String> tokens;
+    private final int[][] tokensByFirstChar = new int[LAST_PRINTABLE + 1][];    // token indices, longest first
+
+    /**
+     * @param version
+     * @param tokens
+     * @throws IllegalArgumentException if there are more than MAX_TOKENS tokens or tokens are too short or not printable ASCII
+     */
+    public UrlDictionary(final int version, final List<String> tokens) {
+        if (tokens.size() > MAX_TOKENS) {
+            throw new IllegalArgumentException("dictionary " + version + " has more than " + MAX_TOKENS + " tokens");
+        }
+        tokens.stream()
+                .filter(token -> token.length() < MIN_TOKEN_LENGTH || !isPrintable(token))
+                .findAny()
+                .ifPresent(token -> {
+                    throw new IllegalArgumentException("invalid token '" + token + "' in dictionary " + version);
+                });
+        this.version = version;
+        this.tokens = List.copyOf(tokens);
+        val byFirstChar = IntStream.range(0, tokens.size())
+                .boxed()
+                .sorted(Comparator.comparingInt((Integer index) -> tokens.get(index).length()).reversed())
+                .collect(Collectors.groupingBy(index -> tokens.get(index).charAt(0)));
+        byFirstChar.forEach((first, indices) ->
+                tokensByFirstChar[first] = indices.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * @param url
+     * @return url with tokens replaced by references, null if url contains chars other than printable ASCII
+     */
+    public String encode(final String url) {
+        if (!isPrintable(url)) {
+            return null;
+        }
+        val encoded = new StringBuilder(url.length());
+        int position = 0;
+        while (position < url.length()) {
+            val index = longestToken(url, position);
+            if (index < 0) {
+                encoded.append(url.charAt(position++));
+            } else {
+                encoded.append((char) (FIRST_REFERENCE + index / PRINTABLE_CHARS))
+                        .append((char) (FIRST_PRINTABLE + index % PRINTABLE_CHARS));
+                position += tokens.get(index).length();
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @param encoded
+     * @param offset index of the first char of the encoded url in encoded
+     * @return decoded url
+     * @throws IllegalArgumentException if encoded is not an url encoded with this dictionary
+     */
+    public String decode(final String encoded, final int offset) {
+        val decoded = new StringBuilder(encoded.length() * 2);
+        int position = offset;
+        while (position < encoded.length()) {
+            val c = encoded.charAt(position++);
+            if (c >= FIRST_PRINTABLE) {
+                decoded.append(c);
+                continue;
+            }
+            if (c < FIRST_REFERENCE || position == encoded.length()) {
+                throw new IllegalArgumentException("invalid reference in url encoded with dictionary " + version);
+            }
+            val index = (c - FIRST_REFERENCE) * PRINTABLE_CHARS + (encoded.charAt(position++) - FIRST_PRINTABLE);
+            if (index >= tokens.size()) {
+                throw new IllegalArgumentException("unknown token " + index + " in dictionary " + version);
+            }
+            decoded.append(tokens.get(index));
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @param urls
+     * @return total length of urls encoded with this dictionary, urls that can not be encoded are counted as is
+     */
+    public long encodedLength(final Collection<String> urls) {
+        return urls.stream()
+                .mapToLong(url -> {
+                    val encoded = encode(url);
+                    return encoded == null ? url.length() : encoded.length();
+                })
+                .sum();
+    }
+
+    /**
+     *  Candidate tokens are the scheme and authority of each url and each part starting with a delimiter (/?&=#.)
+     *  up to the next one, e.g. /products, .com or ?utm_source= (parameter names include the '=').
+     *  Candidates are ranked by the chars they would save on the sample, ignoring overlaps between them.
+     *
+     * @param version
+     * @param urls sample to train on
+     * @param maxTokens
+     * @return dictionary of the maxTokens candidates saving the most chars on urls
+     */
+    public static UrlDictionary train(final int version, final Collection<String> urls, final int maxTokens) {
+        val counts = new HashMap<String, Integer>();
+        urls.stream()
+                .filter(UrlDictionary::isPrintable)
+                .forEach(url -> candidates(url).forEach(candidate -> counts.merge(candidate, 1, Integer::sum)));
+        val tokens = counts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .sorted(Comparator.comparingLong(UrlDictionary::savings).reversed())
+                .limit(Math.min(maxTokens, MAX_TOKENS))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        return new UrlDictionary(version, tokens);
+    }
+
+    private static List<String> candidates(final String url) {
+        val candidates = new ArrayList<String>();
+        val authorityStart = url.indexOf("://");
+        if (authorityStart > 0) {
+            val pathStart = url.indexOf('/', authorityStart + 3);
+            candidates.add(pathStart < 0 ? url : url.substring(0, pathStart));
+        }
+        int start = -1;     // position of the previous delimiter
+        for (int i = 0; i <= url.length(); i++) {
+            if (i < url.length() && DELIMITERS.indexOf(url.charAt(i)) < 0) {
+                continue;
+            }
+            // parameter names keep their '=', values follow it
+            val end = i < url.length() && url.charAt(i) == '=' ? i + 1 : i;
+            if (start >= 0 && end - start >= MIN_TOKEN_LENGTH) {
+                candidates.add(url.substring(start, end));
+            }
+            start = i;
+        }
+        return candidates;
+    }
+
+    private static long savings(final Map.Entry<String, Integer> candidate) {
+        return (long) candidate.getValue() * (candidate.getKey().length() - 2);
+    }
+
+    // index of the longest token at position, -1 if there is none
+    private int longestToken(final String url, final int position) {
+        val candidates = tokensByFirstChar[url.charAt(position)];
+        if (candidates != null) {
+            for (val index : candidates) {
+                if (url.startsWith(tokens.get(index), position)) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isPrintable(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            val c = value.charAt(i);
+            if (c < FIRST_PRINTABLE || c > LAST_PRINTABLE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.bw0248.urlshortener.codec;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ *  Dictionaries have to be kept as long as any url encoded with them is stored, so they are never deleted.
+ */
+public interface UrlDictionaryStore {
+    List<UrlDictionary> findAll();
+
+    Optional<UrlDictionary> find(int version);
+
+    /**
+     * @param dictionary
+     * @return false if a dictionary with the same version exists already, e.g. trained by another instance
+     */
+    boolean insert(UrlDictionary dictionary);
+}
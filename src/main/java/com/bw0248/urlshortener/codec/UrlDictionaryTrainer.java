@@ -0,0 +1,94 @@
+package com.bw0248.urlshortener.codec;
+
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ *  Periodically trains a new UrlDictionary version on a random sample of stored long urls, it replaces the current dictionary
+ *  if it encodes the sample at least url-codec.min-improvement shorter. Mappings stored before keep their dictionary.
+ *  Dictionaries trained by other instances are picked up on refresh.
+ */
+@Slf4j
+@Component
+public class UrlDictionaryTrainer {
+    private final UrlCodecConfig config;
+    private final UrlStorage storage;
+    private final UrlCodec codec;
+    private final Counter adopted;
+    private final Counter rejected;
+
+    @Autowired
+    public UrlDictionaryTrainer(
+            final UrlCodecConfig config,
+            final UrlStorage storage,
+            final UrlCodec codec,
+            final MeterRegistry meterRegistry) {
+        this.config = config;
+        this.storage = storage;
+        this.codec = codec;
+        this.adopted = trainings(meterRegistry, "adopted");
+        this.rejected = trainings(meterRegistry, "rejected");
+        Gauge.builder("shortener.url-codec.compression-ratio", codec, UrlCodec::compressionRatio)
+                .description("encoded size relative to the plain size of long urls encoded since startup")
+                .register(meterRegistry);
+        Gauge.builder("shortener.url-codec.dictionary-version", codec, urlCodec -> urlCodec.current().getVersion())
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the trained dictionary if it was adopted
+     */
+    @Scheduled(
+            initialDelayString = "${url-codec.retrain-interval-ms}",
+            fixedDelayString = "${url-codec.retrain-interval-ms}")
+    public Optional<UrlDictionary> retrain() {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        codec.refresh();
+        val current = codec.current();
+        // random rather than the first mappings in storage order, which are the oldest ones
+        val sample = storage.sampleMappings(config.getSampleSize()).stream()
+                .map(UrlMapping::getLongUrl)
+                .collect(Collectors.toList());
+        val trained = UrlDictionary.train(current.getVersion() + 1, sample, config.getMaxTokens());
+        val currentLength = current.encodedLength(sample);
+        val trainedLength = trained.encodedLength(sample);
+        log.info("dictionary version {} encodes {} sampled urls to {} chars, version {} to {} chars",
+                trained.getVersion(), sample.size(), trainedLength, current.getVersion(), currentLength);
+        if (trainedLength > currentLength * (1 - config.getMinImprovement())) {
+            rejected.increment();
+            return Optional.empty();
+        }
+        adopted.increment();
+        return codec.adopt(trained) ? Optional.of(trained) : Optional.empty();
+    }
+
+    @Scheduled(
+            initialDelayString = "${url-codec.refresh-interval-ms}",
+            fixedDelayString = "${url-codec.refresh-interval-ms}")
+    public void refresh() {
+        if (config.isEnabled()) {
+            codec.refresh();
+        }
+    }
+
+    private static Counter trainings(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder("shortener.url-codec.trainings")
+                .description("trained dictionaries by whether they replaced the current one")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
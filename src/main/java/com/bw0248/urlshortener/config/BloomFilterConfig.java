@@ -0,0 +1,23 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Bloom filter over all existing short urls, used to answer lookups of unknown short urls without a storage round trip.
+ *  Memory needed is roughly -n * ln(p) / ln(2)^2 bits, e.g. ~1.2 MB per million short urls at p = 0.01
+ */
+@Configuration
+@Data
+public class BloomFilterConfig {
+    @Value("${bloom-filter.enabled}")
+    private boolean enabled;
+
+    // number of short urls the filter is sized for - should include headroom for growth
+    @Value("${bloom-filter.expected-insertions}")
+    private long expectedInsertions;
+
+    @Value("${bloom-filter.false-positive-rate}")
+    private double falsePositiveRate;
+}
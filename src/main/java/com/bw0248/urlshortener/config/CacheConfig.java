@@ -0,0 +1,62 @@
+package com.bw0248.urlshortener.config;
+
+import com.bw0248.urlshortener.api.RedirectResponseCache;
+import com.bw0248.urlshortener.cache.MappingCache;
+import com.bw0248.urlshortener.codec.UrlCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.val;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/*
+  Replaces the default unbounded ConcurrentMapCache with a bounded MappingCache.
+  Cache statistics (hits, misses, evictions, load times) are published via actuator,
+  for both known mappings (cache=mappings) and unknown short urls (cache=mappings.unknown).
+  shortener.cache.hit-ratio is the share of lookups answered by either cache (or pinned mappings) since startup,
+  including redirects answered by RedirectResponseCache - those never reach the MappingCache.
+ */
+@Configuration
+public class CacheConfig {
+    @Bean
+    public MappingCache mappingCache(final MappingCacheConfig config, final UrlCodec codec) {
+        return new MappingCache(config, codec);
+    }
+
+    @Bean
+    public CacheManager cacheManager(final MappingCache mappingCache) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(mappingCache));
+        return cacheManager;
+    }
+
+    @Bean
+    public CacheMeterBinderProvider<MappingCache> mappingCacheMeterBinderProvider(final RedirectResponseCache redirects) {
+        return (cache, tags) -> registry -> {
+            new CaffeineCacheMetrics(cache.getNativeCache(), cache.getName(), tags).bindTo(registry);
+            cache.getUnknownMappingsCache().ifPresent(unknown ->
+                    new CaffeineCacheMetrics(unknown, cache.getName() + ".unknown", tags).bindTo(registry));
+            Gauge.builder("shortener.cache.hit-ratio", cache, mappingCache -> hitRatio(mappingCache, redirects))
+                    .tags(tags)
+                    .register(registry);
+        };
+    }
+
+    // a miss of known mappings that is a hit of unknown mappings or pinned mappings is answered from cache as well,
+    // redirect cache misses are looked up in the mapping cache, so its hits are lookups on top of the mapping cache ones
+    private static double hitRatio(final MappingCache cache, final RedirectResponseCache redirects) {
+        val stats = cache.getNativeCache().stats();
+        val unknownHits = cache.getUnknownMappingsCache()
+                .map(unknown -> unknown.stats().hitCount())
+                .orElse(0L);
+        val redirectHits = redirects.hitCount();
+        val hits = redirectHits + stats.hitCount() + unknownHits + cache.pinnedHitCount();
+        val lookups = redirectHits + stats.requestCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,30 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Snapshot of the most frequently used short urls, preloaded into the MappingCache on startup (see CacheWarmer).
+ */
+@Configuration
+@Data
+public class CacheWarmupConfig {
+    // has to survive deploys, e.g. on a volume
+    @Value("${cache-warmup.snapshot-file}")
+    private String snapshotFile;
+
+    // max number of short urls per snapshot - more than the cache holds are of no use
+    @Value("${cache-warmup.snapshot-size}")
+    private int snapshotSize;
+
+    // short urls per storage query when preloading
+    @Value("${cache-warmup.batch-size}")
+    private int batchSize;
+
+    // readiness is not held back longer than this, the rest of the snapshot is skipped
+    @Value("${cache-warmup.timeout}")
+    private Duration timeout;
+}
@@ -0,0 +1,23 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Clicks per short url, counted in memory and added to storage periodically (see ClickCounter).
+ */
+@Configuration
+@Data
+public class ClickAnalyticsConfig {
+    @Value("${click-analytics.enabled}")
+    private boolean enabled;
+
+    // max number of short urls counted between flushes, clicks of further short urls are dropped until the next flush
+    @Value("${click-analytics.max-keys}")
+    private int maxKeys;
+
+    // short urls per storage write when flushing
+    @Value("${click-analytics.flush-batch-size}")
+    private int flushBatchSize;
+}
@@ -0,0 +1,28 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Embedded storage engine (storage.engine: embedded), see EmbeddedUrlStorage.
+ *  Mappings are kept in a memory-mapped log in directory, the index is rebuilt on startup by replaying the log.
+ */
+@Configuration
+@Data
+public class EmbeddedStorageConfig {
+    @Value("${embedded-storage.directory}")
+    private String directory;
+
+    // log file is mapped and grown in regions of this size, limits the size of a single mapping
+    @Value("${embedded-storage.region-size}")
+    private int regionSize;
+
+    // ids are persisted in reservations of this size - at most this many ids are skipped after a crash
+    @Value("${embedded-storage.id-reservation-size}")
+    private long idReservationSize;
+
+    // log is compacted once this fraction of it is no longer needed
+    @Value("${embedded-storage.compaction-threshold}")
+    private double compactionThreshold;
+}
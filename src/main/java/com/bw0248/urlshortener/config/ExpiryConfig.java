@@ -0,0 +1,25 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Expiry of mappings with expiresAt (see MappingExpiry).
+ */
+@Configuration
+@Data
+public class ExpiryConfig {
+    // resolution of the timer wheel - cached mappings are evicted at most one tick after they expired
+    @Value("${expiry.tick-ms}")
+    private long tickMs;
+
+    // expired short urls are answered with 410 Gone without a storage lookup for this long
+    @Value("${expiry.gone-ttl}")
+    private Duration goneTtl;
+
+    @Value("${expiry.gone-max-size}")
+    private long goneMaxSize;
+}
@@ -0,0 +1,31 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Detection of the most requested short urls, which are pinned in the MappingCache (see HotKeyTracker).
+ *  The frequency sketch needs width * depth * 4 bytes, e.g. 1 MB for the defaults.
+ */
+@Configuration
+@Data
+public class HotKeyConfig {
+    @Value("${hot-keys.enabled}")
+    private boolean enabled;
+
+    // number of short urls tracked and pinned
+    @Value("${hot-keys.top-k}")
+    private int topK;
+
+    // counters per row, should be well above the number of distinct short urls requested per aging interval
+    @Value("${hot-keys.sketch-width}")
+    private int sketchWidth;
+
+    @Value("${hot-keys.sketch-depth}")
+    private int sketchDepth;
+
+    // counts are halved every aging interval, pinned short urls are updated at the same time
+    @Value("${hot-keys.aging-interval-ms}")
+    private long agingIntervalMs;
+}
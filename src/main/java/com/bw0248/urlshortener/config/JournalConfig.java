@@ -0,0 +1,29 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Write-ahead journal for new mappings (see MappingJournal), shorten returns once a mapping is fsync'd locally
+ *  and mappings are written to storage in bulk afterwards. Enabled with journal.enabled.
+ */
+@Configuration
+@Data
+public class JournalConfig {
+    // also read by components that have to know whether mappings might reach storage late, e.g. MongoShortUrlFilter
+    @Value("${journal.enabled}")
+    private boolean enabled;
+
+    // has to be local to the instance and survive restarts, mappings not flushed yet are replayed from here
+    @Value("${journal.directory}")
+    private String directory;
+
+    // a segment file is deleted once all of its mappings have been flushed
+    @Value("${journal.segment-size}")
+    private long segmentSize;
+
+    // max number of mappings per bulk write
+    @Value("${journal.flush-batch-size}")
+    private int flushBatchSize;
+}
@@ -0,0 +1,44 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Bounds and expiry policies of the shortUrl -> longUrl cache (see MappingCache).
+ *  A duration of 0 disables the corresponding expiry policy, a negative ttl of 0 disables negative caching.
+ */
+@Configuration
+@Data
+public class MappingCacheConfig {
+    // max number of cached mappings, only used if maxWeight is not set
+    @Value("${mapping-cache.max-size}")
+    private long maxSize;
+
+    // max summed up length of cached short and long urls (roughly chars on heap)
+    @Value("${mapping-cache.max-weight}")
+    private long maxWeight;
+
+    @Value("${mapping-cache.expire-after-access}")
+    private Duration expireAfterAccess;
+
+    @Value("${mapping-cache.expire-after-write}")
+    private Duration expireAfterWrite;
+
+    // how long unknown short urls are remembered
+    @Value("${mapping-cache.negative-ttl}")
+    private Duration negativeTtl;
+
+    @Value("${mapping-cache.negative-max-size}")
+    private long negativeMaxSize;
+
+    public boolean isWeightBounded() {
+        return maxWeight > 0;
+    }
+
+    public boolean isNegativeCaching() {
+        return !negativeTtl.isZero() && negativeMaxSize > 0;
+    }
+}
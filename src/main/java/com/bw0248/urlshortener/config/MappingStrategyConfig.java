@@ -0,0 +1,43 @@
+package com.bw0248.urlshortener.config;
+
+import com.bw0248.urlshortener.mapping.NodeIdMappingStrategy;
+import com.bw0248.urlshortener.mapping.RandomMappingStrategy;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.bw0248.urlshortener.storage.journal.MappingJournal;
+import lombok.val;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Optional;
+
+/*
+  The mapping strategy used for new short urls is qualified as ACTIVE and selected by mapping.strategy:
+  sequence (default, ids from the shared counter in storage), node-id (see NodeIdMappingStrategy)
+  or random (see RandomMappingStrategy).
+  Decoding short urls (e.g. for the off-heap cache) always uses SequenceMappingStrategy.
+
+  The journal acknowledges mappings before storage has checked their short urls for duplicates - a duplicate is only
+  detected when it is flushed, too late for collision retries. Only sequence ids are unique without that check,
+  so the journal can not be enabled with the other strategies.
+ */
+@Configuration
+public class MappingStrategyConfig {
+    public static final String ACTIVE = "activeMappingStrategy";
+
+    // the selected strategy is a bean of its own, its lifecycle must not be managed twice
+    @Bean(name = ACTIVE, destroyMethod = "")
+    public UrlMappingStrategy activeMappingStrategy(
+            final SequenceMappingStrategy sequenceMapping,
+            final Optional<NodeIdMappingStrategy> nodeIdMapping,
+            final Optional<RandomMappingStrategy> randomMapping,
+            final Optional<MappingJournal> journal) {
+        val active = nodeIdMapping.<UrlMappingStrategy>map(strategy -> strategy)
+                .or(() -> randomMapping)
+                .orElse(sequenceMapping);
+        if (journal.isPresent() && active != sequenceMapping) {
+            throw new IllegalStateException("journal.enabled requires mapping.strategy sequence");
+        }
+        return active;
+    }
+}
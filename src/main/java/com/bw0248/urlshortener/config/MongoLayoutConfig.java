@@ -0,0 +1,26 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Document layout of the mapping collection, see MongoMappingLayout.
+ *  Switching to compact needs a migration of the existing mappings first (mongo-layout.migrate, see README).
+ */
+@Configuration
+@Data
+public class MongoLayoutConfig {
+    public static final String COMPACT = "compact";
+
+    // classic or compact
+    @Value("${mongo-layout.layout}")
+    private String layout;
+
+    @Value("${mongo-layout.migration-batch-size}")
+    private int migrationBatchSize;
+
+    public boolean isCompact() {
+        return COMPACT.equals(layout);
+    }
+}
@@ -0,0 +1,39 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Read strategy for lookups by short url in mongo (see MongoShortUrlReader).
+ *  Read preferences are given by name, e.g. primary, secondaryPreferred or nearest.
+ */
+@Configuration
+@Data
+public class MongoReadConfig {
+    // mappings never change once written, only mappings not replicated yet are missed on secondaries
+    @Value("${mongo-reads.read-preference}")
+    private String readPreference;
+
+    // send a second read if the first did not answer within the percentile of recent read latencies
+    @Value("${mongo-reads.hedge.enabled}")
+    private boolean hedgeEnabled;
+
+    @Value("${mongo-reads.hedge.read-preference}")
+    private String hedgeReadPreference;
+
+    @Value("${mongo-reads.hedge.percentile}")
+    private double hedgePercentile;
+
+    @Value("${mongo-reads.hedge.min-delay}")
+    private Duration hedgeMinDelay;
+
+    @Value("${mongo-reads.hedge.max-delay}")
+    private Duration hedgeMaxDelay;
+
+    // reads in flight at once, reads beyond are not hedged
+    @Value("${mongo-reads.hedge.max-concurrent}")
+    private int hedgeMaxConcurrent;
+}
@@ -0,0 +1,36 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Short urls generated from a node id and a counter local to the node (see NodeIdMappingStrategy),
+ *  used with mapping.strategy node-id.
+ */
+@Configuration
+@Data
+public class NodeIdMappingConfig {
+    // unique per instance, between 1 and 2^node-bits - 1 - 0 is reserved for ids of the shared sequence
+    @Value("${node-id-mapping.node-id}")
+    private long nodeId;
+
+    @Value("${node-id-mapping.node-bits}")
+    private int nodeBits;
+
+    // width of the generated ids, every node can generate 2^(id-bits - node-bits) ids
+    @Value("${node-id-mapping.id-bits}")
+    private int idBits;
+
+    // ids are permuted with this key so short urls are not guessable, empty to encode ids as they are
+    @Value("${node-id-mapping.permutation-key}")
+    private String permutationKey;
+
+    // has to be local to the instance and survive restarts, the reserved part of the counter is persisted here
+    @Value("${node-id-mapping.directory}")
+    private String directory;
+
+    // counter values reserved per write to the counter file
+    @Value("${node-id-mapping.block-size}")
+    private int blockSize;
+}
@@ -0,0 +1,23 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Off-heap store of sequence id -> long url in front of storage lookups by short url (see OffHeapMappingStore).
+ *  Direct memory is allocated segment by segment up to capacity, -XX:MaxDirectMemorySize has to allow for it.
+ */
+@Configuration
+@Data
+public class OffHeapCacheConfig {
+    @Value("${off-heap-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${off-heap-cache.capacity-bytes}")
+    private long capacityBytes;
+
+    // unit of allocation and eviction
+    @Value("${off-heap-cache.segment-size}")
+    private int segmentSize;
+}
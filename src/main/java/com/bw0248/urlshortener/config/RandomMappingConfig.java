@@ -0,0 +1,40 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Random short urls (see RandomMappingStrategy), used with mapping.strategy random.
+ */
+@Configuration
+@Data
+public class RandomMappingConfig {
+    // chars per short url, e.g. 8 chars of base36 -> roughly 2.7e12 codes
+    @Value("${random-mapping.length}")
+    private int length;
+
+    // candidate codes generated and checked against storage ahead of time
+    @Value("${random-mapping.pool-size}")
+    private int poolSize;
+
+    // candidates checked with a single storage lookup
+    @Value("${random-mapping.refill-batch-size}")
+    private int refillBatchSize;
+
+    // upper bound of storage lookups per refill, the pool is topped up by the next refill
+    @Value("${random-mapping.max-refill-rounds}")
+    private int maxRefillRounds;
+
+    // a refill batch with a smaller share of free candidates stops refilling for refill-backoff-ms,
+    // the keyspace is running full and further batches would mostly look up taken candidates
+    @Value("${random-mapping.min-free-ratio}")
+    private double minFreeRatio;
+
+    @Value("${random-mapping.refill-backoff-ms}")
+    private long refillBackoffMs;
+
+    // a short url rejected as duplicate by storage is replaced by another one at most this often
+    @Value("${random-mapping.max-collision-retries}")
+    private int maxCollisionRetries;
+}
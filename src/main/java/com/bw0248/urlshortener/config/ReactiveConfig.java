@@ -0,0 +1,19 @@
+package com.bw0248.urlshortener.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/*
+  Tomcat is on the classpath for the default servlet stack and would be picked as reactive server as well,
+  Netty is preferred for profile reactive as its event loop does not need a thread per connection.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,22 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Ready-to-send redirect responses of the most requested short urls (see RedirectResponseCache).
+ *  Entries are a few hundred bytes each, so this is meant for the hot set only - the MappingCache behind it holds the rest.
+ */
+@Configuration
+@Data
+public class RedirectCacheConfig {
+    @Value("${redirect-cache.max-size}")
+    private long maxSize;
+
+    // bounds how long a redirect is served after its mapping was removed
+    @Value("${redirect-cache.expire-after-write}")
+    private Duration expireAfterWrite;
+}
@@ -0,0 +1,54 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ *  Policies shared by all calls to the storage engine (see ResilientUrlStorage).
+ */
+@Configuration
+@Data
+public class ResilienceConfig {
+    @Value("${resilience.retry.max-retries}")
+    private int maxRetries;
+
+    // delay doubles per retry up to max-delay, each delay is varied randomly by +- jitter (fraction of the delay)
+    @Value("${resilience.retry.delay}")
+    private Duration retryDelay;
+
+    @Value("${resilience.retry.max-delay}")
+    private Duration retryMaxDelay;
+
+    @Value("${resilience.retry.jitter}")
+    private double retryJitter;
+
+    // breaker opens once this percentage of at least minimum-calls calls within period failed
+    @Value("${resilience.circuit-breaker.failure-rate-threshold}")
+    private int failureRateThreshold;
+
+    @Value("${resilience.circuit-breaker.minimum-calls}")
+    private int minimumCalls;
+
+    @Value("${resilience.circuit-breaker.period}")
+    private Duration failurePeriod;
+
+    // calls are rejected for open-duration, then trial calls decide whether to close again
+    @Value("${resilience.circuit-breaker.open-duration}")
+    private Duration openDuration;
+
+    @Value("${resilience.circuit-breaker.half-open-calls}")
+    private int halfOpenCalls;
+
+    // calls beyond max concurrent calls wait up to max-wait for a slot, then they are rejected
+    @Value("${resilience.bulkhead.max-concurrent-reads}")
+    private int maxConcurrentReads;
+
+    @Value("${resilience.bulkhead.max-concurrent-writes}")
+    private int maxConcurrentWrites;
+
+    @Value("${resilience.bulkhead.max-wait}")
+    private Duration maxWait;
+}
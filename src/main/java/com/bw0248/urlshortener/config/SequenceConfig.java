@@ -0,0 +1,25 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Controls how sequence ids are drawn from the shared counter in storage.
+ *  A block size of 1 reserves every id with its own round trip,
+ *  larger blocks are reserved with a single increment and handed out locally (see SequenceBlockAllocator).
+ */
+@Configuration
+@Data
+public class SequenceConfig {
+    @Value("${sequence.block-size}")
+    private int blockSize;
+
+    // fraction of the current block left when the next block is reserved in the background
+    @Value("${sequence.refill-threshold}")
+    private double refillThreshold;
+
+    public boolean isBlockAllocation() {
+        return blockSize > 1;
+    }
+}
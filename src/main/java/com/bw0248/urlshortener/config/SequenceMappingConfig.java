@@ -52,6 +52,13 @@ public class SequenceMappingConfig {
         if (alphabet.length() > ALLOWED_CHARACTERS.length()) {
             throw new IllegalArgumentException("alphabet cannot be larger than " + ALLOWED_CHARACTERS.length() + " characters");
         }
+        if (alphabet.length() < 2) {
+            throw new IllegalArgumentException("alphabet needs at least 2 characters");
+        }
+        // every character has to be unique, otherwise mappings could not be decoded unambiguously
+        if (alphabet.chars().distinct().count() != alphabet.length()) {
+            throw new IllegalArgumentException("alphabet must not contain duplicate characters");
+        }
 
         // validate only valid characters present in supplied alphabet
         val illegalChar = alphabet.chars()
@@ -7,6 +7,15 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @Data
 public class ServiceConfig {
+    // retries of ReactiveShortenerService - calls to UrlStorage are retried by ResilientUrlStorage
     @Value("${service.max-retries}")
     private int maxRetries;
+
+    // return existing mapping when shortening an already shortened url instead of creating a new one
+    @Value("${service.deduplicate}")
+    private boolean deduplicate;
+
+    // max number of longUrl -> mapping entries kept in memory for deduplication
+    @Value("${service.dedup-cache-size}")
+    private long dedupCacheSize;
 }
@@ -0,0 +1,67 @@
+package com.bw0248.urlshortener.config;
+
+import com.bw0248.urlshortener.cache.OffHeapMappingStore;
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.OffHeapCachingUrlStorage;
+import com.bw0248.urlshortener.storage.ResilientUrlStorage;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import com.bw0248.urlshortener.storage.journal.JournalingUrlStorage;
+import com.bw0248.urlshortener.storage.journal.MappingJournal;
+import com.bw0248.urlshortener.storage.mongo.ClassicMappingLayout;
+import com.bw0248.urlshortener.storage.mongo.CompactMappingLayout;
+import com.bw0248.urlshortener.storage.mongo.MongoMappingLayout;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.Optional;
+
+/*
+  The storage engine selected by storage.engine is qualified as ENGINE,
+  the primary UrlStorage injected everywhere else is the engine wrapped by the enabled decorators,
+  from inside out: resilience policies, write-ahead journal, off-heap cache.
+  Requests of the reactive profile do not go through these decorators, see ReactiveShortenerService.
+ */
+@Configuration
+public class StorageConfig {
+    public static final String ENGINE = "storageEngine";
+
+    // the engine is a bean of its own, its lifecycle must not be managed twice
+    @Bean(destroyMethod = "")
+    @Primary
+    public UrlStorage urlStorage(
+            @Qualifier(ENGINE) final UrlStorage engine,
+            final ResilienceConfig resilienceConfig,
+            final Optional<MappingJournal> journal,
+            final OffHeapCacheConfig offHeapCacheConfig,
+            final SequenceMappingStrategy sequenceMapping,
+            final ShortenerMetrics metrics,
+            final MeterRegistry meterRegistry) {
+        UrlStorage storage = new ResilientUrlStorage(engine, resilienceConfig, metrics, meterRegistry);
+        if (journal.isPresent()) {
+            storage = new JournalingUrlStorage(storage, journal.get());
+        }
+        if (offHeapCacheConfig.isEnabled()) {
+            storage = new OffHeapCachingUrlStorage(
+                    storage,
+                    new OffHeapMappingStore(offHeapCacheConfig.getCapacityBytes(), offHeapCacheConfig.getSegmentSize()),
+                    sequenceMapping,
+                    meterRegistry);
+        }
+        return storage;
+    }
+
+    @Bean
+    public MongoMappingLayout mongoMappingLayout(
+            final MongoLayoutConfig config,
+            final SequenceMappingStrategy sequenceMapping,
+            final UrlCodec codec) {
+        return config.isCompact()
+                ? new CompactMappingLayout(sequenceMapping, codec)
+                : new ClassicMappingLayout(codec);
+    }
+}
@@ -0,0 +1,27 @@
+package com.bw0248.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *  Dictionary compression of long urls in the mapping cache and in mongo, see UrlCodec.
+ */
+@Configuration
+@Data
+public class UrlCodecConfig {
+    // urls encoded before are decoded either way
+    @Value("${url-codec.enabled}")
+    private boolean enabled;
+
+    // long urls of stored mappings a new dictionary version is trained on
+    @Value("${url-codec.sample-size}")
+    private int sampleSize;
+
+    @Value("${url-codec.max-tokens}")
+    private int maxTokens;
+
+    // a trained dictionary replaces the current one only if it encodes the sample at least that much shorter
+    @Value("${url-codec.min-improvement}")
+    private double minImprovement;
+}
@@ -0,0 +1,14 @@
+package com.bw0248.urlshortener.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ *  Storage call rejected without trying - circuit breaker open or too many concurrent calls
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class StorageUnavailableException extends StorageException {
+    public StorageUnavailableException(final String message, final Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,84 @@
+package com.bw0248.urlshortener.mapping;
+
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ *  Keyed bijection on integers of a fixed number of bits, e.g. to turn consecutive ids into ids that are not guessable.
+ *
+ *  A balanced Feistel network: the value is split into two halves, every round replaces (left, right) with
+ *  (right, left ^ f(right)). This is invertible for any round function f, so the result is a permutation of
+ *  [0, 2^bits) - distinct inputs never collide and the output has the same width as the input.
+ *  Round keys are derived from the key with SHA-256, the round function is the splitmix64 finalizer.
+ *
+ *  Not a cipher in a cryptographic sense, it only has to keep neighbouring ids from producing neighbouring outputs.
+ */
+public class FeistelPermutation {
+    private static final int ROUNDS = 4;
+
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys;
+
+    /**
+     * @param bits even number of bits of the permuted values, at most 62
+     * @param key
+     */
+    public FeistelPermutation(final int bits, final String key) {
+        if (bits < 2 || bits > 62 || bits % 2 != 0) {
+            throw new IllegalArgumentException("bits has to be an even number between 2 and 62");
+        }
+        this.halfBits = bits / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        this.roundKeys = roundKeys(key);
+    }
+
+    public long permute(final long value) {
+        var left = value >>> halfBits;
+        var right = value & halfMask;
+        for (int round = 0; round < ROUNDS; round++) {
+            val next = left ^ f(right, round);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * Reverse of permute
+     */
+    public long invert(final long value) {
+        var left = value >>> halfBits;
+        var right = value & halfMask;
+        for (int round = ROUNDS - 1; round >= 0; round--) {
+            val previous = right ^ f(left, round);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long f(final long half, final int round) {
+        var x = half ^ roundKeys[round];
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return (x ^ (x >>> 31)) & halfMask;
+    }
+
+    private static long[] roundKeys(final String key) {
+        try {
+            val digest = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+            val keys = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                keys[round] = digest.getLong();
+            }
+            return keys;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.bw0248.urlshortener.mapping;
+
+import com.bw0248.urlshortener.config.NodeIdMappingConfig;
+import com.bw0248.urlshortener.storage.SequenceBlockAllocator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ *  Generates unique short urls without storage round trips or coordination between instances.
+ *
+ *  Every instance has a unique node id, ids are composed of the node id in the upper node-bits and a counter
+ *  local to the instance in the remaining bits:
+ *      id = nodeId << (idBits - nodeBits) | counter
+ *  Optionally ids are permuted with a keyed FeistelPermutation, which keeps them unique and id-bits wide.
+ *  The id is encoded like a sequence id (see SequenceMappingStrategy), e.g. 40 bit ids fit into 8 chars of base36.
+ *
+ *  Counter values are reserved in blocks, the end of the reserved range is fsync'd to a file before any of them
+ *  is handed out, so counter values are never reused after a restart - values of a block not used up are lost.
+ *  Uniqueness relies on node ids being unique, two instances with the same node id produce the same short urls.
+ *
+ *  Node id 0 is reserved: its ids are the ones of the shared sequence (SequenceMappingStrategy), so short urls created
+ *  before switching to this strategy keep their range as long as the shared counter stays below 2^(id-bits - node-bits).
+ *  Permuted ids of other nodes can still hit an existing sequence short url (rarely, those are a tiny share of the
+ *  id space) - such collisions are retried with the next id.
+ */
+@Slf4j
+@Component(value = "NodeIdMapping")
+@ConditionalOnProperty(name = "mapping.strategy", havingValue = "node-id")
+public class NodeIdMappingStrategy implements UrlMappingStrategy {
+    // fraction of the current block left when the next block is reserved in the background
+    private static final double REFILL_THRESHOLD = 0.2;
+    private static final int MAX_COLLISION_RETRIES = 3;
+
+    private final SequenceMappingStrategy sequenceMapping;
+    private final long nodePrefix;
+    private final long maxCounter;
+    private final Optional<FeistelPermutation> permutation;
+    private final Path counterFile;
+    private final SequenceBlockAllocator counter;
+    private long reserved;      // counter values below are persisted as reserved, guarded by this
+
+    @Autowired
+    public NodeIdMappingStrategy(
+            final NodeIdMappingConfig config,
+            final SequenceMappingStrategy sequenceMapping,
+            final MeterRegistry meterRegistry) throws IOException {
+        if (config.getNodeBits() < 1 || config.getNodeBits() >= config.getIdBits() || config.getIdBits() > 62) {
+            throw new IllegalArgumentException("node bits have to be between 1 and id bits - 1, id bits at most 62");
+        }
+        if (config.getNodeId() < 1 || config.getNodeId() >= 1L << config.getNodeBits()) {
+            throw new IllegalArgumentException("node id has to be between 1 and " + ((1L << config.getNodeBits()) - 1)
+                    + ", 0 is reserved for the shared sequence");
+        }
+        val counterBits = config.getIdBits() - config.getNodeBits();
+        this.sequenceMapping = sequenceMapping;
+        this.nodePrefix = config.getNodeId() << counterBits;
+        this.maxCounter = (1L << counterBits) - 1;
+        this.permutation = config.getPermutationKey().isEmpty()
+                ? Optional.empty()
+                : Optional.of(new FeistelPermutation(config.getIdBits(), config.getPermutationKey()));
+
+        val directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        this.counterFile = directory.resolve("node-" + config.getNodeId() + ".counter");
+        this.reserved = Files.exists(counterFile)
+                ? Long.parseLong(Files.readString(counterFile, StandardCharsets.UTF_8).strip())
+                : 0;
+        log.info("node {} continues its counter at {}", config.getNodeId(), reserved);
+        this.counter = new SequenceBlockAllocator(this::reserve, config.getBlockSize(), REFILL_THRESHOLD, meterRegistry);
+    }
+
+    @Override
+    public String map(final String url, final long sequence) {
+        return sequenceMapping.encode(nextId());
+    }
+
+    @Override
+    public boolean usesSequence() {
+        return false;
+    }
+
+    // only short urls created with the shared sequence can collide, see class comment
+    @Override
+    public boolean retryCollision(final String shortUrl, final int attempt) {
+        log.warn("short url {} of node exists already, retrying with the next id", shortUrl);
+        return attempt <= MAX_COLLISION_RETRIES;
+    }
+
+    // package-private for tests
+    long nextId() {
+        val value = counter.nextId();
+        if (value > maxCounter) {
+            throw new IllegalStateException("counter of node exhausted, node bits or id bits have to be adjusted");
+        }
+        val id = nodePrefix | value;
+        return permutation.map(p -> p.permute(id)).orElse(id);
+    }
+
+    private synchronized long reserve(final long count) {
+        val first = reserved;
+        val tmpFile = counterFile.resolveSibling(counterFile.getFileName() + ".tmp");
+        try (val channel = FileChannel.open(tmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(first + count).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reserving counter values failed", e);
+        }
+        try {
+            Files.move(tmpFile, counterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reserving counter values failed", e);
+        }
+        reserved = first + count;
+        return first;
+    }
+}
@@ -0,0 +1,200 @@
+package com.bw0248.urlshortener.mapping;
+
+import com.bw0248.urlshortener.config.RandomMappingConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ *  Short urls of a fixed length with random chars of the sequence alphabet, no sequence ids needed.
+ *
+ *  Candidates are generated ahead of time into a pool, a background thread refills the pool in batches once it is
+ *  half empty and drops candidates that are taken already with a single storage lookup per batch. map takes the next
+ *  candidate from the pool, only if the pool ran dry a candidate is generated inline without checking storage.
+ *  A refill looks up at most max-refill-rounds batches. If the share of free candidates in a batch drops below
+ *  min-free-ratio, refilling stops and is not triggered again for refill-backoff-ms - most of the keyspace is taken
+ *  and storage lookups would mostly find taken candidates.
+ *  Candidates can still collide with mappings inserted after they were checked (e.g. by other instances),
+ *  those are rejected as duplicates by storage and retried with another candidate (see retryCollision).
+ *
+ *  The share of taken candidates per batch is published as collision probability, it grows with the number of stored
+ *  mappings relative to the keyspace and tells when the length of short urls has to be increased.
+ */
+@Slf4j
+@Component(value = "RandomMapping")
+@ConditionalOnProperty(name = "mapping.strategy", havingValue = "random")
+public class RandomMappingStrategy implements UrlMappingStrategy {
+    private final SequenceMappingStrategy sequenceMapping;
+    private final UrlStorage storage;
+    private final RandomMappingConfig config;
+    private final long lowest;      // smallest value encoded with length chars
+    private final long highest;     // exclusive
+    private final SecureRandom random = new SecureRandom();
+    private final BlockingQueue<String> pool;
+    private final AtomicBoolean refillInProgress = new AtomicBoolean(false);
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        val thread = new Thread(runnable, "random-mapping-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter freeCandidates;
+    private final Counter takenCandidates;
+    private final Counter poolMisses;
+    private final Counter collisions;
+    private final Counter collisionRetriesExhausted;
+    private final Counter refillBackoffs;
+    private volatile double collisionProbability;
+    private volatile long refillNotBefore = System.nanoTime();
+
+    @Autowired
+    public RandomMappingStrategy(
+            final RandomMappingConfig config,
+            final SequenceMappingConfig sequenceMappingConfig,
+            final SequenceMappingStrategy sequenceMapping,
+            final UrlStorage storage,
+            final MeterRegistry meterRegistry) {
+        val base = sequenceMappingConfig.getBase();
+        long lowest = 1;
+        for (int i = 1; i < config.getLength(); i++) {
+            if (lowest > Long.MAX_VALUE / base / base) {
+                throw new IllegalArgumentException("random short urls of length " + config.getLength() + " do not fit into a long");
+            }
+            lowest *= base;
+        }
+        if (config.getLength() < 1 || config.getRefillBatchSize() < 1 || config.getPoolSize() < config.getRefillBatchSize()) {
+            throw new IllegalArgumentException("length and refill batch size have to be positive, pool size at least the batch size");
+        }
+        if (config.getMaxRefillRounds() < 1 || config.getMinFreeRatio() < 0 || config.getMinFreeRatio() > 1) {
+            throw new IllegalArgumentException("max refill rounds have to be positive, min free ratio in [0, 1]");
+        }
+        this.sequenceMapping = sequenceMapping;
+        this.storage = storage;
+        this.config = config;
+        this.lowest = config.getLength() == 1 ? 0 : lowest;
+        this.highest = lowest * base;
+        this.pool = new ArrayBlockingQueue<>(config.getPoolSize());
+        this.freeCandidates = candidates(meterRegistry, "free");
+        this.takenCandidates = candidates(meterRegistry, "taken");
+        this.poolMisses = Counter.builder("shortener.random-mapping.pool-misses")
+                .description("random short urls generated inline because the pool was empty")
+                .register(meterRegistry);
+        this.collisions = Counter.builder("shortener.random-mapping.collisions")
+                .description("random short urls rejected as duplicate by storage")
+                .register(meterRegistry);
+        this.collisionRetriesExhausted = Counter.builder("shortener.random-mapping.collision-retries-exhausted")
+                .description("shorten requests failed because every retried short url collided")
+                .register(meterRegistry);
+        this.refillBackoffs = Counter.builder("shortener.random-mapping.refill-backoffs")
+                .description("refills stopped because the share of free candidates was below min-free-ratio")
+                .register(meterRegistry);
+        Gauge.builder("shortener.random-mapping.pool", pool, BlockingQueue::size)
+                .description("checked candidates ready to be handed out")
+                .register(meterRegistry);
+        Gauge.builder("shortener.random-mapping.collision-probability", this, RandomMappingStrategy::getCollisionProbability)
+                .description("share of candidates taken already in the last refill batch")
+                .register(meterRegistry);
+        triggerRefill();
+    }
+
+    @Override
+    public String map(final String url, final long sequence) {
+        var shortUrl = pool.poll();
+        if (shortUrl == null) {
+            poolMisses.increment();
+            shortUrl = sequenceMapping.encode(random.longs(1, lowest, highest).iterator().nextLong());
+        }
+        if (pool.size() <= config.getPoolSize() / 2) {
+            triggerRefill();
+        }
+        return shortUrl;
+    }
+
+    @Override
+    public boolean usesSequence() {
+        return false;
+    }
+
+    @Override
+    public boolean retryCollision(final String shortUrl, final int attempt) {
+        collisions.increment();
+        if (attempt > config.getMaxCollisionRetries()) {
+            log.warn("random short url collided {} times, keyspace might be running full", attempt);
+            collisionRetriesExhausted.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public double getCollisionProbability() {
+        return collisionProbability;
+    }
+
+    @PreDestroy
+    public void close() {
+        refillExecutor.shutdownNow();
+    }
+
+    // package-private for tests
+    void refill() {
+        for (int round = 0; round < config.getMaxRefillRounds() && pool.remainingCapacity() >= config.getRefillBatchSize(); round++) {
+            val candidates = random.longs(config.getRefillBatchSize(), lowest, highest)
+                    .mapToObj(sequenceMapping::encode)
+                    .collect(Collectors.toCollection(HashSet::new));
+            val taken = storage.findMappingsByShortUrls(candidates).stream()
+                    .map(UrlMapping::getShortUrl)
+                    .collect(Collectors.toSet());
+            candidates.removeAll(taken);
+            candidates.forEach(pool::offer);
+            freeCandidates.increment(candidates.size());
+            takenCandidates.increment(taken.size());
+            collisionProbability = (double) taken.size() / (candidates.size() + taken.size());
+            if (1 - collisionProbability < config.getMinFreeRatio()) {
+                log.warn("{} of random short url candidates are taken, pausing refills for {} ms - keyspace is running full",
+                        collisionProbability, config.getRefillBackoffMs());
+                refillBackoffs.increment();
+                refillNotBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getRefillBackoffMs());
+                return;
+            }
+        }
+    }
+
+    private void triggerRefill() {
+        if (System.nanoTime() - refillNotBefore < 0 || !refillInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        refillExecutor.execute(() -> {
+            try {
+                refill();
+            } catch (RuntimeException e) {
+                log.warn("unable to refill pool of random short urls", e);
+            } finally {
+                refillInProgress.set(false);
+            }
+        });
+    }
+
+    private static Counter candidates(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder("shortener.random-mapping.candidates")
+                .description("random short urls checked against storage ahead of time")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -5,6 +5,9 @@ import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.OptionalLong;
+
 /**
  *  Inspired by: https://stackoverflow.com/a/742047/11120993
  *  Unique DB sequence id is translated to base n where n is supplied by SequenceMappingConfig.
@@ -22,30 +25,128 @@ import org.springframework.stereotype.Component;
  *          3 -> 11 -> "bb"
  *
  *  Afterwards the possible mapping range is exhausted.
+ *
+ *  Encoding first determines the number of digits, then fills an exactly sized char[] from right to left.
+ *  For bases that are a power of two (e.g. 4, 8, 32, 64) digits are extracted with shifts and masks instead of division.
+ *  The mapping is a bijection between non-negative longs and canonical words (no leading zero digit),
+ *  decode reverses it with a lookup table from alphabet char to digit.
  */
 @Component(value = "SequenceMapping")
 public class SequenceMappingStrategy implements UrlMappingStrategy {
-    private final SequenceMappingConfig config;
+    private static final int INVALID_DIGIT = -1;
+
+    private final char[] alphabet;
+    private final int base;
+    private final int shift;            // log2(base) if base is a power of two, otherwise -1
+    private final long mask;
+    private final long[] powers;        // powers[i] = base ** i, as long as it fits into a long
+    private final byte[] digits;        // alphabet char -> digit, INVALID_DIGIT for chars not in alphabet
 
     @Autowired
     public SequenceMappingStrategy(final SequenceMappingConfig config) {
-        this.config = config;
+        this.alphabet = config.getAlphabet().toCharArray();
+        this.base = alphabet.length;
+        this.shift = Integer.bitCount(base) == 1 ? Integer.numberOfTrailingZeros(base) : -1;
+        this.mask = base - 1;
+        this.powers = powersOf(base);
+        this.digits = new byte[128];
+        Arrays.fill(digits, (byte) INVALID_DIGIT);
+        for (int i = 0; i < alphabet.length; i++) {
+            digits[alphabet[i]] = (byte) i;
+        }
     }
 
     @Override
     public String map(final String original , final long sequenceId) {
-        if (sequenceId == 0) {
-            return String.valueOf(config.getAlphabet().charAt(0));
-        }
+        return encode(sequenceId);
+    }
 
-        StringBuilder builder = new StringBuilder();
+    public String encode(final long sequenceId) {
+        if (sequenceId < 0) {
+            throw new IllegalArgumentException("sequence id must not be negative");
+        }
+        val word = new char[numDigits(sequenceId)];
         var number = sequenceId;
-        while (number > 0) {
-            val remainder = number % config.getBase();
-            builder.append(config.getAlphabet().charAt((int) remainder));
-            number = number / config.getBase();
+        if (shift > 0) {
+            for (int i = word.length - 1; i >= 0; i--) {
+                word[i] = alphabet[(int) (number & mask)];
+                number >>>= shift;
+            }
+        } else {
+            for (int i = word.length - 1; i >= 0; i--) {
+                word[i] = alphabet[(int) (number % base)];
+                number /= base;
+            }
+        }
+        return new String(word);
+    }
+
+    /**
+     * Reverse of encode
+     *
+     * @param shortUrl
+     * @return sequence id shortUrl was encoded from
+     * @throws IllegalArgumentException if shortUrl is not a word that can be produced by encode
+     */
+    public long decode(final String shortUrl) {
+        return tryDecode(shortUrl)
+                .orElseThrow(() -> new IllegalArgumentException(shortUrl + " is not a valid sequence mapping"));
+    }
+
+    /**
+     * Like decode, but without exceptions for invalid input - e.g. for validating user supplied short urls
+     *
+     * @param shortUrl
+     * @return sequence id shortUrl was encoded from, OptionalLong::empty if shortUrl is not a valid mapping
+     */
+    public OptionalLong tryDecode(final String shortUrl) {
+        val length = shortUrl.length();
+        if (length == 0 || length > powers.length || (length > 1 && digit(shortUrl.charAt(0)) == 0)) {
+            return OptionalLong.empty();
+        }
+        long number = 0;
+        for (int i = 0; i < length; i++) {
+            val digit = digit(shortUrl.charAt(i));
+            if (digit == INVALID_DIGIT) {
+                return OptionalLong.empty();
+            }
+            // overflow check: number * base + digit must not exceed Long.MAX_VALUE
+            if (number > (Long.MAX_VALUE - digit) / base) {
+                return OptionalLong.empty();
+            }
+            number = shift > 0 ? (number << shift) | digit : number * base + digit;
         }
+        return OptionalLong.of(number);
+    }
 
-        return builder.reverse().toString();
+    private int digit(final char c) {
+        return c < digits.length ? digits[c] : INVALID_DIGIT;
+    }
+
+    private int numDigits(final long number) {
+        if (shift > 0) {
+            val bits = Math.max(1, Long.SIZE - Long.numberOfLeadingZeros(number));
+            return (bits + shift - 1) / shift;
+        }
+        int count = 1;
+        while (count < powers.length && number >= powers[count]) {
+            count++;
+        }
+        return count;
+    }
+
+    private static long[] powersOf(final int base) {
+        int count = 1;
+        long power = 1;
+        while (power <= Long.MAX_VALUE / base) {
+            power *= base;
+            count++;
+        }
+        val powers = new long[count];
+        powers[0] = 1;
+        for (int i = 1; i < count; i++) {
+            powers[i] = powers[i - 1] * base;
+        }
+        return powers;
     }
 }
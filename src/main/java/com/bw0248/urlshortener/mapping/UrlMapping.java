@@ -1,11 +1,21 @@
 package com.bw0248.urlshortener.mapping;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
-@AllArgsConstructor
+import java.time.Instant;
+
+@AllArgsConstructor(onConstructor_ = @JsonCreator)
 @Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class UrlMapping {
     private final String longUrl;
     private final String shortUrl;
+    private final Instant expiresAt;    // null if the mapping does not expire
+
+    public UrlMapping(final String longUrl, final String shortUrl) {
+        this(longUrl, shortUrl, null);
+    }
 }
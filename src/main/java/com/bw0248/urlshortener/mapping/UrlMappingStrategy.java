@@ -2,5 +2,27 @@ package com.bw0248.urlshortener.mapping;
 
 @FunctionalInterface
 public interface UrlMappingStrategy {
+    // passed as sequence to strategies that do not use sequence ids
+    long NO_SEQUENCE = -1;
+
     String map(final String url, final long sequence);
+
+    /**
+     * @return false if the strategy generates unique short urls on its own and ignores the sequence passed to map,
+     * no sequence ids are reserved in storage for it then
+     */
+    default boolean usesSequence() {
+        return true;
+    }
+
+    /**
+     * Called when storage rejected a short url produced by map as duplicate
+     *
+     * @param shortUrl
+     * @param attempt number of short urls rejected for the same url so far, starting at 1
+     * @return true if the mapping should be inserted again with another short url from map
+     */
+    default boolean retryCollision(final String shortUrl, final int attempt) {
+        return false;
+    }
 }
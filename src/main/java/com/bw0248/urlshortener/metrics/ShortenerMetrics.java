@@ -0,0 +1,82 @@
+package com.bw0248.urlshortener.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ *  Hot path meters, exposed via /actuator/prometheus (and /actuator/metrics):
+ *      * shortener.redirect            latency of resolving a short url, outcome=found|not_found (count of not_found -> 404 rate)
+ *      * shortener.shorten             latency of shortening a url, outcome=success|failure
+ *      * shortener.sequence.allocation latency of retrieving the next unique id
+ *      * shortener.storage.retries     failed storage attempts that are retried, exhausted=false|true
+ *      * shortener.storage.duplicate-short-urls  inserts rejected because the short url already exists
+ *
+ *  Timers publish p50/p99 as well as a histogram, so percentiles can also be aggregated across instances.
+ *  Cache hit ratio is published together with the cache statistics, see CacheConfig.
+ */
+@Component
+public class ShortenerMetrics {
+    private final Timer redirectFound;
+    private final Timer redirectNotFound;
+    private final Timer shortenSuccess;
+    private final Timer shortenFailure;
+    private final Timer sequenceAllocation;
+    private final Counter storageRetries;
+    private final Counter storageRetriesExhausted;
+    private final Counter duplicateShortUrls;
+
+    @Autowired
+    public ShortenerMetrics(final MeterRegistry meterRegistry) {
+        this.redirectFound = latencyTimer("shortener.redirect", "found", meterRegistry);
+        this.redirectNotFound = latencyTimer("shortener.redirect", "not_found", meterRegistry);
+        this.shortenSuccess = latencyTimer("shortener.shorten", "success", meterRegistry);
+        this.shortenFailure = latencyTimer("shortener.shorten", "failure", meterRegistry);
+        this.sequenceAllocation = Timer.builder("shortener.sequence.allocation")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.storageRetries = Counter.builder("shortener.storage.retries")
+                .tag("exhausted", "false")
+                .register(meterRegistry);
+        this.storageRetriesExhausted = Counter.builder("shortener.storage.retries")
+                .tag("exhausted", "true")
+                .register(meterRegistry);
+        this.duplicateShortUrls = Counter.builder("shortener.storage.duplicate-short-urls")
+                .register(meterRegistry);
+    }
+
+    public void redirected(final Timer.Sample sample, final boolean found) {
+        sample.stop(found ? redirectFound : redirectNotFound);
+    }
+
+    public void shortened(final Timer.Sample sample, final boolean success) {
+        sample.stop(success ? shortenSuccess : shortenFailure);
+    }
+
+    public void sequenceAllocated(final Timer.Sample sample) {
+        sample.stop(sequenceAllocation);
+    }
+
+    public void storageRetry() {
+        storageRetries.increment();
+    }
+
+    public void storageRetriesExhausted() {
+        storageRetriesExhausted.increment();
+    }
+
+    public void duplicateShortUrl() {
+        duplicateShortUrls.increment();
+    }
+
+    private static Timer latencyTimer(final String name, final String outcome, final MeterRegistry meterRegistry) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,122 @@
+package com.bw0248.urlshortener.storage;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Thread-safe Bloom filter over strings (e.g. all existing short urls).
+ *  mightContain == false means the string was definitely never added, true means it was probably added.
+ *
+ *  Bits are set with CAS, so concurrent puts and lookups do not need a lock.
+ *  Indices are derived from two 64 bit hashes via double hashing (Kirsch/Mitzenmacher).
+ *  Sized for expectedInsertions - once more strings are added the actual false positive rate exceeds the configured one,
+ *  see expectedFalsePositiveRate().
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    @Getter private final long bitSize;
+    @Getter private final int numHashFunctions;
+    private final AtomicLong insertions = new AtomicLong();
+
+    public BloomFilter(final long expectedInsertions, final double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("expected insertions must be positive and false positive rate in (0, 1)");
+        }
+        val optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        val words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(final String value) {
+        val h1 = hash(value);
+        val h2 = mix(h1 + 0x9e3779b97f4a7c15L);
+        var changed = false;
+        for (int i = 1; i <= numHashFunctions; i++) {
+            changed |= setBit(index(h1, h2, i));
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    public boolean mightContain(final String value) {
+        val h1 = hash(value);
+        val h2 = mix(h1 + 0x9e3779b97f4a7c15L);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            val index = index(h1, h2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+        insertions.set(0);
+    }
+
+    /**
+     * @return approximate number of distinct strings added so far
+     */
+    public long approximateInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * @return false positive rate to be expected for the current number of insertions: (1 - e^(-kn/m))^k
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-numHashFunctions * (double) insertions.get() / bitSize), numHashFunctions);
+    }
+
+    public long memoryBytes() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    private long index(final long h1, final long h2, final int i) {
+        return ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+    }
+
+    // returns true if bit was not set before
+    private boolean setBit(final long index) {
+        val word = (int) (index >>> 6);
+        val mask = 1L << index;
+        while (true) {
+            val current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    // FNV-1a over UTF-8 bytes followed by murmur3's 64 bit finalizer for better bit dispersion
+    static long hash(final String value) {
+        var hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
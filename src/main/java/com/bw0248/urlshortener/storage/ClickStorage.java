@@ -0,0 +1,21 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.exception.StorageException;
+
+import java.util.Map;
+
+/**
+ *  Persistent click counts per short url, written in batches by ClickCounter.
+ */
+public interface ClickStorage {
+    /**
+     * Adds clicks to the stored counts, short urls without stored count start at 0
+     *
+     * @param clicks short url -> clicks to add
+     * @return clicks that were not added and can be retried, e.g. rejected parts of a bulk write
+     * @throws StorageException if it is unknown which clicks were added
+     */
+    Map<String, Long> addClicks(final Map<String, Long> clicks) throws StorageException;
+
+    long clickCount(final String shortUrl) throws StorageException;
+}
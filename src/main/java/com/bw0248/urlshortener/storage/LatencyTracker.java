@@ -0,0 +1,58 @@
+package com.bw0248.urlshortener.storage;
+
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Percentile of the most recent latencies, e.g. as delay for hedged requests.
+ *  Latencies are kept in a ring buffer, the percentile is recomputed every RECOMPUTE_INTERVAL recorded latencies
+ *  so reading it is a volatile read.
+ */
+public class LatencyTracker {
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_INTERVAL = 128;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+    private final AtomicLong recorded = new AtomicLong();
+    private final double percentile;
+    private final long minNanos;
+    private final long maxNanos;
+    private volatile long percentileNanos;
+
+    /**
+     * @param percentile e.g. 0.95
+     * @param minNanos lower bound of the reported percentile
+     * @param maxNanos upper bound of the reported percentile, reported until enough latencies are recorded
+     */
+    public LatencyTracker(final double percentile, final long minNanos, final long maxNanos) {
+        this.percentile = percentile;
+        this.minNanos = minNanos;
+        this.maxNanos = maxNanos;
+        this.percentileNanos = maxNanos;
+    }
+
+    public void record(final long nanos) {
+        val count = recorded.incrementAndGet();
+        samples.set((int) ((count - 1) % SAMPLES), nanos);
+        if (count % RECOMPUTE_INTERVAL == 0) {
+            recompute(Math.min(count, SAMPLES));
+        }
+    }
+
+    public long percentileNanos() {
+        return percentileNanos;
+    }
+
+    private void recompute(final long count) {
+        val sorted = new long[(int) count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        val value = sorted[(int) Math.min(count - 1, (long) Math.ceil(percentile * count) - 1)];
+        percentileNanos = Math.max(minNanos, Math.min(maxNanos, value));
+    }
+}
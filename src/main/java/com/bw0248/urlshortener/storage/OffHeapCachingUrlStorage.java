@@ -0,0 +1,139 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.cache.OffHeapMappingStore;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.val;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ *  Answers findMappingByShortUrl from an OffHeapMappingStore keyed by the sequence id the short url decodes to,
+ *  everything else is passed through to the wrapped storage.
+ *  Mappings are added on insert and on lookups from the wrapped storage, short urls that are not a valid
+ *  sequence mapping are always looked up in the wrapped storage. The store has no notion of expiry,
+ *  so expiring mappings are not added and always looked up in the wrapped storage.
+ */
+public class OffHeapCachingUrlStorage implements UrlStorage {
+    private final UrlStorage storage;
+    private final OffHeapMappingStore store;
+    private final SequenceMappingStrategy sequenceMapping;
+    private final Counter hits;
+    private final Counter misses;
+
+    public OffHeapCachingUrlStorage(
+            final UrlStorage storage,
+            final OffHeapMappingStore store,
+            final SequenceMappingStrategy sequenceMapping,
+            final MeterRegistry meterRegistry) {
+        this.storage = storage;
+        this.store = store;
+        this.sequenceMapping = sequenceMapping;
+        this.hits = Counter.builder("shortener.off-heap.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("shortener.off-heap.lookups").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("shortener.off-heap.size", store, OffHeapMappingStore::size)
+                .register(meterRegistry);
+        Gauge.builder("shortener.off-heap.memory", store, OffHeapMappingStore::memoryBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByShortUrl(final String shortUrl) {
+        val id = sequenceMapping.tryDecode(shortUrl);
+        if (id.isEmpty()) {
+            return storage.findMappingByShortUrl(shortUrl);
+        }
+        val longUrl = store.get(id.getAsLong());
+        if (longUrl != null) {
+            hits.increment();
+            return Optional.of(new UrlMapping(longUrl, shortUrl));
+        }
+        misses.increment();
+        val mapping = storage.findMappingByShortUrl(shortUrl);
+        mapping.ifPresent(this::add);
+        return mapping;
+    }
+
+    @Override
+    public List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls) {
+        val mappings = storage.findMappingsByShortUrls(shortUrls);
+        mappings.forEach(this::add);
+        return mappings;
+    }
+
+    @Override
+    public Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        val inserted = storage.insertMapping(mapping);
+        inserted.ifPresent(this::add);
+        return inserted;
+    }
+
+    @Override
+    public List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException {
+        val inserted = storage.insertMappings(mappings);
+        inserted.forEach(mapping -> mapping.ifPresent(this::add));
+        return inserted;
+    }
+
+    @Override
+    public void deleteAllMappings() {
+        storage.deleteAllMappings();
+        store.clear();
+    }
+
+    @Override
+    public List<UrlMapping> findAllMappings() {
+        return storage.findAllMappings();
+    }
+
+    @Override
+    public List<UrlMapping> findMappings(final String afterShortUrl, final int limit) {
+        return storage.findMappings(afterShortUrl, limit);
+    }
+
+    @Override
+    public List<UrlMapping> sampleMappings(final int size) {
+        return storage.sampleMappings(size);
+    }
+
+    @Override
+    public Stream<UrlMapping> streamAllMappings() {
+        return storage.streamAllMappings();
+    }
+
+    @Override
+    public long mappingsCount() {
+        return storage.mappingsCount();
+    }
+
+    @Override
+    public long nextUniqueId() {
+        return storage.nextUniqueId();
+    }
+
+    @Override
+    public long reserveUniqueIds(final long count) {
+        return storage.reserveUniqueIds(count);
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        return storage.findMappingByLongUrl(longUrl);
+    }
+
+    private void add(final UrlMapping mapping) {
+        if (mapping.getExpiresAt() != null) {
+            return;
+        }
+        sequenceMapping.tryDecode(mapping.getShortUrl()).ifPresent(id -> store.put(id, mapping.getLongUrl()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import reactor.core.publisher.Mono;
+
+/**
+ *  Non-blocking counterpart of UrlStorage for the paths served by the reactive profile.
+ *  Errors are signalled through the returned Mono instead of being thrown, an empty Mono means not found.
+ */
+public interface ReactiveUrlStorage {
+    Mono<Long> nextUniqueId();
+
+    /**
+     * @param mapping
+     * @return stored mapping, errors with DuplicateShortUrlException or StorageException
+     */
+    Mono<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException;
+    Mono<UrlMapping> findMappingByShortUrl(final String shortUrl);
+
+    /**
+     * @param longUrl
+     * @return any mapping for longUrl if present
+     */
+    Mono<UrlMapping> findMappingByLongUrl(final String longUrl);
+}
@@ -0,0 +1,214 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.config.ResilienceConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.exception.StorageUnavailableException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import dev.failsafe.CircuitBreaker;
+import dev.failsafe.CircuitBreakerOpenException;
+import dev.failsafe.Failsafe;
+import dev.failsafe.FailsafeExecutor;
+import dev.failsafe.RetryPolicy;
+import dev.failsafe.function.CheckedSupplier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ *  Protects the storage engine with policies shared by all calls, from outside in:
+ *      bulkhead:        at most max-concurrent-reads/-writes calls at once, further calls wait up to max-wait
+ *                       and are rejected afterwards (load shedding), retries keep their slot
+ *      retry:           exponential backoff with jitter, so retries of concurrent calls don't hit storage in lockstep
+ *      circuit breaker: once too many calls failed, calls are rejected right away for open-duration
+ *  Rejected calls fail with StorageUnavailableException (503).
+ *  Bulk inserts and deletes are not retried, streams are passed through unprotected as they are consumed lazily.
+ */
+@Slf4j
+public class ResilientUrlStorage implements UrlStorage {
+    private static final Predicate<Throwable> IS_STORAGE_FAILURE = e -> e instanceof StorageException
+            || e instanceof DataAccessResourceFailureException      // e.g. connection refused or timed out
+            || e instanceof TransientDataAccessException;
+
+    private final UrlStorage storage;
+    @Getter private final CircuitBreaker<Object> circuitBreaker;
+    private final FailsafeExecutor<Object> withRetries;
+    private final FailsafeExecutor<Object> withoutRetries;
+    private final Bulkhead reads;
+    private final Bulkhead writes;
+    private final Counter circuitOpenRejections;
+
+    private static class Bulkhead {
+        private final Semaphore permits;
+        private final Duration maxWait;
+        private final Counter rejections;
+
+        private Bulkhead(final String path, final int maxConcurrent, final Duration maxWait, final MeterRegistry meterRegistry) {
+            this.permits = new Semaphore(maxConcurrent);
+            this.maxWait = maxWait;
+            this.rejections = rejections(meterRegistry, path, "bulkhead_full");
+            Gauge.builder("shortener.storage.bulkhead.available", permits, Semaphore::availablePermits)
+                    .description("storage calls that can be started without waiting")
+                    .tag("path", path)
+                    .register(meterRegistry);
+        }
+
+        private void acquire() {
+            try {
+                if (permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rejections.increment();
+            throw new StorageUnavailableException("too many concurrent storage calls", null);
+        }
+
+        private void release() {
+            permits.release();
+        }
+    }
+
+    public ResilientUrlStorage(
+            final UrlStorage storage,
+            final ResilienceConfig config,
+            final ShortenerMetrics metrics,
+            final MeterRegistry meterRegistry) {
+        this.storage = storage;
+        this.circuitBreaker = CircuitBreaker.builder()
+                .handleIf(IS_STORAGE_FAILURE)
+                .withFailureRateThreshold(config.getFailureRateThreshold(), config.getMinimumCalls(), config.getFailurePeriod())
+                .withDelay(config.getOpenDuration())
+                .withSuccessThreshold(config.getHalfOpenCalls())
+                .onOpen(e -> log.warn("storage circuit breaker opened"))
+                .onClose(e -> log.info("storage circuit breaker closed"))
+                .build();
+        val retryPolicy = RetryPolicy.builder()
+                .handleIf(IS_STORAGE_FAILURE)
+                .withMaxRetries(config.getMaxRetries())
+                .withBackoff(config.getRetryDelay(), config.getRetryMaxDelay())
+                .withJitter(config.getRetryJitter())
+                .onFailedAttempt(e -> log.warn("storage call failed: {}", String.valueOf(e.getLastFailure())))
+                .onRetry(e -> metrics.storageRetry())
+                .onRetriesExceeded(e -> {
+                    log.error("storage call failed after {} attempts", e.getAttemptCount());
+                    metrics.storageRetriesExhausted();
+                })
+                .build();
+        this.withRetries = Failsafe.with(retryPolicy, circuitBreaker);
+        this.withoutRetries = Failsafe.with(circuitBreaker);
+        this.reads = new Bulkhead("read", config.getMaxConcurrentReads(), config.getMaxWait(), meterRegistry);
+        this.writes = new Bulkhead("write", config.getMaxConcurrentWrites(), config.getMaxWait(), meterRegistry);
+        this.circuitOpenRejections = rejections(meterRegistry, "any", "circuit_open");
+        Arrays.stream(CircuitBreaker.State.values()).forEach(state ->
+                Gauge.builder("shortener.storage.circuit-breaker.state", circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+                        .description("1 for the current state of the storage circuit breaker")
+                        .tag("state", state.name().toLowerCase())
+                        .register(meterRegistry));
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByShortUrl(final String shortUrl) {
+        return execute(reads, withRetries, () -> storage.findMappingByShortUrl(shortUrl));
+    }
+
+    @Override
+    public List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls) {
+        return execute(reads, withRetries, () -> storage.findMappingsByShortUrls(shortUrls));
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        return execute(reads, withRetries, () -> storage.findMappingByLongUrl(longUrl));
+    }
+
+    @Override
+    public List<UrlMapping> findAllMappings() {
+        return execute(reads, withRetries, storage::findAllMappings);
+    }
+
+    @Override
+    public List<UrlMapping> findMappings(final String afterShortUrl, final int limit) {
+        return execute(reads, withRetries, () -> storage.findMappings(afterShortUrl, limit));
+    }
+
+    @Override
+    public List<UrlMapping> sampleMappings(final int size) {
+        return execute(reads, withRetries, () -> storage.sampleMappings(size));
+    }
+
+    @Override
+    public Stream<UrlMapping> streamAllMappings() {
+        return storage.streamAllMappings();
+    }
+
+    @Override
+    public long mappingsCount() {
+        return execute(reads, withRetries, storage::mappingsCount);
+    }
+
+    @Override
+    public Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        return execute(writes, withRetries, () -> storage.insertMapping(mapping));
+    }
+
+    @Override
+    public List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException {
+        return execute(writes, withoutRetries, () -> storage.insertMappings(mappings));
+    }
+
+    @Override
+    public long nextUniqueId() {
+        return execute(writes, withRetries, storage::nextUniqueId);
+    }
+
+    @Override
+    public long reserveUniqueIds(final long count) {
+        return execute(writes, withRetries, () -> storage.reserveUniqueIds(count));
+    }
+
+    @Override
+    public void deleteAllMappings() {
+        execute(writes, withoutRetries, () -> {
+            storage.deleteAllMappings();
+            return null;
+        });
+    }
+
+    private <T> T execute(final Bulkhead bulkhead, final FailsafeExecutor<Object> executor, final CheckedSupplier<T> call) {
+        bulkhead.acquire();
+        try {
+            return executor.get(call);
+        } catch (CircuitBreakerOpenException e) {
+            circuitOpenRejections.increment();
+            throw new StorageUnavailableException("storage circuit breaker is open", e);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private static Counter rejections(final MeterRegistry meterRegistry, final String path, final String reason) {
+        return Counter.builder("shortener.storage.rejected")
+                .description("storage calls rejected without trying")
+                .tag("path", path)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
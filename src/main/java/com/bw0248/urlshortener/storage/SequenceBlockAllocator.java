@@ -0,0 +1,143 @@
+package com.bw0248.urlshortener.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ *  Hands out sequence ids from blocks reserved in storage with a single atomic increment.
+ *
+ *  Ids of the current block are handed out through a lock-free counter. Once the remaining ids of the current block
+ *  drop to the refill threshold, the next block is reserved in the background, so under normal load callers never
+ *  wait for storage. Only if the prefetched block is not ready when the current one runs out, the next block
+ *  is reserved synchronously.
+ *
+ *  Ids of blocks that are not used up (e.g. on shutdown) are lost - short urls are still unique, there are just gaps.
+ */
+@Slf4j
+public class SequenceBlockAllocator {
+    private final LongUnaryOperator reserveBlock;   // reserves n ids, returns the first id of the reserved range
+    private final int blockSize;
+    private final int refillThreshold;
+    private final AtomicReference<Block> current = new AtomicReference<>(Block.EMPTY);
+    private final AtomicReference<Block> prefetched = new AtomicReference<>();
+    private final AtomicBoolean refillInProgress = new AtomicBoolean(false);
+    private final ReentrantLock advanceLock = new ReentrantLock();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        val thread = new Thread(runnable, "sequence-block-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Timer asyncRefillTimer;
+    private final Timer syncRefillTimer;
+
+    public SequenceBlockAllocator(
+            final LongUnaryOperator reserveBlock,
+            final int blockSize,
+            final double refillThreshold,
+            final MeterRegistry meterRegistry) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        this.reserveBlock = reserveBlock;
+        this.blockSize = blockSize;
+        this.refillThreshold = (int) Math.min(blockSize - 1, Math.max(0, Math.ceil(blockSize * refillThreshold)));
+        this.asyncRefillTimer = refillTimer(meterRegistry, "async");
+        this.syncRefillTimer = refillTimer(meterRegistry, "sync");
+        Gauge.builder("shortener.sequence.headroom", this, SequenceBlockAllocator::headroom)
+                .description("sequence ids reserved locally but not handed out yet")
+                .register(meterRegistry);
+    }
+
+    public long nextId() {
+        while (true) {
+            val block = current.get();
+            val id = block.next.getAndIncrement();
+            if (id < block.end) {
+                // exactly one caller per block hits the threshold
+                if (block.end - id - 1 == refillThreshold) {
+                    triggerRefill();
+                }
+                return id;
+            }
+            advance(block);
+        }
+    }
+
+    /**
+     * @return number of ids that can be handed out without reserving another block
+     */
+    public long headroom() {
+        val next = prefetched.get();
+        return current.get().remaining() + (next == null ? 0 : next.remaining());
+    }
+
+    private void advance(final Block exhausted) {
+        advanceLock.lock();
+        try {
+            if (current.get() != exhausted) {
+                return; // another caller already switched blocks
+            }
+            var next = prefetched.getAndSet(null);
+            if (next == null) {
+                log.debug("prefetched sequence block not ready, reserving synchronously");
+                next = syncRefillTimer.record(this::reserve);
+            }
+            current.set(next);
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+    private void triggerRefill() {
+        if (prefetched.get() != null || !refillInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        refillExecutor.execute(() -> {
+            try {
+                prefetched.set(asyncRefillTimer.record(this::reserve));
+            } catch (RuntimeException e) {
+                log.warn("unable to prefetch sequence block, falling back to synchronous reservation", e);
+            } finally {
+                refillInProgress.set(false);
+            }
+        });
+    }
+
+    private Block reserve() {
+        val first = reserveBlock.applyAsLong(blockSize);
+        return new Block(first, first + blockSize);
+    }
+
+    private static Timer refillTimer(final MeterRegistry meterRegistry, final String mode) {
+        return Timer.builder("shortener.sequence.refill")
+                .description("latency of reserving a block of sequence ids in storage")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    private static class Block {
+        static final Block EMPTY = new Block(0, 0);
+        final AtomicLong next;
+        final long end;     // exclusive
+
+        Block(final long first, final long end) {
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+
+        long remaining() {
+            return Math.max(0, end - next.get());
+        }
+    }
+}
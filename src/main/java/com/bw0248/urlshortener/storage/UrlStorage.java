@@ -4,14 +4,69 @@ import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
 import com.bw0248.urlshortener.exception.StorageException;
 import com.bw0248.urlshortener.mapping.UrlMapping;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UrlStorage {
     List<UrlMapping> findAllMappings();
+
+    /**
+     * Keyset pagination over all mappings ordered by shortUrl
+     *
+     * @param afterShortUrl exclusive lower bound, null to start with the first mapping
+     * @param limit max number of mappings returned
+     */
+    List<UrlMapping> findMappings(final String afterShortUrl, final int limit);
+
+    /**
+     * Lazily iterate all mappings backed by a storage cursor - the returned stream has to be closed by the caller
+     */
+    Stream<UrlMapping> streamAllMappings();
+
+    /**
+     * Random sample of stored mappings, e.g. to train on mappings from the whole lifetime of the storage
+     *
+     * @param size max number of mappings returned, fewer if there are fewer stored
+     */
+    List<UrlMapping> sampleMappings(final int size);
+
     void deleteAllMappings();
     long mappingsCount();
     long nextUniqueId();
+
+    /**
+     * Reserve a contiguous range of unique ids with a single round trip
+     *
+     * @param count number of ids to reserve
+     * @return first id of the reserved range
+     */
+    long reserveUniqueIds(final long count);
+
     Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException;
+
+    /**
+     * Insert all mappings with a single unordered bulk write - a failing mapping does not prevent the others from being stored
+     *
+     * @param mappings
+     * @return per supplied mapping (same order) the stored mapping or Optional::empty if it could not be stored
+     * @throws StorageException if the bulk write as a whole failed
+     */
+    List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException;
     Optional<UrlMapping> findMappingByShortUrl(final String shortUrl);
+
+    /**
+     * Look up many short urls at once, e.g. for warming up caches
+     *
+     * @param shortUrls
+     * @return mappings of all shortUrls that exist, in no particular order
+     */
+    List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls);
+
+    /**
+     * @param longUrl
+     * @return any mapping for longUrl if present
+     */
+    Optional<UrlMapping> findMappingByLongUrl(final String longUrl);
 }
@@ -0,0 +1,70 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import com.bw0248.urlshortener.config.EmbeddedStorageConfig;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.storage.ClickStorage;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ *  Click counts of the embedded storage engine, kept in memory and rewritten to a file in the storage directory
+ *  (one "shortUrl count" line per short url) after every batch. Counts added since the last successful write
+ *  are lost if the process dies.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "embedded")
+public class EmbeddedClickStorage implements ClickStorage {
+    static final String CLICKS_FILE = "clicks.txt";
+
+    private final Path file;
+    private final Map<String, Long> clicks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public EmbeddedClickStorage(final EmbeddedStorageConfig config) throws IOException {
+        val directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        this.file = directory.resolve(CLICKS_FILE);
+        if (Files.exists(file)) {
+            for (val line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                val separator = line.lastIndexOf(' ');
+                clicks.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+            }
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Long> addClicks(final Map<String, Long> added) throws StorageException {
+        added.forEach((shortUrl, count) -> clicks.merge(shortUrl, count, Long::sum));
+        val tmpFile = file.resolveSibling(CLICKS_FILE + ".tmp");
+        try {
+            Files.write(tmpFile, clicks.entrySet()
+                    .stream()
+                    .map(entry -> entry.getKey() + " " + entry.getValue())
+                    .collect(Collectors.toList()), StandardCharsets.UTF_8);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // counts are kept in memory and written with the next batch
+            log.warn("could not write click counts to {}", file, e);
+        }
+        return Map.of();
+    }
+
+    @Override
+    public long clickCount(final String shortUrl) {
+        return clicks.getOrDefault(shortUrl, 0L);
+    }
+}
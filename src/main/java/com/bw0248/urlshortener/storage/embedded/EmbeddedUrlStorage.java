@@ -0,0 +1,423 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import com.bw0248.urlshortener.config.EmbeddedStorageConfig;
+import com.bw0248.urlshortener.config.StorageConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ *  UrlStorage without external dependencies for edge deployments and benchmarks (storage.engine: embedded).
+ *
+ *  Mappings are appended to a memory-mapped log (see MappedLog) and indexed by short url and long url in memory
+ *  (see OffsetIndex), lookups are reads from the page cache without any network hop or lock.
+ *  Unique ids come from a local counter, reservations of id-reservation-size ids are appended to the log
+ *  before ids are handed out, so ids stay unique across restarts and crashes.
+ *
+ *  On startup the log is replayed to rebuild the indices and the counter. Records that are no longer needed
+ *  (superseded id reservations, padding at region ends, mappings removed by deleteAllMappings) are dropped
+ *  by rewriting the log once they exceed compaction-threshold. Expired mappings are dropped when the log is rewritten,
+ *  until then they are returned with their expiresAt.
+ *
+ *  Writes are serialized by a single lock, each instance needs its own directory.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "embedded")
+@Qualifier(StorageConfig.ENGINE)
+public class EmbeddedUrlStorage implements UrlStorage {
+    static final String LOG_FILE = "mappings.log";
+    private static final String COMPACTION_FILE = LOG_FILE + ".compact";
+    private static final byte MAPPING = 1;
+    private static final byte ID_RESERVATION = 2;
+    private static final int ID_RESERVATION_RECORD_SIZE = MappedLog.RECORD_HEADER_SIZE + 1 + Long.BYTES;
+
+    private final EmbeddedStorageConfig config;
+    private final ShortenerMetrics metrics;
+    private final Path directory;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Generation generation;
+    private volatile long nextId;           // guarded by writeLock for writes
+    private volatile long reservedIds;      // ids below are persisted as reserved
+    private long liveBytes;                 // guarded by writeLock
+
+    // log and its indices, replaced as a whole on compaction so concurrent readers always see a consistent state
+    private static class Generation {
+        private final MappedLog log;
+        private final OffsetIndex byShortUrl = new OffsetIndex(1024);
+        private final OffsetIndex byLongUrl = new OffsetIndex(1024);
+
+        private Generation(final MappedLog log) {
+            this.log = log;
+        }
+    }
+
+    @Autowired
+    public EmbeddedUrlStorage(final EmbeddedStorageConfig config, final ShortenerMetrics metrics) throws IOException {
+        this.config = config;
+        this.metrics = metrics;
+        this.directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        val startedAt = Instant.now();
+        generation = new Generation(MappedLog.open(directory.resolve(LOG_FILE), config.getRegionSize()));
+        liveBytes = MappedLog.HEADER_SIZE;
+        generation.log.forEach((offset, type, payload) -> {
+            if (type == MAPPING) {
+                liveBytes += index(generation, offset, payload);
+            } else if (type == ID_RESERVATION) {
+                reservedIds = Math.max(reservedIds, payload.getLong());
+            }
+        });
+        // ids reserved before a restart might have been handed out already
+        nextId = reservedIds;
+        liveBytes += ID_RESERVATION_RECORD_SIZE;
+        log.info("replayed {} mappings from {} in {}",
+                generation.byShortUrl.size(), generation.log.getPath(), Duration.between(startedAt, Instant.now()));
+    }
+
+    @Override
+    public List<UrlMapping> findAllMappings() {
+        try (val mappings = streamAllMappings()) {
+            return mappings.collect(Collectors.toList());
+        }
+    }
+
+    // all mappings are scanned, the limit smallest short urls after afterShortUrl are kept in a bounded heap
+    @Override
+    public List<UrlMapping> findMappings(final String afterShortUrl, final int limit) {
+        val page = new PriorityQueue<UrlMapping>(Comparator.comparing(UrlMapping::getShortUrl).reversed());
+        try (val mappings = streamAllMappings()) {
+            mappings.filter(mapping -> afterShortUrl == null || mapping.getShortUrl().compareTo(afterShortUrl) > 0)
+                    .forEach(mapping -> {
+                        page.add(mapping);
+                        if (page.size() > limit) {
+                            page.poll();
+                        }
+                    });
+        }
+        val result = new ArrayList<>(page);
+        result.sort(Comparator.comparing(UrlMapping::getShortUrl));
+        return result;
+    }
+
+    // reservoir sampling over a single scan of the log
+    @Override
+    public List<UrlMapping> sampleMappings(final int size) {
+        val sample = new ArrayList<UrlMapping>(size);
+        val random = ThreadLocalRandom.current();
+        try (val mappings = streamAllMappings()) {
+            long seen = 0;
+            for (Iterator<UrlMapping> iterator = mappings.iterator(); iterator.hasNext(); seen++) {
+                val mapping = iterator.next();
+                if (sample.size() < size) {
+                    sample.add(mapping);
+                } else {
+                    val replaced = random.nextLong(seen + 1);
+                    if (replaced < size) {
+                        sample.set((int) replaced, mapping);
+                    }
+                }
+            }
+        }
+        return sample;
+    }
+
+    @Override
+    public Stream<UrlMapping> streamAllMappings() {
+        val current = generation;
+        val offsets = Spliterators.spliteratorUnknownSize(current.log.offsets(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.longStream(offsets, false)
+                .filter(offset -> current.log.type(offset) == MAPPING)
+                .mapToObj(offset -> readMapping(current.log.payload(offset)));
+    }
+
+    @Override
+    public void deleteAllMappings() {
+        rewriteLog(false);
+    }
+
+    @Override
+    public long mappingsCount() {
+        return generation.byShortUrl.size();
+    }
+
+    @Override
+    public long nextUniqueId() {
+        return reserveUniqueIds(1);
+    }
+
+    @Override
+    public long reserveUniqueIds(final long count) {
+        writeLock.lock();
+        try {
+            val first = nextId;
+            if (first + count > reservedIds) {
+                val reserved = first + count + config.getIdReservationSize();
+                generation.log.append(ID_RESERVATION, ByteBuffer.allocate(Long.BYTES).putLong(0, reserved));
+                reservedIds = reserved;
+            }
+            nextId = first + count;
+            return first;
+        } catch (IOException e) {
+            throw storageException("Reserving ids failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        writeLock.lock();
+        try {
+            val current = generation;
+            if (findByShortUrl(current, mapping.getShortUrl()) != OffsetIndex.NOT_FOUND) {
+                metrics.duplicateShortUrl();
+                throw new DuplicateShortUrlException(
+                        "Cannot insert UrlMapping - short url " + mapping.getShortUrl() + " already exists", null
+                );
+            }
+            val payload = encode(mapping);
+            val offset = current.log.append(MAPPING, payload);
+            liveBytes += index(current, offset, payload);
+            return Optional.of(mapping);
+        } catch (IOException | IllegalArgumentException e) {
+            throw storageException("Writing to embedded storage failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException {
+        val results = new ArrayList<Optional<UrlMapping>>(mappings.size());
+        for (UrlMapping mapping : mappings) {
+            try {
+                results.add(insertMapping(mapping));
+            } catch (DuplicateShortUrlException e) {
+                results.add(Optional.empty());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByShortUrl(final String shortUrl) {
+        val current = generation;
+        val offset = findByShortUrl(current, shortUrl);
+        return offset == OffsetIndex.NOT_FOUND
+                ? Optional.empty()
+                : Optional.of(readMapping(current.log.payload(offset)));
+    }
+
+    // lookups are local reads, there is nothing to batch
+    @Override
+    public List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls) {
+        return shortUrls.stream()
+                .map(this::findMappingByShortUrl)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        val current = generation;
+        val key = longUrl.getBytes(StandardCharsets.UTF_8);
+        val offset = current.byLongUrl.find(
+                OffsetIndex.hash(longUrl),
+                candidate -> longUrlEquals(current.log.payload(candidate), key));
+        return offset == OffsetIndex.NOT_FOUND
+                ? Optional.empty()
+                : Optional.of(readMapping(current.log.payload(offset)));
+    }
+
+    @Scheduled(
+            initialDelayString = "${embedded-storage.compaction-interval-ms}",
+            fixedDelayString = "${embedded-storage.compaction-interval-ms}")
+    public void compactIfNeeded() {
+        writeLock.lock();
+        try {
+            val size = generation.log.size();
+            if ((double) (size - liveBytes) / size >= config.getCompactionThreshold()) {
+                rewriteLog(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${embedded-storage.sync-interval-ms}",
+            fixedDelayString = "${embedded-storage.sync-interval-ms}")
+    public void sync() {
+        generation.log.force();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            generation.log.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write a new log with the current id reservation and (if keepMappings) all mappings and atomically replace
+     * the current log with it. Concurrent lookups keep reading the previous log until the new one is complete.
+     */
+    private void rewriteLog(final boolean keepMappings) {
+        writeLock.lock();
+        try {
+            val startedAt = Instant.now();
+            val previous = generation;
+            val compactionPath = directory.resolve(COMPACTION_FILE);
+            Files.deleteIfExists(compactionPath);
+            val compacted = new Generation(MappedLog.open(compactionPath, config.getRegionSize()));
+            long compactedLiveBytes = MappedLog.HEADER_SIZE + ID_RESERVATION_RECORD_SIZE;
+            try {
+                compacted.log.append(ID_RESERVATION, ByteBuffer.allocate(Long.BYTES).putLong(0, reservedIds));
+                if (keepMappings) {
+                    for (PrimitiveIterator.OfLong offsets = previous.log.offsets(); offsets.hasNext(); ) {
+                        val offset = offsets.nextLong();
+                        if (previous.log.type(offset) == MAPPING && !isExpired(previous.log.payload(offset), startedAt)) {
+                            val payload = previous.log.payload(offset);
+                            compactedLiveBytes += index(compacted, compacted.log.append(MAPPING, payload), payload);
+                        }
+                    }
+                }
+                compacted.log.force();
+                compacted.log.moveTo(directory.resolve(LOG_FILE));
+            } catch (IOException | RuntimeException e) {
+                // the previous log stays in use, the partial one is rewritten by the next attempt
+                compacted.log.close();
+                throw e;
+            }
+            generation = compacted;
+            liveBytes = compactedLiveBytes;
+            // mapped regions of the previous log stay readable for lookups still in progress
+            previous.log.close();
+            log.info("rewrote log from {} to {} bytes in {}",
+                    previous.log.size(), compacted.log.size(), Duration.between(startedAt, Instant.now()));
+        } catch (IOException e) {
+            throw storageException("Rewriting embedded storage log failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // returns the size of the indexed record
+    private static long index(final Generation target, final long offset, final ByteBuffer payload) {
+        val mapping = readMapping(payload.duplicate());
+        target.byShortUrl.add(OffsetIndex.hash(mapping.getShortUrl()), offset);
+        target.byLongUrl.add(OffsetIndex.hash(mapping.getLongUrl()), offset);
+        return MappedLog.RECORD_HEADER_SIZE + 1 + payload.remaining();
+    }
+
+    private static long findByShortUrl(final Generation current, final String shortUrl) {
+        val key = shortUrl.getBytes(StandardCharsets.UTF_8);
+        return current.byShortUrl.find(
+                OffsetIndex.hash(shortUrl),
+                candidate -> shortUrlEquals(current.log.payload(candidate), key));
+    }
+
+    // payload: short length + short url, int length + long url (UTF-8), expiresAt as epoch millis if the mapping expires
+    private static ByteBuffer encode(final UrlMapping mapping) {
+        val shortUrl = mapping.getShortUrl().getBytes(StandardCharsets.UTF_8);
+        val longUrl = mapping.getLongUrl().getBytes(StandardCharsets.UTF_8);
+        if (shortUrl.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("short url exceeds " + Short.MAX_VALUE + " bytes");
+        }
+        val expiresAtLength = mapping.getExpiresAt() == null ? 0 : Long.BYTES;
+        val payload = ByteBuffer.allocate(Short.BYTES + shortUrl.length + Integer.BYTES + longUrl.length + expiresAtLength)
+                .putShort((short) shortUrl.length)
+                .put(shortUrl)
+                .putInt(longUrl.length)
+                .put(longUrl);
+        if (mapping.getExpiresAt() != null) {
+            payload.putLong(mapping.getExpiresAt().toEpochMilli());
+        }
+        return payload.flip();
+    }
+
+    private static UrlMapping readMapping(final ByteBuffer payload) {
+        val shortUrl = readString(payload, payload.getShort());
+        val longUrl = readString(payload, payload.getInt());
+        val expiresAt = payload.remaining() >= Long.BYTES ? Instant.ofEpochMilli(payload.getLong()) : null;
+        return new UrlMapping(longUrl, shortUrl, expiresAt);
+    }
+
+    private static boolean isExpired(final ByteBuffer payload, final Instant now) {
+        val expiresAt = readMapping(payload).getExpiresAt();
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+
+    private static String readString(final ByteBuffer payload, final int length) {
+        val bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean shortUrlEquals(final ByteBuffer payload, final byte[] shortUrl) {
+        return bytesEqual(payload, payload.getShort(), shortUrl);
+    }
+
+    private static boolean longUrlEquals(final ByteBuffer payload, final byte[] longUrl) {
+        val shortUrlLength = payload.getShort();
+        payload.position(payload.position() + shortUrlLength);
+        return bytesEqual(payload, payload.getInt(), longUrl);
+    }
+
+    private static boolean bytesEqual(final ByteBuffer payload, final int length, final byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        val position = payload.position();
+        for (int i = 0; i < length; i++) {
+            if (payload.get(position + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StorageException storageException(final String msg, final Exception e) {
+        log.error(msg, e);
+        return new StorageException(msg, e);
+    }
+}
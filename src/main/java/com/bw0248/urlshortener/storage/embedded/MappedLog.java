@@ -0,0 +1,296 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.zip.CRC32;
+
+/**
+ *  Append-only log of typed records in a memory-mapped file.
+ *
+ *  The file is mapped in regions of regionSize bytes and grows one region at a time, records never span regions.
+ *  The region size is fixed when the file is created - existing files are opened with the region size in their header,
+ *  whatever size is configured, as record boundaries depend on it.
+ *  File layout:
+ *      header:  int MAGIC, byte VERSION, 3 bytes padding, int regionSize
+ *      records: int bodyLength, int crc32(body), body = byte type + payload
+ *  A bodyLength of 0 marks the end of the log, PADDING skips the rest of a region.
+ *
+ *  Opening an existing file replays it up to the first torn or corrupt record (e.g. after a crash while appending),
+ *  which is discarded together with everything after it.
+ *
+ *  Not thread-safe for appends - callers serialize them. Reads of records whose offset was published
+ *  after the append (e.g. via a volatile write) are safe from any thread.
+ */
+@Slf4j
+class MappedLog implements Closeable {
+    static final int MAGIC = 0x55524c53;    // "URLS"
+    static final byte VERSION = 2;
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int PADDING = -1;
+
+    interface RecordVisitor {
+        void visit(long offset, byte type, ByteBuffer payload);
+    }
+
+    @Getter private volatile Path path;
+    private final FileChannel channel;
+    private final int regionSize;
+    private volatile MappedByteBuffer[] regions;
+    private long end;     // offset the next record is appended at
+
+    private MappedLog(final Path path, final FileChannel channel, final int regionSize) {
+        this.path = path;
+        this.channel = channel;
+        this.regionSize = regionSize;
+        this.regions = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Open log at path, creating it if it does not exist yet
+     *
+     * @param path
+     * @param regionSize region size of a new log, existing logs keep the region size they were created with
+     */
+    static MappedLog open(final Path path, final int regionSize) throws IOException {
+        val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            val isNew = channel.size() == 0;
+            val mappedLog = new MappedLog(path, channel, isNew ? regionSize : readRegionSize(path, channel));
+            if (mappedLog.regionSize != regionSize) {
+                log.info("{} was created with region size {}, keeping it instead of {}", path, mappedLog.regionSize, regionSize);
+            }
+            val regionCount = Math.max(1, (int) ((channel.size() + mappedLog.regionSize - 1) / mappedLog.regionSize));
+            for (int i = 0; i < regionCount; i++) {
+                mappedLog.mapRegion(i);
+            }
+            if (isNew) {
+                mappedLog.region(0).putInt(0, MAGIC).put(4, VERSION).putInt(8, regionSize);
+            }
+            mappedLog.end = HEADER_SIZE;
+            mappedLog.recover();
+            return mappedLog;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return offset of the appended record
+     */
+    long append(final byte type, final ByteBuffer payload) throws IOException {
+        val bodyLength = 1 + payload.remaining();
+        val recordSize = RECORD_HEADER_SIZE + bodyLength;
+        if (recordSize + Integer.BYTES > regionSize) {
+            throw new IllegalArgumentException("record of " + recordSize + " bytes exceeds region size " + regionSize);
+        }
+        // keep room for the end marker behind every record
+        if (positionInRegion(end) + recordSize + Integer.BYTES > regionSize) {
+            region(regionIndex(end)).putInt(positionInRegion(end), PADDING);
+            end = (long) (regionIndex(end) + 1) * regionSize;
+        }
+        val regionIndex = regionIndex(end);
+        if (regionIndex >= regions.length) {
+            mapRegion(regionIndex);
+        }
+        val region = region(regionIndex);
+        val position = positionInRegion(end);
+        val body = region.duplicate();
+        body.position(position + RECORD_HEADER_SIZE);
+        body.put(type).put(payload.duplicate());
+        region.putInt(position + Integer.BYTES, checksum(region, position + RECORD_HEADER_SIZE, bodyLength));
+        // length is written last, so a partially written record is never mistaken for a complete one
+        region.putInt(position, bodyLength);
+        val offset = end;
+        end += recordSize;
+        return offset;
+    }
+
+    byte type(final long offset) {
+        return region(regionIndex(offset)).get(positionInRegion(offset) + RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * @return read-only view of the payload of the record at offset
+     */
+    ByteBuffer payload(final long offset) {
+        val region = region(regionIndex(offset));
+        val position = positionInRegion(offset);
+        val payload = region.asReadOnlyBuffer();
+        payload.limit(position + RECORD_HEADER_SIZE + region.getInt(position));
+        payload.position(position + RECORD_HEADER_SIZE + 1);
+        return payload;
+    }
+
+    /**
+     * Visit all records in order of appending
+     */
+    void forEach(final RecordVisitor visitor) {
+        offsets().forEachRemaining((long offset) -> visitor.visit(offset, type(offset), payload(offset)));
+    }
+
+    /**
+     * @return offsets of all records appended so far, in order of appending
+     */
+    PrimitiveIterator.OfLong offsets() {
+        val limit = end;
+        return new PrimitiveIterator.OfLong() {
+            private long next = skipPadding(HEADER_SIZE, limit);
+
+            @Override
+            public boolean hasNext() {
+                return next < limit;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                val offset = next;
+                next = skipPadding(offset + RECORD_HEADER_SIZE + region(regionIndex(offset)).getInt(positionInRegion(offset)), limit);
+                return offset;
+            }
+        };
+    }
+
+    /**
+     * @return bytes used by header and records
+     */
+    long size() {
+        return end;
+    }
+
+    /**
+     * Write all appended records to disk - the page cache survives a crash of the process, but not of the machine
+     */
+    void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    /**
+     * Atomically move the log file to target, replacing an existing file - the log stays open
+     */
+    void moveTo(final Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        path = target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static int readRegionSize(final Path path, final FileChannel channel) throws IOException {
+        val header = ByteBuffer.allocate(HEADER_SIZE);
+        int read = 0;
+        while (header.hasRemaining() && read >= 0) {
+            read = channel.read(header, header.position());
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+            throw new IOException(path + " is not a url mapping log of version " + VERSION);
+        }
+        val regionSize = header.getInt(8);
+        if (regionSize <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IOException(path + " has invalid region size " + regionSize);
+        }
+        return regionSize;
+    }
+
+    private long skipPadding(final long offset, final long limit) {
+        if (offset < limit && region(regionIndex(offset)).getInt(positionInRegion(offset)) == PADDING) {
+            return (long) (regionIndex(offset) + 1) * regionSize;
+        }
+        return offset;
+    }
+
+    private void recover() {
+        while (true) {
+            val regionIndex = regionIndex(end);
+            if (regionIndex >= regions.length) {
+                return;
+            }
+            val region = region(regionIndex);
+            val position = positionInRegion(end);
+            if (position + Integer.BYTES > regionSize) {
+                end = (long) (regionIndex + 1) * regionSize;
+                continue;
+            }
+            val bodyLength = region.getInt(position);
+            if (bodyLength == 0) {
+                return;
+            }
+            if (bodyLength == PADDING) {
+                end = (long) (regionIndex + 1) * regionSize;
+                continue;
+            }
+            val valid = bodyLength > 0
+                    && position + RECORD_HEADER_SIZE + bodyLength <= regionSize
+                    && region.getInt(position + Integer.BYTES) == checksum(region, position + RECORD_HEADER_SIZE, bodyLength);
+            if (!valid) {
+                log.warn("discarding torn or corrupt record at offset {} of {} and everything after it", end, path);
+                truncate();
+                return;
+            }
+            end += RECORD_HEADER_SIZE + bodyLength;
+        }
+    }
+
+    // zero everything from end, so stale bytes are not replayed once new records are appended
+    private void truncate() {
+        val zeros = new byte[4096];
+        for (int i = regionIndex(end); i < regions.length; i++) {
+            val region = region(i).duplicate();
+            region.position(i == regionIndex(end) ? positionInRegion(end) : 0);
+            while (region.hasRemaining()) {
+                region.put(zeros, 0, Math.min(zeros.length, region.remaining()));
+            }
+        }
+    }
+
+    private void mapRegion(final int regionIndex) throws IOException {
+        // mapping beyond the end of the file grows it, the new region is zero-filled
+        val region = channel.map(FileChannel.MapMode.READ_WRITE, (long) regionIndex * regionSize, regionSize);
+        val grown = Arrays.copyOf(regions, regionIndex + 1);
+        grown[regionIndex] = region;
+        regions = grown;
+    }
+
+    private MappedByteBuffer region(final int regionIndex) {
+        return regions[regionIndex];
+    }
+
+    private int regionIndex(final long offset) {
+        return (int) (offset / regionSize);
+    }
+
+    private int positionInRegion(final long offset) {
+        return (int) (offset % regionSize);
+    }
+
+    private static int checksum(final ByteBuffer region, final int position, final int length) {
+        val body = region.duplicate();
+        body.position(position).limit(position + length);
+        val crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,99 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongPredicate;
+
+/**
+ *  Compact hash index from a key (e.g. short url) to the offset of its record in a MappedLog.
+ *
+ *  Keys are not stored - each slot is a single long combining 28 bits of the key's hash with a 36 bit offset
+ *  (logs up to 64 GB), candidates with matching hash bits are confirmed by reading their record.
+ *  Open addressing with linear probing, resized at a load factor of 0.5, so 16 to 32 bytes per entry.
+ *  Slots are placed by the stored hash bits, so resizing does not need to read keys.
+ *
+ *  Adds have to be serialized by the caller, lookups are lock-free and safe from any thread.
+ */
+class OffsetIndex {
+    static final long NOT_FOUND = -1;
+    private static final int OFFSET_BITS = 36;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    static final long MAX_OFFSET = OFFSET_MASK;
+
+    private volatile AtomicLongArray slots;
+    private int size;
+
+    OffsetIndex(final int expectedSize) {
+        this.slots = new AtomicLongArray(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+    }
+
+    static int hash(final String key) {
+        val hash = key.hashCode() * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param hash hash of the key, see hash(key)
+     * @param matches whether the record at an offset belongs to the key
+     * @return offset of the first record of the key, NOT_FOUND if there is none
+     */
+    long find(final int hash, final LongPredicate matches) {
+        val slots = this.slots;
+        val mask = slots.length() - 1;
+        val fingerprint = fingerprint(hash);
+        for (int i = fingerprint & mask; ; i = (i + 1) & mask) {
+            val slot = slots.get(i);
+            if (slot == 0) {
+                return NOT_FOUND;
+            }
+            if ((slot >>> OFFSET_BITS) == fingerprint && matches.test(slot & OFFSET_MASK)) {
+                return slot & OFFSET_MASK;
+            }
+        }
+    }
+
+    void add(final int hash, final long offset) {
+        if (offset <= 0 || offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("offset " + offset + " cannot be indexed");
+        }
+        if ((size + 1) * 2L > slots.length()) {
+            resize();
+        }
+        insert(slots, hash, offset);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        val current = slots;
+        val resized = new AtomicLongArray(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            val slot = current.get(i);
+            if (slot != 0) {
+                insertSlot(resized, (int) (slot >>> OFFSET_BITS), slot);
+            }
+        }
+        slots = resized;
+    }
+
+    private static void insert(final AtomicLongArray slots, final int hash, final long offset) {
+        insertSlot(slots, fingerprint(hash), ((long) fingerprint(hash) << OFFSET_BITS) | offset);
+    }
+
+    private static void insertSlot(final AtomicLongArray slots, final int fingerprint, final long slot) {
+        val mask = slots.length() - 1;
+        int i = fingerprint & mask;
+        while (slots.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        slots.set(i, slot);
+    }
+
+    private static int fingerprint(final int hash) {
+        return hash & ((1 << (Long.SIZE - OFFSET_BITS)) - 1);
+    }
+}
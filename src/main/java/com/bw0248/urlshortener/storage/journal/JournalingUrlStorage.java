@@ -0,0 +1,109 @@
+package com.bw0248.urlshortener.storage.journal;
+
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ *  Inserts go to the MappingJournal instead of the wrapped storage, lookups check pending mappings first.
+ *  Listings and counts only include mappings once they are flushed.
+ */
+public class JournalingUrlStorage implements UrlStorage {
+    private final UrlStorage storage;
+    private final MappingJournal journal;
+
+    public JournalingUrlStorage(final UrlStorage storage, final MappingJournal journal) {
+        this.storage = storage;
+        this.journal = journal;
+    }
+
+    @Override
+    public Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        return Optional.of(journal.append(mapping));
+    }
+
+    @Override
+    public List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException {
+        val results = new ArrayList<Optional<UrlMapping>>(mappings.size());
+        for (val mapping : mappings) {
+            try {
+                results.add(Optional.of(journal.append(mapping)));
+            } catch (DuplicateShortUrlException | IllegalArgumentException e) {
+                results.add(Optional.empty());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByShortUrl(final String shortUrl) {
+        val pending = journal.findByShortUrl(shortUrl);
+        return pending.isPresent() ? pending : storage.findMappingByShortUrl(shortUrl);
+    }
+
+    @Override
+    public List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls) {
+        val mappings = new ArrayList<UrlMapping>();
+        val unknown = new ArrayList<String>();
+        shortUrls.forEach(shortUrl -> journal.findByShortUrl(shortUrl).ifPresentOrElse(mappings::add, () -> unknown.add(shortUrl)));
+        if (!unknown.isEmpty()) {
+            mappings.addAll(storage.findMappingsByShortUrls(unknown));
+        }
+        return mappings;
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        val pending = journal.findByLongUrl(longUrl);
+        return pending.isPresent() ? pending : storage.findMappingByLongUrl(longUrl);
+    }
+
+    @Override
+    public void deleteAllMappings() {
+        journal.clear();
+        storage.deleteAllMappings();
+    }
+
+    @Override
+    public List<UrlMapping> findAllMappings() {
+        return storage.findAllMappings();
+    }
+
+    @Override
+    public List<UrlMapping> findMappings(final String afterShortUrl, final int limit) {
+        return storage.findMappings(afterShortUrl, limit);
+    }
+
+    @Override
+    public List<UrlMapping> sampleMappings(final int size) {
+        return storage.sampleMappings(size);
+    }
+
+    @Override
+    public Stream<UrlMapping> streamAllMappings() {
+        return storage.streamAllMappings();
+    }
+
+    @Override
+    public long mappingsCount() {
+        return storage.mappingsCount() + journal.pendingCount();
+    }
+
+    @Override
+    public long nextUniqueId() {
+        return storage.nextUniqueId();
+    }
+
+    @Override
+    public long reserveUniqueIds(final long count) {
+        return storage.reserveUniqueIds(count);
+    }
+}
@@ -0,0 +1,408 @@
+package com.bw0248.urlshortener.storage.journal;
+
+import com.bw0248.urlshortener.config.JournalConfig;
+import com.bw0248.urlshortener.config.StorageConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ *  Write-ahead journal of new mappings in front of the storage engine (journal.enabled: true).
+ *
+ *  Mappings are appended to a local segment file and fsync'd before append returns, concurrent appends
+ *  share a single fsync (group commit). Appended mappings are pending until flush has written them to the
+ *  storage engine with bulk writes, until then they are served from memory by this instance only.
+ *  Segment files are rotated at segment-size and deleted once all of their mappings are flushed,
+ *  on startup remaining segments are replayed and their mappings flushed again (already stored ones are confirmed).
+ *
+ *  Record layout: int payloadLength, int crc32(payload),
+ *  payload = short length + short url, int length + long url, expiresAt as epoch millis if the mapping expires
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+public class MappingJournal {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final UrlStorage storage;
+    private final JournalConfig config;
+    private final Path directory;
+    private final ConcurrentHashMap<String, Pending> pendingByShortUrl = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, UrlMapping> pendingByLongUrl = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Pending> unflushed = new LinkedBlockingQueue<>();
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Counter flushed;
+    private final Counter conflicts;
+    private volatile Segment segment;
+    private volatile long appended;         // bytes appended since startup, guarded by appendLock for writes
+    private long synced;                    // guarded by syncLock
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicInteger unflushed = new AtomicInteger();
+        private volatile boolean closed;
+
+        private Segment(final Path path, final FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    private static class Pending {
+        private final UrlMapping mapping;
+        private final Segment segment;
+
+        private Pending(final UrlMapping mapping, final Segment segment) {
+            this.mapping = mapping;
+            this.segment = segment;
+        }
+    }
+
+    @Autowired
+    public MappingJournal(
+            @Qualifier(StorageConfig.ENGINE) final UrlStorage storage,
+            final JournalConfig config,
+            final MeterRegistry meterRegistry) throws IOException {
+        this.storage = storage;
+        this.config = config;
+        this.directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        long lastSegmentId = 0;
+        for (val path : segmentPaths()) {
+            replay(path);
+            lastSegmentId = segmentId(path);
+        }
+        this.segment = openSegment(lastSegmentId + 1);
+        this.flushed = Counter.builder("shortener.journal.flushed")
+                .description("journaled mappings written to storage")
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("shortener.journal.conflicts")
+                .description("journaled mappings dropped because their short url is taken by another stored mapping")
+                .register(meterRegistry);
+        Gauge.builder("shortener.journal.pending", pendingByShortUrl, ConcurrentHashMap::size)
+                .description("journaled mappings not yet written to storage")
+                .register(meterRegistry);
+        log.info("journal opened with {} pending mappings", pendingByShortUrl.size());
+    }
+
+    /**
+     * Durably append mapping, it is served by get and written to storage by the next flush
+     *
+     * @throws DuplicateShortUrlException if a mapping for the same short url is pending
+     * @throws StorageException if the journal could not be written
+     */
+    public UrlMapping append(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        val record = encode(mapping);
+        long end;
+        Pending pending;
+        synchronized (appendLock) {
+            if (pendingByShortUrl.containsKey(mapping.getShortUrl())) {
+                throw new DuplicateShortUrlException("short url " + mapping.getShortUrl() + " is already pending", null);
+            }
+            try {
+                if (segment.channel.position() + record.remaining() > config.getSegmentSize()) {
+                    rotate();
+                }
+                while (record.hasRemaining()) {
+                    segment.channel.write(record);
+                }
+            } catch (IOException e) {
+                throw new StorageException("Writing to journal failed", e);
+            }
+            appended += record.limit();
+            end = appended;
+            pending = new Pending(mapping, segment);
+            segment.unflushed.incrementAndGet();
+            pendingByShortUrl.put(mapping.getShortUrl(), pending);
+            pendingByLongUrl.putIfAbsent(mapping.getLongUrl(), mapping);
+        }
+        try {
+            sync(end);
+        } catch (IOException e) {
+            // not acknowledged, the record is flushed anyway if it is replayed after all
+            pendingByShortUrl.remove(mapping.getShortUrl(), pending);
+            pendingByLongUrl.remove(mapping.getLongUrl(), mapping);
+            pending.segment.unflushed.decrementAndGet();
+            throw new StorageException("Syncing journal failed", e);
+        }
+        unflushed.add(pending);
+        return mapping;
+    }
+
+    public Optional<UrlMapping> findByShortUrl(final String shortUrl) {
+        return Optional.ofNullable(pendingByShortUrl.get(shortUrl)).map(pending -> pending.mapping);
+    }
+
+    public Optional<UrlMapping> findByLongUrl(final String longUrl) {
+        return Optional.ofNullable(pendingByLongUrl.get(longUrl));
+    }
+
+    public int pendingCount() {
+        return pendingByShortUrl.size();
+    }
+
+    /**
+     * Write pending mappings to storage, mappings that could not be written are retried by the next flush
+     */
+    @Scheduled(fixedDelayString = "${journal.flush-interval-ms}")
+    public void flush() {
+        flushLock.lock();
+        val retries = new ArrayList<Pending>();
+        try {
+            val batch = new ArrayList<Pending>(config.getFlushBatchSize());
+            while (unflushed.drainTo(batch, config.getFlushBatchSize()) > 0) {
+                if (!flush(batch, retries)) {
+                    return;
+                }
+                batch.clear();
+            }
+        } finally {
+            unflushed.addAll(retries);
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Drop all pending mappings and segments
+     */
+    public void clear() throws StorageException {
+        flushLock.lock();
+        try {
+            synchronized (appendLock) {
+                unflushed.clear();
+                pendingByShortUrl.clear();
+                pendingByLongUrl.clear();
+                try {
+                    rotate();
+                    for (val path : segmentPaths()) {
+                        if (!path.equals(segment.path)) {
+                            Files.deleteIfExists(path);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new StorageException("Clearing journal failed", e);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+        synchronized (appendLock) {
+            synchronized (syncLock) {
+                segment.channel.force(false);
+                segment.channel.close();
+            }
+        }
+    }
+
+    // false if storage is unavailable, mappings not written are added to retries
+    private boolean flush(final List<Pending> batch, final Collection<Pending> retries) {
+        List<Optional<UrlMapping>> results;
+        try {
+            results = storage.insertMappings(batch.stream().map(pending -> pending.mapping).collect(Collectors.toList()));
+        } catch (StorageException e) {
+            log.warn("flushing {} journaled mappings failed, retrying later", batch.size());
+            retries.addAll(batch);
+            return false;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            val pending = batch.get(i);
+            if (results.get(i).isPresent()) {
+                confirm(pending);
+                flushed.increment();
+                continue;
+            }
+            val stored = findStored(pending.mapping);
+            if (stored.isEmpty()) {
+                retries.add(pending);
+            } else if (stored.get().getLongUrl().equals(pending.mapping.getLongUrl())) {
+                // written before a restart
+                confirm(pending);
+                flushed.increment();
+            } else {
+                // the short url is taken by another mapping, which can't be fixed here
+                log.error("journaled mapping {} -> {} conflicts with stored mapping to {}, dropping it",
+                        pending.mapping.getShortUrl(), pending.mapping.getLongUrl(), stored.get().getLongUrl());
+                confirm(pending);
+                conflicts.increment();
+            }
+        }
+        return true;
+    }
+
+    // stored mapping with the short url of a rejected one, empty if there is none or storage is unavailable
+    private Optional<UrlMapping> findStored(final UrlMapping mapping) {
+        try {
+            return storage.findMappingByShortUrl(mapping.getShortUrl());
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void confirm(final Pending pending) {
+        pendingByShortUrl.remove(pending.mapping.getShortUrl(), pending);
+        pendingByLongUrl.remove(pending.mapping.getLongUrl(), pending.mapping);
+        if (pending.segment.unflushed.decrementAndGet() == 0 && pending.segment.closed) {
+            delete(pending.segment);
+        }
+    }
+
+    // group commit: a single fsync covers every append that finished before it started
+    private void sync(final long end) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            val target = appended;
+            segment.channel.force(false);
+            synced = target;
+        }
+    }
+
+    // guarded by appendLock
+    private void rotate() throws IOException {
+        val previous = segment;
+        synchronized (syncLock) {
+            previous.channel.force(false);
+            previous.channel.close();
+            synced = appended;
+            segment = openSegment(segmentId(previous.path) + 1);
+        }
+        previous.closed = true;
+        if (previous.unflushed.get() == 0) {
+            delete(previous);
+        }
+    }
+
+    private void replay(final Path path) throws IOException {
+        val replayed = new Segment(path, null);
+        replayed.closed = true;
+        val data = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (data.remaining() >= RECORD_HEADER_SIZE) {
+            val length = data.getInt();
+            val crc = data.getInt();
+            if (length <= 0 || length > data.remaining() || crc32(data.slice().limit(length)) != crc) {
+                log.warn("discarding torn record at {} of {}", data.position() - RECORD_HEADER_SIZE, path);
+                break;
+            }
+            val payload = data.slice().limit(length);
+            data.position(data.position() + length);
+            val shortUrl = readString(payload, payload.getShort());
+            val longUrl = readString(payload, payload.getInt());
+            val expiresAt = payload.remaining() >= Long.BYTES ? Instant.ofEpochMilli(payload.getLong()) : null;
+            val pending = new Pending(new UrlMapping(longUrl, shortUrl, expiresAt), replayed);
+            if (pendingByShortUrl.putIfAbsent(pending.mapping.getShortUrl(), pending) == null) {
+                pendingByLongUrl.putIfAbsent(pending.mapping.getLongUrl(), pending.mapping);
+                replayed.unflushed.incrementAndGet();
+                unflushed.add(pending);
+            }
+        }
+        if (replayed.unflushed.get() == 0) {
+            delete(replayed);
+        }
+    }
+
+    private Segment openSegment(final long id) throws IOException {
+        val path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Segment(path, channel);
+    }
+
+    private List<Path> segmentPaths() throws IOException {
+        try (val paths = Files.list(directory)) {
+            return paths
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentId(final Path path) {
+        val name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void delete(final Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("could not delete flushed journal segment {}", segment.path, e);
+        }
+    }
+
+    private static ByteBuffer encode(final UrlMapping mapping) {
+        val shortUrl = mapping.getShortUrl().getBytes(StandardCharsets.UTF_8);
+        val longUrl = mapping.getLongUrl().getBytes(StandardCharsets.UTF_8);
+        if (shortUrl.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("short url exceeds " + Short.MAX_VALUE + " bytes");
+        }
+        val expiresAtLength = mapping.getExpiresAt() == null ? 0 : Long.BYTES;
+        val payloadLength = Short.BYTES + shortUrl.length + Integer.BYTES + longUrl.length + expiresAtLength;
+        val payload = ByteBuffer.allocate(payloadLength)
+                .putShort((short) shortUrl.length).put(shortUrl)
+                .putInt(longUrl.length).put(longUrl);
+        if (mapping.getExpiresAt() != null) {
+            payload.putLong(mapping.getExpiresAt().toEpochMilli());
+        }
+        payload.flip();
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadLength)
+                .putInt(payloadLength)
+                .putInt(crc32(payload.duplicate()))
+                .put(payload)
+                .flip();
+    }
+
+    private static String readString(final ByteBuffer buffer, final int length) {
+        val bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc32(final ByteBuffer data) {
+        val crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}
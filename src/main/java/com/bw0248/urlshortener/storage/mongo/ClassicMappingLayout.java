@@ -0,0 +1,64 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.val;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public class ClassicMappingLayout implements MongoMappingLayout {
+    private final UrlCodec codec;
+
+    public ClassicMappingLayout(final UrlCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Class<?> documentClass() {
+        return UrlMappingDocument.class;
+    }
+
+    @Override
+    public Object toDocument(final UrlMapping mapping) {
+        return UrlMappingDocument.from(mapping, codec);
+    }
+
+    @Override
+    public UrlMapping toUrlMapping(final Object document) {
+        return MongoUrlStorage.toUrlMapping((UrlMappingDocument) document, codec);
+    }
+
+    @Override
+    public Optional<Criteria> byShortUrl(final String shortUrl) {
+        return Optional.of(Criteria.where(UrlMappingDocument.SHORT_URL).is(shortUrl));
+    }
+
+    @Override
+    public Criteria byShortUrls(final Collection<String> shortUrls) {
+        return Criteria.where(UrlMappingDocument.SHORT_URL).in(shortUrls);
+    }
+
+    @Override
+    public Criteria byLongUrl(final String longUrl) {
+        return MongoMappingLayout.byLongUrl(codec, longUrl);
+    }
+
+    @Override
+    public Query page(final String afterShortUrl, final int limit) {
+        val criteria = afterShortUrl == null
+                ? new Criteria()
+                : Criteria.where(UrlMappingDocument.SHORT_URL).gt(afterShortUrl);
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, UrlMappingDocument.SHORT_URL))  // served by unique shortUrl index
+                .limit(limit);
+    }
+
+    @Override
+    public boolean storesShortUrls() {
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ *  Clicks of a short url, kept apart from UrlMappings so counting does not rewrite mapping documents
+ *  and lookups of mappings do not read counts.
+ */
+@Document(ClickCountDocument.COLLECTION)
+@Data
+@AllArgsConstructor
+public class ClickCountDocument {
+    @Transient public static final String COLLECTION = "ClickCounts";
+    @Transient public static final String CLICKS = "clicks";
+    @Id private final String shortUrl;
+    private final long clicks;
+}
@@ -0,0 +1,114 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.MongoLayoutConfig;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.mongodb.MongoException;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ *  Copies all mappings of the classic UrlMappings collection into the compact layout on startup (mongo-layout.migrate).
+ *
+ *  The classic collection is read in batches of mongo-layout.migration-batch-size ordered by _id, every batch is written
+ *  with a single unordered bulk of upserts keyed by the decoded sequence id. Copies are idempotent, so the migration
+ *  can be run again right before switching mongo-layout.layout to pick up mappings created in the meantime.
+ *  Long urls are re-encoded with the current dictionary (see UrlCodec).
+ *  The classic collection is left untouched.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mongo-layout.migrate", havingValue = "true")
+public class CompactLayoutMigration implements ApplicationRunner {
+    private static final String ID = "_id";
+    private final MongoTemplate mongoTemplate;
+    private final ClassicMappingLayout classicLayout;
+    private final CompactMappingLayout compactLayout;
+    private final int batchSize;
+
+    @Autowired
+    public CompactLayoutMigration(
+            final MongoTemplate mongoTemplate,
+            final SequenceMappingStrategy sequenceMapping,
+            final UrlCodec codec,
+            final MongoLayoutConfig config) {
+        this.mongoTemplate = mongoTemplate;
+        this.classicLayout = new ClassicMappingLayout(codec);
+        this.compactLayout = new CompactMappingLayout(sequenceMapping, codec);
+        this.batchSize = config.getMigrationBatchSize();
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        migrate();
+    }
+
+    /**
+     * @return number of mappings copied
+     * @throws StorageException if reading or writing a batch failed, already copied batches are kept
+     */
+    public long migrate() throws StorageException {
+        val startedAt = Instant.now();
+        long copied = 0;
+        long skipped = 0;
+        String lastId = null;
+        try {
+            while (true) {
+                val criteria = lastId == null ? new Criteria() : Criteria.where(ID).gt(new ObjectId(lastId));
+                val query = new Query(criteria)
+                        .with(Sort.by(Sort.Direction.ASC, ID))
+                        .limit(batchSize);
+                val batch = mongoTemplate.find(query, UrlMappingDocument.class);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                val bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CompactUrlMappingDocument.class);
+                int upserts = 0;
+                for (val document : batch) {
+                    val mapping = classicLayout.toUrlMapping(document);
+                    if (compactLayout.byShortUrl(mapping.getShortUrl()).isEmpty()) {
+                        log.warn("skipping {}, short url does not decode to a sequence id", mapping.getShortUrl());
+                        skipped++;
+                        continue;
+                    }
+                    val compact = compactLayout.toDocument(mapping, document.getCreatedAt());
+                    bulk.replaceOne(
+                            new Query(Criteria.where(ID).is(compact.getId())),
+                            compact,
+                            FindAndReplaceOptions.options().upsert());
+                    upserts++;
+                }
+                if (upserts > 0) {
+                    bulk.execute();
+                }
+                copied += upserts;
+                lastId = batch.get(batch.size() - 1).getId();
+                log.info("migrated {} mappings to the compact layout", copied);
+            }
+        } catch (MongoException | DataAccessException e) {
+            val msg = "Migration to the compact layout failed after " + copied + " mappings";
+            log.error(msg, e);
+            throw new StorageException(msg, e);
+        }
+        log.info("migrated {} mappings to the compact layout in {}, skipped {}",
+                copied, Duration.between(startedAt, Instant.now()), skipped);
+        return copied;
+    }
+}
@@ -0,0 +1,105 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.val;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+
+/**
+ *  Short urls of all mapping strategies decode to sequence ids, short urls that do not decode (e.g. a leading zero digit)
+ *  can not exist in this layout and are not looked up at all.
+ *  Pages are ordered by sequence id, which is the order of creation for sequence mapping.
+ */
+public class CompactMappingLayout implements MongoMappingLayout {
+    private static final String ID = "_id";
+    private final SequenceMappingStrategy sequenceMapping;
+    private final UrlCodec codec;
+
+    public CompactMappingLayout(final SequenceMappingStrategy sequenceMapping, final UrlCodec codec) {
+        this.sequenceMapping = sequenceMapping;
+        this.codec = codec;
+    }
+
+    @Override
+    public Class<?> documentClass() {
+        return CompactUrlMappingDocument.class;
+    }
+
+    @Override
+    public Object toDocument(final UrlMapping mapping) {
+        return toDocument(mapping, Instant.now());
+    }
+
+    public CompactUrlMappingDocument toDocument(final UrlMapping mapping, final Instant createdAt) {
+        val id = sequenceMapping.tryDecode(mapping.getShortUrl())
+                .orElseThrow(() -> new IllegalArgumentException(
+                        mapping.getShortUrl() + " can not be stored with the compact mongo layout"));
+        return CompactUrlMappingDocument.builder()
+                .id(id)
+                .longUrl(codec.encode(mapping.getLongUrl()))
+                .createdAt(createdAt)
+                .expiresAt(mapping.getExpiresAt())
+                .build();
+    }
+
+    @Override
+    public UrlMapping toUrlMapping(final Object document) {
+        val compact = (CompactUrlMappingDocument) document;
+        return new UrlMapping(
+                codec.decode(compact.getLongUrl()),
+                sequenceMapping.encode(compact.getId()),
+                compact.getExpiresAt());
+    }
+
+    @Override
+    public Optional<Criteria> byShortUrl(final String shortUrl) {
+        val id = sequenceMapping.tryDecode(shortUrl);
+        return id.isPresent() ? Optional.of(Criteria.where(ID).is(id.getAsLong())) : Optional.empty();
+    }
+
+    @Override
+    public Criteria byShortUrls(final Collection<String> shortUrls) {
+        val ids = shortUrls.stream()
+                .map(sequenceMapping::tryDecode)
+                .filter(OptionalLong::isPresent)
+                .map(OptionalLong::getAsLong)
+                .collect(Collectors.toList());
+        return Criteria.where(ID).in(ids);
+    }
+
+    @Override
+    public Criteria byLongUrl(final String longUrl) {
+        return MongoMappingLayout.byLongUrl(codec, longUrl);
+    }
+
+    @Override
+    public Query page(final String afterShortUrl, final int limit) {
+        Criteria criteria;
+        if (afterShortUrl == null) {
+            criteria = new Criteria();
+        } else {
+            val after = sequenceMapping.tryDecode(afterShortUrl);
+            // a cursor that is not a short url of this layout matches nothing rather than restarting the pagination
+            criteria = after.isPresent()
+                    ? Criteria.where(ID).gt(after.getAsLong())
+                    : Criteria.where(ID).exists(false);
+        }
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, ID))
+                .limit(limit);
+    }
+
+    @Override
+    public boolean storesShortUrls() {
+        return false;
+    }
+}
@@ -0,0 +1,27 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+/**
+ *  Mapping document of the compact layout: the short url is not stored, _id is the sequence id it decodes to
+ *  (see SequenceMappingStrategy), so lookups by short url are served by the _id index and no secondary index
+ *  on short urls is needed. Field names are shortened as they are repeated in every document.
+ */
+@Document("CompactUrlMappings")
+@Data
+@Builder
+public class CompactUrlMappingDocument {
+    // note: indices are automatically created by spring (see application.yml)
+    @Id private final long id;
+    @NonNull @Field("u") private final String longUrl;      // hashed index with service.deduplicate only
+    @NonNull @Field("c") private final Instant createdAt;
+    @Indexed(expireAfterSeconds = 0, sparse = true) @Field("e") private final Instant expiresAt;  // see UrlMappingDocument
+}
@@ -0,0 +1,69 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.storage.ClickStorage;
+import com.mongodb.MongoException;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ *  Click counts in their own collection, one document per short url with the short url as _id.
+ *  A batch of counts is written as a single unordered bulk of upserts with $inc.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoClickStorage implements ClickStorage {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public MongoClickStorage(final MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Map<String, Long> addClicks(final Map<String, Long> clicks) throws StorageException {
+        if (clicks.isEmpty()) {
+            return Map.of();
+        }
+        val entries = new ArrayList<>(clicks.entrySet());
+        val bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ClickCountDocument.class);
+        entries.forEach(entry -> bulk.upsert(
+                new Query(Criteria.where("_id").is(entry.getKey())),
+                new Update().inc(ClickCountDocument.CLICKS, entry.getValue())));
+        try {
+            bulk.execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            // remaining upserts of an unordered bulk are applied, only the failed ones may be repeated
+            return e.getErrors()
+                    .stream()
+                    .map(error -> entries.get(error.getIndex()))
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        } catch (MongoException | DataAccessException e) {
+            throw new StorageException("Writing click counts failed", e);
+        }
+    }
+
+    @Override
+    public long clickCount(final String shortUrl) throws StorageException {
+        try {
+            val document = mongoTemplate.findById(shortUrl, ClickCountDocument.class);
+            return document == null ? 0 : document.getClicks();
+        } catch (MongoException | DataAccessException e) {
+            throw new StorageException("Reading click counts failed", e);
+        }
+    }
+}
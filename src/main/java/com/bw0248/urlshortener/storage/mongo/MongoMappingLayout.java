@@ -0,0 +1,57 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.val;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ *  Document layout of the mapping collection (mongo-layout.layout), shared by all mongo storages:
+ *  classic stores UrlMappingDocuments with an ObjectId and a unique index on shortUrl,
+ *  compact stores CompactUrlMappingDocuments keyed by the sequence id the short url decodes to.
+ *  Both store long urls encoded by UrlCodec.
+ */
+public interface MongoMappingLayout {
+    String LONG_URL = "longUrl";    // property name in both layouts, mapped to the field name by MongoTemplate
+
+    Class<?> documentClass();
+
+    Object toDocument(UrlMapping mapping);
+
+    UrlMapping toUrlMapping(Object document);
+
+    /**
+     * @param shortUrl
+     * @return criteria on raw field names, empty if no mapping with shortUrl can exist in this layout
+     */
+    Optional<Criteria> byShortUrl(String shortUrl);
+
+    Criteria byShortUrls(Collection<String> shortUrls);
+
+    Criteria byLongUrl(String longUrl);
+
+    /**
+     * @param afterShortUrl short url of the last mapping of the previous page, null for the first page
+     * @param limit
+     * @return query for the next page in the stable order of this layout
+     */
+    Query page(String afterShortUrl, int limit);
+
+    // false if short urls are not stored as strings, so they can not be loaded into MongoShortUrlFilter
+    boolean storesShortUrls();
+
+    /**
+     *  Matches longUrl stored plain or encoded with the current dictionary, equality matches are served by the hashed
+     *  index on longUrl. Mappings encoded with an older dictionary are not matched, so they are not deduplicated against.
+     */
+    static Criteria byLongUrl(final UrlCodec codec, final String longUrl) {
+        val encoded = codec.encode(longUrl);
+        return encoded.equals(longUrl)
+                ? Criteria.where(LONG_URL).is(longUrl)
+                : Criteria.where(LONG_URL).in(longUrl, encoded);
+    }
+}
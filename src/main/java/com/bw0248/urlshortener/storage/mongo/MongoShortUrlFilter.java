@@ -0,0 +1,208 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.config.BloomFilterConfig;
+import com.bw0248.urlshortener.config.JournalConfig;
+import com.bw0248.urlshortener.config.MappingStrategyConfig;
+import com.bw0248.urlshortener.config.SequenceConfig;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.bw0248.urlshortener.storage.BloomFilter;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ *  Bloom filter over all short urls in the UrlMappings collection, so lookups of unknown short urls
+ *  (scanners, typos) can be answered without querying Mongo.
+ *
+ *  The filter is populated after startup by streaming the short urls of all mappings in the background - until that
+ *  finished every lookup is checked against Mongo - and updated on every insert.
+ *  Mappings inserted by other instances are picked up periodically via the _id index (ObjectIds start with a timestamp),
+ *  until then they are missing from the filter. A miss is therefore only definite for short urls decoding to sequence ids
+ *  below the shared counter as read at the start of the previous refresh - those ids were reserved before it, so their
+ *  mappings were inserted in time to be picked up by the last refresh. Any other miss (newer sequence ids, short urls
+ *  that are no sequence mapping) is checked against Mongo. No miss is definite if the active mapping strategy is not
+ *  sequence (codes of other strategies might decode to any sequence id) or with sequence block allocation (ids are
+ *  reserved long before they are used) or with the journal enabled (journaled mappings are inserted when the journal is
+ *  flushed, possibly after a refresh following their id reservation).
+ *
+ *  The compact layout (see CompactMappingLayout) stores no short urls and no ObjectIds to refresh by, the filter is
+ *  disabled then - lookups of unknown short urls are answered by the _id index, which is cheap enough.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoShortUrlFilter implements ApplicationRunner {
+    // tolerated clock skew between instances generating ObjectIds
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final Optional<BloomFilter> filter;
+    private final SequenceMappingStrategy sequenceMapping;
+    private final ObjectProvider<UrlMappingStrategy> activeMapping;    // resolved lazily, strategies might use storage
+    private final SequenceConfig sequenceConfig;
+    private final JournalConfig journalConfig;
+    private final Counter rejectedLookups;
+    private volatile boolean sequenceWatermark;
+    private volatile Instant lastRefresh;       // null until the initial load finished
+    private long counterAtLastRefresh;
+    private volatile long definiteBelow;    // misses of sequence ids below are definite, see class comment
+
+    @Autowired
+    public MongoShortUrlFilter(
+            final MongoTemplate mongoTemplate,
+            final MongoMappingLayout layout,
+            final BloomFilterConfig config,
+            final SequenceMappingStrategy sequenceMapping,
+            @Qualifier(MappingStrategyConfig.ACTIVE) final ObjectProvider<UrlMappingStrategy> activeMapping,
+            final SequenceConfig sequenceConfig,
+            final JournalConfig journalConfig,
+            final MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.sequenceMapping = sequenceMapping;
+        this.activeMapping = activeMapping;
+        this.sequenceConfig = sequenceConfig;
+        this.journalConfig = journalConfig;
+        if (config.isEnabled() && !layout.storesShortUrls()) {
+            log.info("short url bloom filter is not supported by the compact mongo layout, disabling it");
+        }
+        this.filter = config.isEnabled() && layout.storesShortUrls()
+                ? Optional.of(new BloomFilter(config.getExpectedInsertions(), config.getFalsePositiveRate()))
+                : Optional.empty();
+        this.rejectedLookups = Counter.builder("shortener.bloom.rejected")
+                .description("lookups of short urls answered as unknown without querying storage")
+                .register(meterRegistry);
+        filter.ifPresent(bloomFilter -> {
+            Gauge.builder("shortener.bloom.false-positive-rate", bloomFilter, BloomFilter::expectedFalsePositiveRate)
+                    .register(meterRegistry);
+            Gauge.builder("shortener.bloom.memory", bloomFilter, BloomFilter::memoryBytes)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("shortener.bloom.insertions", bloomFilter, BloomFilter::approximateInsertions)
+                    .register(meterRegistry);
+        });
+    }
+
+    // the initial load scans the whole collection, startup does not wait for it
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (filter.isEmpty()) {
+            return;
+        }
+        val loader = new Thread(this::initialLoad, "bloom-filter-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // package-private for tests
+    void initialLoad() {
+        sequenceWatermark = !sequenceConfig.isBlockAllocation()
+                && !journalConfig.isEnabled()
+                && activeMapping.getObject() == sequenceMapping;
+        if (!sequenceWatermark) {
+            log.info("short url bloom filter misses are checked against mongo with mapping strategies other than sequence, "
+                    + "with sequence block allocation and with the journal enabled");
+        }
+        try {
+            load(Filters.empty());
+        } catch (RuntimeException e) {
+            log.error("loading short urls into bloom filter failed, lookups are checked against mongo", e);
+        }
+    }
+
+    /**
+     * @param shortUrl
+     * @return false if shortUrl definitely does not exist in storage
+     */
+    public boolean mightExist(final String shortUrl) {
+        if (lastRefresh == null) {
+            return true;
+        }
+        val mightExist = filter.map(bloomFilter -> bloomFilter.mightContain(shortUrl)).orElse(true)
+                || !createdBeforeLastRefresh(shortUrl);
+        if (!mightExist) {
+            rejectedLookups.increment();
+        }
+        return mightExist;
+    }
+
+    public void add(final String shortUrl) {
+        filter.ifPresent(bloomFilter -> bloomFilter.put(shortUrl));
+    }
+
+    public void clear() {
+        filter.ifPresent(BloomFilter::clear);
+    }
+
+    @Scheduled(
+            initialDelayString = "${bloom-filter.refresh-interval-ms}",
+            fixedDelayString = "${bloom-filter.refresh-interval-ms}")
+    public void refresh() {
+        if (filter.isEmpty() || lastRefresh == null) {
+            return;
+        }
+        val since = ObjectId.getSmallestWithDate(Date.from(lastRefresh.minus(REFRESH_OVERLAP)));
+        load(Filters.gte("_id", since));
+    }
+
+    private boolean createdBeforeLastRefresh(final String shortUrl) {
+        if (!sequenceWatermark) {
+            return false;
+        }
+        val sequenceId = sequenceMapping.tryDecode(shortUrl);
+        return sequenceId.isPresent() && sequenceId.getAsLong() < definiteBelow;
+    }
+
+    private synchronized void load(final Bson query) {
+        val startedAt = Instant.now();
+        val counter = currentCounter();
+        long count = 0;
+        val documents = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(UrlMappingDocument.class))
+                .find(query)
+                .projection(Projections.include(UrlMappingDocument.SHORT_URL))
+                .batchSize(10_000);
+        for (Document document : documents) {
+            add(document.getString(UrlMappingDocument.SHORT_URL));
+            count++;
+        }
+        lastRefresh = startedAt;
+        // the first load has no previous one, misses stay unconfirmed until the next refresh
+        definiteBelow = counterAtLastRefresh;
+        counterAtLastRefresh = counter;
+        log.debug("added {} short urls to bloom filter in {}", count, Duration.between(startedAt, Instant.now()));
+    }
+
+    // next sequence id to be handed out by the shared counter, 0 if it is not initialized yet
+    private long currentCounter() {
+        return Optional
+                .ofNullable(mongoTemplate.findOne(
+                        new Query(Criteria.where("key").is(SequenceDocument.KEY)),
+                        SequenceDocument.class))
+                .map(SequenceDocument::getId)
+                .orElse(0L);
+    }
+}
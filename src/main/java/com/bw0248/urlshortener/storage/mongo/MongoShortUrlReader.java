@@ -0,0 +1,190 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.config.MongoReadConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.LatencyTracker;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.val;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Lookups by short url with a configurable read preference (mongo-reads.read-preference).
+ *
+ *  Mappings are immutable, so reading from secondaries only misses mappings that are not replicated yet -
+ *  a mapping not found with a non-primary read preference is looked up on the primary before it is reported as unknown.
+ *  Unknown short urls are mostly rejected by MongoShortUrlFilter before, so the extra read is rare.
+ *
+ *  With mongo-reads.hedge.enabled a second read (mongo-reads.hedge.read-preference) is sent if the first one did not
+ *  answer within the configured percentile of recent read latencies, the first successful answer is used - misses of
+ *  the hedge are only used if it reads from the primary.
+ *  Reads are executed by a bounded pool then, once it is exhausted reads are executed by the caller without hedging.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoShortUrlReader {
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingLayout layout;
+    private final MongoCollection<Document> collection;
+    private final ReadPreference readPreference;
+    private final ReadPreference hedgeReadPreference;
+    private final Optional<ExecutorService> hedgeExecutor;
+    private final LatencyTracker latencies;
+    private final Counter primaryFallbacks;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+
+    @Autowired
+    public MongoShortUrlReader(
+            final MongoTemplate mongoTemplate,
+            final MongoMappingLayout layout,
+            final MongoReadConfig config,
+            final MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(layout.documentClass()));
+        this.readPreference = ReadPreference.valueOf(config.getReadPreference());
+        this.hedgeReadPreference = ReadPreference.valueOf(config.getHedgeReadPreference());
+        this.hedgeExecutor = config.isHedgeEnabled()
+                ? Optional.of(hedgeExecutor(config.getHedgeMaxConcurrent()))
+                : Optional.empty();
+        this.latencies = new LatencyTracker(
+                config.getHedgePercentile(),
+                config.getHedgeMinDelay().toNanos(),
+                config.getHedgeMaxDelay().toNanos());
+        this.primaryFallbacks = Counter.builder("shortener.mongo.reads.primary-fallbacks")
+                .description("lookups repeated on the primary after a miss with the configured read preference")
+                .register(meterRegistry);
+        this.hedges = Counter.builder("shortener.mongo.reads.hedged")
+                .description("second reads sent because the first one was slow")
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("shortener.mongo.reads.hedge-wins")
+                .description("second reads that answered before the first one")
+                .register(meterRegistry);
+        Gauge.builder("shortener.mongo.reads.hedge-delay", latencies, tracker -> tracker.percentileNanos() / 1e9)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public Optional<UrlMapping> findByShortUrl(final String shortUrl) {
+        val mapping = hedgeExecutor.isPresent() ? hedgedRead(shortUrl) : timedRead(readPreference, shortUrl);
+        if (mapping.isPresent() || readPreference.equals(ReadPreference.primary())) {
+            return mapping;
+        }
+        primaryFallbacks.increment();
+        return read(ReadPreference.primary(), shortUrl);
+    }
+
+    @PreDestroy
+    public void close() {
+        hedgeExecutor.ifPresent(ExecutorService::shutdown);
+    }
+
+    // package-private for tests
+    Optional<UrlMapping> read(final ReadPreference readPreference, final String shortUrl) {
+        val criteria = layout.byShortUrl(shortUrl);
+        if (criteria.isEmpty()) {
+            return Optional.empty();
+        }
+        val document = collection.withReadPreference(readPreference)
+                .find(criteria.get().getCriteriaObject())
+                .first();
+        return Optional.ofNullable(document)
+                .map(found -> mongoTemplate.getConverter().read(layout.documentClass(), found))
+                .map(layout::toUrlMapping);
+    }
+
+    private Optional<UrlMapping> timedRead(final ReadPreference readPreference, final String shortUrl) {
+        val startedAt = System.nanoTime();
+        val mapping = read(readPreference, shortUrl);
+        latencies.record(System.nanoTime() - startedAt);
+        return mapping;
+    }
+
+    private Optional<UrlMapping> hedgedRead(final String shortUrl) {
+        val executor = hedgeExecutor.get();
+        CompletableFuture<Optional<UrlMapping>> first;
+        try {
+            first = CompletableFuture.supplyAsync(() -> timedRead(readPreference, shortUrl), executor);
+        } catch (RejectedExecutionException e) {
+            return timedRead(readPreference, shortUrl);
+        }
+        try {
+            return first.get(latencies.percentileNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return await(first.applyToEither(hedge(first, shortUrl), mapping -> mapping));
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for read of " + shortUrl, e);
+        }
+    }
+
+    // completes with the hedged read if it finds the mapping first, never completes if it fails so the first read decides -
+    // a miss of a hedge to a non-primary node might just not be replicated yet, so it is not used either
+    private CompletableFuture<Optional<UrlMapping>> hedge(
+            final CompletableFuture<Optional<UrlMapping>> first,
+            final String shortUrl) {
+        val hedged = new CompletableFuture<Optional<UrlMapping>>();
+        try {
+            CompletableFuture.supplyAsync(() -> read(hedgeReadPreference, shortUrl), hedgeExecutor.get())
+                    .thenAccept(mapping -> {
+                        // counted before completing, the caller continues as soon as hedged is complete
+                        val definite = mapping.isPresent() || hedgeReadPreference.equals(ReadPreference.primary());
+                        if (definite && !first.isDone()) {
+                            hedgeWins.increment();
+                            hedged.complete(mapping);
+                        }
+                    });
+            hedges.increment();
+        } catch (RejectedExecutionException e) {
+            // no capacity for a hedge, wait for the first read
+        }
+        return hedged;
+    }
+
+    private static Optional<UrlMapping> await(final CompletableFuture<Optional<UrlMapping>> read) {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        throw new IllegalStateException(e);
+    }
+
+    private static ExecutorService hedgeExecutor(final int maxConcurrent) {
+        val threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, maxConcurrent, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            val thread = new Thread(runnable, "mongo-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlDictionary;
+import com.bw0248.urlshortener.codec.UrlDictionaryStore;
+import com.mongodb.DuplicateKeyException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoUrlDictionaryStore implements UrlDictionaryStore {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public MongoUrlDictionaryStore(final MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<UrlDictionary> findAll() {
+        return mongoTemplate.findAll(UrlDictionaryDocument.class)
+                .stream()
+                .map(UrlDictionaryDocument::toUrlDictionary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<UrlDictionary> find(final int version) {
+        return Optional.ofNullable(mongoTemplate.findById(version, UrlDictionaryDocument.class))
+                .map(UrlDictionaryDocument::toUrlDictionary);
+    }
+
+    @Override
+    public boolean insert(final UrlDictionary dictionary) {
+        try {
+            mongoTemplate.insert(UrlDictionaryDocument.from(dictionary));
+            return true;
+        } catch (DuplicateKeyException | org.springframework.dao.DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
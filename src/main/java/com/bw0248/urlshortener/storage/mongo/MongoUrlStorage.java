@@ -1,92 +1,234 @@
 package com.bw0248.urlshortener.storage.mongo;
 
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.SequenceConfig;
+import com.bw0248.urlshortener.config.ServiceConfig;
+import com.bw0248.urlshortener.config.StorageConfig;
 import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
 import com.bw0248.urlshortener.exception.StorageException;
 import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.SequenceBlockAllocator;
 import com.bw0248.urlshortener.storage.UrlStorage;
 import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.WriteResultChecking;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.HashedIndex;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+@Qualifier(StorageConfig.ENGINE)
 public class MongoUrlStorage implements UrlStorage {
-    private final MongoDao dao;
+    private static final int STREAM_BATCH_SIZE = 1000;
     private final MongoTemplate mongoTemplate;
+    private final MongoMappingLayout layout;
+    private final MongoShortUrlFilter shortUrlFilter;
+    private final MongoShortUrlReader shortUrlReader;
+    private final ShortenerMetrics metrics;
+    private final Optional<SequenceBlockAllocator> blockAllocator;
 
     @Autowired
-    public MongoUrlStorage(final MongoDao dao, final MongoTemplate mongoTemplate) {
-        this.dao = dao;
+    public MongoUrlStorage(
+            final MongoTemplate mongoTemplate,
+            final MongoMappingLayout layout,
+            final MongoShortUrlFilter shortUrlFilter,
+            final MongoShortUrlReader shortUrlReader,
+            final SequenceConfig sequenceConfig,
+            final ServiceConfig serviceConfig,
+            final ShortenerMetrics metrics,
+            final MeterRegistry meterRegistry) {
         this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.shortUrlFilter = shortUrlFilter;
+        this.shortUrlReader = shortUrlReader;
+        this.metrics = metrics;
         this.mongoTemplate.setWriteConcern(WriteConcern.ACKNOWLEDGED);
         mongoTemplate.setWriteResultChecking(WriteResultChecking.EXCEPTION);
         if (mongoTemplate.getCollection(SequenceDocument.COLLECTION).countDocuments() == 0) {
             log.info("initializing sequence counter");
             mongoTemplate.insert(SequenceDocument.init());
         }
+        // only deduplication looks up mappings by long url, without it the index would just slow down inserts.
+        // The hashed index stores a 64 bit hash per url instead of the url itself.
+        if (serviceConfig.isDeduplicate()) {
+            mongoTemplate.indexOps(layout.documentClass()).ensureIndex(HashedIndex.hashed(MongoMappingLayout.LONG_URL));
+        }
+        this.blockAllocator = sequenceConfig.isBlockAllocation()
+                ? Optional.of(new SequenceBlockAllocator(
+                        this::reserveUniqueIds,
+                        sequenceConfig.getBlockSize(),
+                        sequenceConfig.getRefillThreshold(),
+                        meterRegistry))
+                : Optional.empty();
     }
 
     @Override
     public List<UrlMapping> findAllMappings() {
-        return dao.findAll()
+        return mongoTemplate.findAll(layout.documentClass())
+                .stream()
+                .map(layout::toUrlMapping)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<UrlMapping> findMappings(final String afterShortUrl, final int limit) {
+        return mongoTemplate.find(layout.page(afterShortUrl, limit), layout.documentClass())
+                .stream()
+                .map(layout::toUrlMapping)
+                .collect(Collectors.toList());
+    }
+
+    // $sample picks random documents without a collection scan if size is below 5% of the collection
+    @Override
+    public List<UrlMapping> sampleMappings(final int size) {
+        val aggregation = Aggregation.newAggregation(Aggregation.sample(size));
+        return mongoTemplate.aggregate(aggregation, layout.documentClass(), layout.documentClass())
+                .getMappedResults()
                 .stream()
-                .map(this::toUrlMapping)
+                .map(layout::toUrlMapping)
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Stream<UrlMapping> streamAllMappings() {
+        val query = new Query().cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, layout.documentClass())
+                .stream()
+                .map(layout::toUrlMapping);
+    }
+
     @Override
     public void deleteAllMappings() {
-        dao.deleteAll();
+        mongoTemplate.remove(new Query(), layout.documentClass());
+        shortUrlFilter.clear();
     }
 
     @Override
     public long mappingsCount() {
-        return dao.count();
+        return mongoTemplate.count(new Query(), layout.documentClass());
     }
 
     @Override
     public Optional<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
-        val mappingDocument = UrlMappingDocument.from(mapping);
+        val mappingDocument = layout.toDocument(mapping);
         try {
-            return Optional
-                    .of(mongoTemplate.insert(mappingDocument))
-                    .map(this::toUrlMapping);
-        } catch (DuplicateKeyException e) {
+            val inserted = mongoTemplate.insert(mappingDocument);
+            shortUrlFilter.add(mapping.getShortUrl());
+            return Optional.of(inserted).map(layout::toUrlMapping);
+        } catch (DuplicateKeyException | org.springframework.dao.DuplicateKeyException e) {
+            metrics.duplicateShortUrl();
             throw new DuplicateShortUrlException(
                     "Cannot insert UrlMapping - short url " + mapping.getShortUrl() + " already exists", e
             );
-        } catch (MongoException e) {
+        } catch (MongoException | DataAccessException e) {    // MongoTemplate translates driver exceptions
             val msg = "Writing to database failed";
             log.error(msg, e);
             throw new StorageException(msg, e);
         }
     }
 
+    @Override
+    public List<Optional<UrlMapping>> insertMappings(final List<UrlMapping> mappings) throws StorageException {
+        val documents = mappings.stream()
+                .map(layout::toDocument)
+                .collect(Collectors.toList());
+        Set<Integer> failedIndices;
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, layout.documentClass())
+                    .insert(documents)
+                    .execute();
+            failedIndices = Set.of();
+        } catch (BulkOperationException e) {
+            log.warn("{} of {} mappings could not be inserted", e.getErrors().size(), documents.size());
+            failedIndices = e.getErrors()
+                    .stream()
+                    .map(BulkWriteError::getIndex)
+                    .collect(Collectors.toSet());
+        } catch (MongoException | DataAccessException e) {
+            val msg = "Bulk writing to database failed";
+            log.error(msg, e);
+            throw new StorageException(msg, e);
+        }
+
+        val results = new ArrayList<Optional<UrlMapping>>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            if (failedIndices.contains(i)) {
+                results.add(Optional.empty());
+            } else {
+                shortUrlFilter.add(mappings.get(i).getShortUrl());
+                results.add(Optional.of(layout.toUrlMapping(documents.get(i))));
+            }
+        }
+        return results;
+    }
+
     @Override
     public Optional<UrlMapping> findMappingByShortUrl(String shortUrl) {
         log.debug("Cache miss for {}", shortUrl);
+        if (!shortUrlFilter.mightExist(shortUrl)) {
+            return Optional.empty();
+        }
+        try {
+            return shortUrlReader.findByShortUrl(shortUrl);
+        } catch (MongoException e) {
+            throw new StorageException("Reading from database failed", e);
+        }
+    }
+
+    @Override
+    public List<UrlMapping> findMappingsByShortUrls(final Collection<String> shortUrls) {
+        return mongoTemplate.find(new Query(layout.byShortUrls(shortUrls)), layout.documentClass())
+                .stream()
+                .map(layout::toUrlMapping)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        // there might be multiple mappings per longUrl
         return Optional
-                .ofNullable(dao.findMappingByShortUrl(shortUrl))
-                .map(this::toUrlMapping);
+                .ofNullable(mongoTemplate.findOne(new Query(layout.byLongUrl(longUrl)), layout.documentClass()))
+                .map(layout::toUrlMapping);
     }
 
     @Override
     public long nextUniqueId() {
-        return upsertCounter()
+        return blockAllocator
+                .map(SequenceBlockAllocator::nextId)
+                .orElseGet(() -> reserveUniqueIds(1));
+    }
+
+    // reserves the range with a single increment of the counter, bypassing block allocation
+    @Override
+    public long reserveUniqueIds(final long count) {
+        return upsertCounter(count)
                 .map(SequenceDocument::getId)
                 .orElseThrow(() -> {
                     val msg = "Unable to upsert counter";
@@ -96,17 +238,18 @@ public class MongoUrlStorage implements UrlStorage {
     }
 
     // atomically select and increment sequence id
-    private Optional<SequenceDocument> upsertCounter() {
+    private Optional<SequenceDocument> upsertCounter(final long count) {
         return Optional.ofNullable(
                 mongoTemplate.findAndModify(
                        new Query(Criteria.where("key").is(SequenceDocument.KEY)),
-                       new Update().inc(SequenceDocument.ID, 1),
+                       new Update().inc(SequenceDocument.ID, count),
                        FindAndModifyOptions.options().upsert(true).returnNew(false),
                        SequenceDocument.class)
         );
     }
 
-    private UrlMapping toUrlMapping(final UrlMappingDocument document) {
-        return new UrlMapping(document.getLongUrl(), document.getShortUrl());
+    // package-private for benchmarks
+    static UrlMapping toUrlMapping(final UrlMappingDocument document, final UrlCodec codec) {
+        return new UrlMapping(codec.decode(document.getLongUrl()), document.getShortUrl(), document.getExpiresAt());
     }
 }
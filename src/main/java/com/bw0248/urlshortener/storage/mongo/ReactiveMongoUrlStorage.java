@@ -0,0 +1,108 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.ReactiveUrlStorage;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.WriteResultChecking;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ *  Reactive mongo driver based storage for profile reactive.
+ *  Shares the collections and their layout (see MongoMappingLayout), the sequence counter and the short url Bloom filter with MongoUrlStorage,
+ *  so both storages can be used side by side on the same db.
+ *  Ids are reserved one at a time, block allocation (see SequenceConfig) only applies to MongoUrlStorage.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "mongo", matchIfMissing = true)
+@Profile("reactive")
+public class ReactiveMongoUrlStorage implements ReactiveUrlStorage {
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final MongoMappingLayout layout;
+    private final MongoShortUrlFilter shortUrlFilter;
+    private final ShortenerMetrics metrics;
+
+    @Autowired
+    public ReactiveMongoUrlStorage(
+            final ReactiveMongoTemplate mongoTemplate,
+            final MongoMappingLayout layout,
+            final MongoShortUrlFilter shortUrlFilter,
+            final ShortenerMetrics metrics) {
+        this.mongoTemplate = mongoTemplate;
+        this.layout = layout;
+        this.shortUrlFilter = shortUrlFilter;
+        this.metrics = metrics;
+        mongoTemplate.setWriteConcern(WriteConcern.ACKNOWLEDGED);
+        mongoTemplate.setWriteResultChecking(WriteResultChecking.EXCEPTION);
+    }
+
+    // atomically select and increment sequence id, counter document is upserted if missing
+    @Override
+    public Mono<Long> nextUniqueId() {
+        return mongoTemplate.findAndModify(
+                        new Query(Criteria.where("key").is(SequenceDocument.KEY)),
+                        new Update().inc(SequenceDocument.ID, 1),
+                        FindAndModifyOptions.options().upsert(true).returnNew(false),
+                        SequenceDocument.class)
+                .map(SequenceDocument::getId)
+                // upsert of a missing counter returns no previous document - the upserted counter started at 0
+                .defaultIfEmpty(0L)
+                .onErrorMap(this::isStorageError, e -> storageException("Unable to upsert counter", e));
+    }
+
+    @Override
+    public Mono<UrlMapping> insertMapping(final UrlMapping mapping) throws DuplicateShortUrlException, StorageException {
+        return Mono.fromSupplier(() -> layout.toDocument(mapping))
+                .flatMap(mongoTemplate::insert)
+                .doOnNext(inserted -> shortUrlFilter.add(mapping.getShortUrl()))
+                .map(layout::toUrlMapping)
+                .doOnError(DuplicateKeyException.class, e -> metrics.duplicateShortUrl())
+                .onErrorMap(DuplicateKeyException.class, e -> new DuplicateShortUrlException(
+                        "Cannot insert UrlMapping - short url " + mapping.getShortUrl() + " already exists", e))
+                .onErrorMap(this::isStorageError, e -> storageException("Writing to database failed", e));
+    }
+
+    @Override
+    public Mono<UrlMapping> findMappingByShortUrl(final String shortUrl) {
+        val criteria = layout.byShortUrl(shortUrl);
+        if (criteria.isEmpty() || !shortUrlFilter.mightExist(shortUrl)) {
+            return Mono.empty();
+        }
+        return mongoTemplate.findOne(new Query(criteria.get()), layout.documentClass())
+                .map(layout::toUrlMapping)
+                .onErrorMap(this::isStorageError, e -> storageException("Reading from database failed", e));
+    }
+
+    @Override
+    public Mono<UrlMapping> findMappingByLongUrl(final String longUrl) {
+        return mongoTemplate.findOne(new Query(layout.byLongUrl(longUrl)), layout.documentClass())
+                .map(layout::toUrlMapping)
+                .onErrorMap(this::isStorageError, e -> storageException("Reading from database failed", e));
+    }
+
+    private boolean isStorageError(final Throwable e) {
+        return e instanceof MongoException || e instanceof DataAccessException;
+    }
+
+    private StorageException storageException(final String msg, final Throwable e) {
+        log.error(msg, e);
+        return new StorageException(msg, e instanceof Exception ? (Exception) e : new RuntimeException(e));
+    }
+}
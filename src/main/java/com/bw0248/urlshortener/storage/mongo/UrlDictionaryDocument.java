@@ -0,0 +1,32 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlDictionary;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+@Document("UrlDictionaries")
+@Data
+@Builder
+public class UrlDictionaryDocument {
+    @Id private final int version;      // unique, concurrently trained dictionaries of the same version are rejected
+    @NonNull private final List<String> tokens;
+    @NonNull private final Instant createdAt;
+
+    public static UrlDictionaryDocument from(final UrlDictionary dictionary) {
+        return UrlDictionaryDocument.builder()
+                .version(dictionary.getVersion())
+                .tokens(dictionary.getTokens())
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    public UrlDictionary toUrlDictionary() {
+        return new UrlDictionary(version, tokens);
+    }
+}
@@ -1,10 +1,12 @@
 package com.bw0248.urlshortener.storage.mongo;
 
+import com.bw0248.urlshortener.codec.UrlCodec;
 import com.bw0248.urlshortener.mapping.UrlMapping;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -14,17 +16,22 @@ import java.time.Instant;
 @Data
 @Builder
 public class UrlMappingDocument {
+    @Transient public static final String SHORT_URL = "shortUrl";
     // note: indices are automatically created by spring (see application.yml)
     @Id private final String id;
-    @NonNull private final String longUrl;
+    @NonNull private final String longUrl;      // hashed index with service.deduplicate only, see MongoUrlStorage
     @NonNull @Indexed(unique = true) private final String shortUrl;     // shortUrl has a unique index to prevent duplicates
     @NonNull private final Instant createdAt;
+    // TTL index, mongo deletes expired mappings within a minute. Sparse, null fields are not written, so mappings
+    // without expiry are not indexed (an existing non-sparse expiresAt index has to be dropped once)
+    @Indexed(expireAfterSeconds = 0, sparse = true) private final Instant expiresAt;
 
-    public static UrlMappingDocument from(final UrlMapping mapping) {
+    public static UrlMappingDocument from(final UrlMapping mapping, final UrlCodec codec) {
         return UrlMappingDocument.builder()
-                .longUrl(mapping.getLongUrl())
+                .longUrl(codec.encode(mapping.getLongUrl()))
                 .shortUrl(mapping.getShortUrl())
                 .createdAt(Instant.now())
+                .expiresAt(mapping.getExpiresAt())
                 .build();
     }
 }
@@ -1,6 +1,8 @@
 package com.bw0248.urlshortener;
 
+import com.bw0248.urlshortener.api.dto.BatchShortenResponse;
 import com.bw0248.urlshortener.api.dto.ShortenResponse;
+import com.bw0248.urlshortener.mapping.UrlMapping;
 import com.bw0248.urlshortener.storage.UrlStorage;
 import com.bw0248.urlshortener.util.UrlMappingList;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -19,18 +21,24 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -42,6 +50,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 class IntegrationTests {
 	private static final String GET_ALL_PATH = "/api/all";
 	private static final String SHORTEN_PATH = "/api/shorten";
+	private static final String BATCH_SHORTEN_PATH = "/api/shorten/batch";
+	private static final String EXPORT_PATH = "/api/export";
+	private static final String NEXT_PAGE_HEADER = "X-Next-After";
 	@Autowired private MockMvc mockMvc;
 	@Autowired private ObjectMapper mapper;
 	@Autowired private UrlStorage storage;
@@ -78,6 +89,67 @@ class IntegrationTests {
 		assertEquals(mappingsBefore + numThreads, getAllMappings().size());
 	}
 
+	@Test
+	void testBatchShortenRequest() throws Exception {
+		val payload = List.of(
+				Map.of("url", "https://example.com/1"),
+				Map.of("url", "invalid"),
+				Map.of("url", "https://example.com/2"));
+		val result = mockMvc
+				.perform(post(BATCH_SHORTEN_PATH)
+								 .contentType("application/json")
+								 .content(mapper.writeValueAsString(payload)))
+				.andExpect(status().isOk())
+				.andReturn();
+		val responses = deserializeResponse(result, BatchShortenResponse[].class);
+
+		assertEquals(payload.size(), responses.length);
+		assertNotNull(responses[0].getShortUrl());
+		assertNull(responses[1].getShortUrl());
+		assertNotNull(responses[1].getError());
+		assertNotNull(responses[2].getShortUrl());
+		assertEquals("https://example.com/2", responses[2].getLongUrl());
+		assertEquals(2, getAllMappings().size());
+	}
+
+	@Test
+	void testPaginatedGetAll() throws Exception {
+		IntStream.range(0, 5).forEach(i -> makeShortenRequest());
+
+		val firstPage = mockMvc.perform(get(GET_ALL_PATH).param("limit", "3"))
+				.andExpect(status().isOk())
+				.andReturn();
+		val after = firstPage.getResponse().getHeader(NEXT_PAGE_HEADER);
+		assertNotNull(after);
+		assertEquals(3, deserializeResponse(firstPage, UrlMappingList.class).size());
+
+		val lastPage = mockMvc.perform(get(GET_ALL_PATH).param("after", after).param("limit", "3"))
+				.andExpect(status().isOk())
+				.andReturn();
+		assertNull(lastPage.getResponse().getHeader(NEXT_PAGE_HEADER));
+		val remaining = deserializeResponse(lastPage, UrlMappingList.class);
+		assertEquals(2, remaining.size());
+		assertTrue(remaining.stream().allMatch(mapping -> mapping.getShortUrl().compareTo(after) > 0));
+	}
+
+	@Test
+	void testExport() throws Exception {
+		IntStream.range(0, 5).forEach(i -> makeShortenRequest());
+
+		val asyncResult = mockMvc.perform(get(EXPORT_PATH))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		val exported = mockMvc.perform(asyncDispatch(asyncResult))
+				.andExpect(status().isOk())
+				.andReturn()
+				.getResponse()
+				.getContentAsString()
+				.lines()
+				.map(line -> deserialize(line, UrlMapping.class))
+				.collect(Collectors.toList());
+		assertEquals(5, exported.size());
+	}
+
 	private void makeConcurrentShortenRequest(
 			final Set<String> shortenedUrls,
 			final CountDownLatch latch) {
@@ -119,9 +191,16 @@ class IntegrationTests {
 
 	private <T> T deserializeResponse(final MvcResult result, Class<T> type) {
 		try {
-			val rawString = result.getResponse().getContentAsString();
+			return deserialize(result.getResponse().getContentAsString(), type);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("could not deserialize response");
+		}
+	}
+
+	private <T> T deserialize(final String rawString, Class<T> type) {
+		try {
 			return mapper.readValue(rawString, type);
-		} catch (UnsupportedEncodingException | JsonProcessingException e) {
+		} catch (JsonProcessingException e) {
 			throw new IllegalStateException("could not deserialize response");
 		}
 	}
@@ -0,0 +1,137 @@
+package com.bw0248.urlshortener.analytics;
+
+import com.bw0248.urlshortener.config.ClickAnalyticsConfig;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.storage.ClickStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ClickCounterTest {
+    private static final int MAX_KEYS = 10;
+
+    private Map<String, Long> stored;
+    private ClickStorage storage;
+    private SimpleMeterRegistry meterRegistry;
+    private ClickCounter counter;
+
+    @BeforeEach
+    void beforeEach() {
+        stored = new ConcurrentHashMap<>();
+        storage = Mockito.mock(ClickStorage.class);
+        doAnswer(invocation -> {
+            invocation.<Map<String, Long>>getArgument(0).forEach((shortUrl, count) -> stored.merge(shortUrl, count, Long::sum));
+            return Map.of();
+        }).when(storage).addClicks(any());
+        doAnswer(invocation -> stored.getOrDefault(invocation.<String>getArgument(0), 0L))
+                .when(storage).clickCount(any());
+        meterRegistry = new SimpleMeterRegistry();
+        val config = new ClickAnalyticsConfig();
+        config.setEnabled(true);
+        config.setMaxKeys(MAX_KEYS);
+        config.setFlushBatchSize(3);
+        counter = new ClickCounter(storage, config, meterRegistry);
+    }
+
+    @Test
+    void testConcurrentClicksAreFlushedInBatches() throws InterruptedException {
+        val threads = 8;
+        val clicksPerThread = 10_000;
+        val executor = Executors.newFixedThreadPool(threads + 1);
+        val done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < clicksPerThread; i++) {
+                    counter.record("s" + (i % 5));
+                }
+                done.countDown();
+            });
+        }
+        // flushes concurrently to recording
+        executor.execute(() -> {
+            while (done.getCount() > 0) {
+                counter.flush();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        counter.flush();
+        counter.flush();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(threads * clicksPerThread / 5, stored.get("s" + i));
+            assertEquals(threads * clicksPerThread / 5, counter.clicks("s" + i));
+        }
+        assertEquals(threads * clicksPerThread, meterRegistry.get("shortener.clicks.flushed").counter().count());
+    }
+
+    @Test
+    void testMaxKeysAndIdleShortUrls() {
+        for (int i = 0; i < MAX_KEYS + 5; i++) {
+            counter.record("s" + i);
+        }
+        assertEquals(5, meterRegistry.get("shortener.clicks.dropped").counter().count());
+        assertEquals(MAX_KEYS, meterRegistry.get("shortener.clicks.tracked").gauge().value());
+        // pending clicks are reported before they are stored
+        assertEquals(1, counter.clicks("s0"));
+
+        counter.flush();
+        verify(storage, times(4)).addClicks(any());
+        assertEquals(1, counter.clicks("s0"));
+        // short urls without clicks since last flush are dropped from memory
+        counter.flush();
+        assertEquals(0, meterRegistry.get("shortener.clicks.tracked").gauge().value());
+        verify(storage, times(4)).addClicks(any());
+    }
+
+    @Test
+    void testFailedWritesAreRetried() {
+        doAnswer(invocation -> {
+            throw new StorageException("db down", null);
+        }).when(storage).addClicks(any());
+        counter.record("a");
+        counter.record("a");
+        counter.flush();
+        assertEquals(2, counter.clicks("a"));
+
+        // only the rejected part of a partially applied write is retried
+        doAnswer(invocation -> {
+            stored.merge("a", 2L, Long::sum);
+            return Map.of("b", 1L);
+        }).when(storage).addClicks(any());
+        counter.record("b");
+        counter.flush();
+        assertEquals(2, stored.get("a"));
+        assertEquals(1, counter.clicks("b"));
+        assertEquals(2, meterRegistry.get("shortener.clicks.flushed").counter().count());
+    }
+
+    @Test
+    void testDisabled() {
+        val config = new ClickAnalyticsConfig();
+        config.setEnabled(false);
+        counter = new ClickCounter(storage, config, new SimpleMeterRegistry());
+        counter.record("a");
+        counter.flush();
+        verify(storage, never()).addClicks(any());
+    }
+}
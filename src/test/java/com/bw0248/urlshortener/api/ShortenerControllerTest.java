@@ -1,34 +1,53 @@
 package com.bw0248.urlshortener.api;
 
 import com.bw0248.urlshortener.ShortenerService;
+import com.bw0248.urlshortener.analytics.ClickCounter;
 import com.bw0248.urlshortener.api.dto.ShortenRequest;
+import com.bw0248.urlshortener.cache.HotKeyTracker;
+import com.bw0248.urlshortener.cache.MappingExpiry;
+import com.bw0248.urlshortener.config.RedirectCacheConfig;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
 import com.bw0248.urlshortener.util.TestHelperUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.val;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
 public class ShortenerControllerTest {
     @Mock private ShortenerService service;
+    @Mock private ShortenerMetrics metrics;
+    @Mock private ClickCounter clicks;
+    @Mock private HotKeyTracker hotKeys;
+    @Mock private MappingExpiry expiry;
+    @Spy private RedirectResponseCache redirects = new RedirectResponseCache(redirectCacheConfig(), new SimpleMeterRegistry());
     @InjectMocks private ShortenerController controller;
 
     @Test
     void testUrlValidation() {
         val exampleMapping = TestHelperUtil.exampleMapping();
-        when(service.shorten(any())).thenReturn(Optional.of(exampleMapping));
+        when(service.shorten(any(), any())).thenReturn(Optional.of(exampleMapping));
         val validUrls = List.of(
                 "https://example.com",
                 "http://example.com",
@@ -53,6 +72,62 @@ public class ShortenerControllerTest {
         invalidUrls.stream()
                 .map(url -> ShortenRequest.builder().url(url).build())
                 .forEach(this::invalidShortenRequest);
+
+        // expiry has to be in the future
+        invalidShortenRequest(ShortenRequest.builder()
+                .url("https://example.com")
+                .expiresAt(Instant.now().minusSeconds(1))
+                .build());
+        controller.createMapping(ShortenRequest.builder()
+                .url("https://example.com")
+                .expiresAt(Instant.now().plusSeconds(60))
+                .build());
+    }
+
+    @Test
+    void testRedirects() {
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(service.getMappedLongUrl(exampleMapping.getShortUrl())).thenReturn(Optional.of(exampleMapping.getLongUrl()));
+        when(service.getMappedLongUrl("unknown")).thenReturn(Optional.empty());
+
+        for (int i = 0; i < 3; i++) {
+            val redirect = controller.resolveShortUrl(exampleMapping.getShortUrl());
+            assertEquals(HttpStatus.FOUND, redirect.getStatusCode());
+            assertEquals(exampleMapping.getLongUrl(), redirect.getHeaders().getLocation().toString());
+            assertEquals(HttpStatus.NOT_FOUND, controller.resolveShortUrl("unknown").getStatusCode());
+        }
+        // the response of a known short url is built once
+        verify(service, times(1)).getMappedLongUrl(exampleMapping.getShortUrl());
+        verify(service, times(3)).getMappedLongUrl("unknown");
+        // clicks are counted for cached and uncached redirects, not for unknown short urls
+        verify(clicks, times(3)).record(exampleMapping.getShortUrl());
+        verify(clicks, never()).record("unknown");
+
+        when(service.getMappedLongUrl("non-ascii")).thenReturn(Optional.of("https://example.com/ü"));
+        assertEquals("https://example.com/%C3%BC", controller.resolveShortUrl("non-ascii").getHeaders().getFirst(HttpHeaders.LOCATION));
+    }
+
+    @Test
+    void testExpiredShortUrlsAreGone() {
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(service.getMappedLongUrl(exampleMapping.getShortUrl())).thenReturn(Optional.of(exampleMapping.getLongUrl()));
+        assertEquals(HttpStatus.FOUND, controller.resolveShortUrl(exampleMapping.getShortUrl()).getStatusCode());
+
+        // cached redirect is not served once expired, expired short urls are not looked up again
+        when(expiry.isExpired(exampleMapping.getShortUrl())).thenReturn(true);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.GONE, controller.resolveShortUrl(exampleMapping.getShortUrl()).getStatusCode());
+        }
+        assertNull(redirects.getIfPresent(exampleMapping.getShortUrl()));
+        verify(service, times(1)).getMappedLongUrl(exampleMapping.getShortUrl());
+        verify(clicks, times(1)).record(exampleMapping.getShortUrl());
+
+        // expired while being looked up
+        when(service.getMappedLongUrl("expired")).thenAnswer(invocation -> {
+            when(expiry.isExpired("expired")).thenReturn(true);
+            return Optional.empty();
+        });
+        assertEquals(HttpStatus.GONE, controller.resolveShortUrl("expired").getStatusCode());
     }
 
     private void invalidShortenRequest(ShortenRequest shortenRequest) {
@@ -62,4 +137,11 @@ public class ShortenerControllerTest {
         );
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
     }
+
+    private static RedirectCacheConfig redirectCacheConfig() {
+        val config = new RedirectCacheConfig();
+        config.setMaxSize(100);
+        config.setExpireAfterWrite(Duration.ofMinutes(5));
+        return config;
+    }
 }
@@ -0,0 +1,97 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.CacheWarmupConfig;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import com.bw0248.urlshortener.util.TestHelperUtil;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CacheWarmerTest {
+
+    @Test
+    void testSnapshotIsLoadedInBatches(@TempDir final Path dir) {
+        val config = config(dir.resolve("snapshot.txt"));
+        val storage = Mockito.mock(UrlStorage.class);
+        when(storage.findMappingsByShortUrls(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .map(shortUrl -> new UrlMapping(
+                                "https://example.com/" + shortUrl,
+                                shortUrl,
+                                shortUrl.equals("s0") ? Instant.now().minusSeconds(1) : null))
+                        .collect(Collectors.toList()));
+
+        val cache = new MappingCache(cacheConfig());
+        IntStream.range(0, 25).forEach(i -> cache.put("s" + i, "https://example.com/s" + i));
+        new CacheWarmer(cache, storage, TestHelperUtil.mappingExpiry(cache), config).writeSnapshot();
+        assertEquals(25, cache.hottestKeys(100).size());
+
+        val newCache = new MappingCache(cacheConfig());
+        // expired mappings are not cached
+        assertEquals(24, new CacheWarmer(newCache, storage, TestHelperUtil.mappingExpiry(newCache), config).warmUp());
+        verify(storage, times(3)).findMappingsByShortUrls(anyCollection());
+        assertNull(newCache.get("s0"));
+        IntStream.range(1, 25).forEach(i ->
+                assertEquals("https://example.com/s" + i, newCache.get("s" + i, String.class)));
+    }
+
+    @Test
+    void testMissingSnapshotAndStorageErrors(@TempDir final Path dir) throws Exception {
+        val config = config(dir.resolve("snapshot.txt"));
+        val storage = Mockito.mock(UrlStorage.class);
+        val cache = new MappingCache(cacheConfig());
+
+        // nothing to warm up, empty caches do not overwrite a snapshot
+        assertEquals(0, new CacheWarmer(cache, storage, TestHelperUtil.mappingExpiry(cache), config).warmUp());
+        new CacheWarmer(cache, storage, TestHelperUtil.mappingExpiry(cache), config).writeSnapshot();
+        assertFalse(Files.exists(dir.resolve("snapshot.txt")));
+        verify(storage, never()).findMappingsByShortUrls(anyCollection());
+
+        // storage errors do not prevent startup
+        Files.write(dir.resolve("snapshot.txt"), Set.of("a", "b"));
+        when(storage.findMappingsByShortUrls(anyCollection())).thenThrow(new RuntimeException("db down"));
+        assertEquals(0, new CacheWarmer(cache, storage, TestHelperUtil.mappingExpiry(cache), config).warmUp());
+        assertTrue(cache.hottestKeys(10).isEmpty());
+    }
+
+    private static CacheWarmupConfig config(final Path snapshotFile) {
+        val config = new CacheWarmupConfig();
+        config.setSnapshotFile(snapshotFile.toString());
+        config.setSnapshotSize(100);
+        config.setBatchSize(10);
+        config.setTimeout(Duration.ofSeconds(10));
+        return config;
+    }
+
+    private static MappingCacheConfig cacheConfig() {
+        val config = new MappingCacheConfig();
+        config.setMaxSize(100);
+        config.setExpireAfterAccess(Duration.ofMinutes(10));
+        config.setExpireAfterWrite(Duration.ZERO);
+        config.setNegativeTtl(Duration.ofSeconds(30));
+        config.setNegativeMaxSize(100);
+        return config;
+    }
+}
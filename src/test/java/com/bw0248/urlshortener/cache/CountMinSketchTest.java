@@ -0,0 +1,57 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CountMinSketchTest {
+
+    @Test
+    void testEstimatesOfSkewedCounts() {
+        val sketch = new CountMinSketch(1000, 4);
+        assertEquals(1024, sketch.getWidth());
+        assertEquals(4 * 1024 * Integer.BYTES, sketch.memoryBytes());
+
+        // a few hot strings among many rare ones
+        IntStream.range(0, 10_000).forEach(i -> {
+            sketch.increment("hot" + (i % 3));
+            sketch.increment("rare" + i);
+        });
+        for (int i = 0; i < 3; i++) {
+            val estimate = sketch.estimate("hot" + i);
+            assertTrue(estimate >= 3333 && estimate < 3333 + 100, "estimate " + estimate);
+        }
+        val overcounted = IntStream.range(0, 10_000)
+                .filter(i -> sketch.estimate("rare" + i) > 10)
+                .count();
+        assertTrue(overcounted < 100, overcounted + " rare strings overcounted");
+        assertTrue(sketch.estimate("unknown") <= 10);
+    }
+
+    @Test
+    void testAging() {
+        val sketch = new CountMinSketch(64, 2);
+        IntStream.range(0, 100).forEach(i -> sketch.increment("a"));
+        assertEquals(100, sketch.estimate("a"));
+        sketch.age();
+        assertEquals(50, sketch.estimate("a"));
+        assertEquals(51, sketch.increment("a"));
+        IntStream.range(0, 6).forEach(i -> sketch.age());
+        assertEquals(0, sketch.estimate("a"));
+    }
+
+    @Test
+    void testInvalidDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1024, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(-1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1 << 30, -4));
+        // width * depth overflows int
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1 << 30, 4));
+    }
+}
@@ -0,0 +1,104 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.config.HotKeyConfig;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotKeyTrackerTest {
+    private static final int TOP_K = 3;
+
+    private MappingCache cache;
+    private HotKeyTracker tracker;
+
+    @BeforeEach
+    void beforeEach() {
+        val cacheConfig = new MappingCacheConfig();
+        cacheConfig.setMaxSize(10);
+        cacheConfig.setExpireAfterAccess(Duration.ofMinutes(10));
+        cacheConfig.setExpireAfterWrite(Duration.ZERO);
+        cacheConfig.setNegativeTtl(Duration.ZERO);
+        cache = new MappingCache(cacheConfig);
+        val config = new HotKeyConfig();
+        config.setEnabled(true);
+        config.setTopK(TOP_K);
+        config.setSketchWidth(1024);
+        config.setSketchDepth(4);
+        config.setAgingIntervalMs(1000);
+        tracker = new HotKeyTracker(config, cache, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testHotShortUrlsArePinned() {
+        // hot0 is requested most, hot1 and hot2 less, cold short urls once
+        IntStream.range(0, 1000).forEach(i -> {
+            request("hot" + (i % 2 == 0 ? 0 : 1 + i % 4 / 2));
+            request("cold" + i);
+        });
+        tracker.age();
+
+        val hottest = tracker.hottest();
+        assertEquals(TOP_K, hottest.size());
+        assertEquals("hot0", hottest.get(0).getShortUrl());
+        assertEquals(Set.of("hot0", "hot1", "hot2"), hottest.stream()
+                .map(HotKeyTracker.HotKey::getShortUrl)
+                .collect(Collectors.toSet()));
+        // 500 requests within the first interval, estimated as 2 * rate * interval
+        assertEquals(250, hottest.get(0).getRequestsPerSecond(), 10);
+        assertEquals(Set.of("hot0", "hot1", "hot2"), cache.pinnedKeys());
+
+        // pinned mappings are answered from cache even if evicted by Caffeine
+        val pinnedHits = cache.pinnedHitCount();
+        cache.getNativeCache().invalidateAll();
+        IntStream.range(0, TOP_K).forEach(i ->
+                assertEquals("https://example.com/hot" + i, cache.get("hot" + i, String.class)));
+        assertEquals(pinnedHits + TOP_K, cache.pinnedHitCount());
+
+        // evicted mappings are unpinned
+        cache.evict("hot1");
+        assertEquals(Set.of("hot0", "hot2"), cache.pinnedKeys());
+    }
+
+    @Test
+    void testShortUrlsCoolingDownAreReplaced() {
+        IntStream.range(0, 100).forEach(i -> request("old" + (i % TOP_K)));
+        tracker.age();
+        assertEquals(Set.of("old0", "old1", "old2"), cache.pinnedKeys());
+
+        // traffic moves to other short urls, old counts are aged out
+        for (int interval = 0; interval < 10; interval++) {
+            IntStream.range(0, 100).forEach(i -> request("new" + (i % TOP_K)));
+            tracker.age();
+        }
+        assertEquals(Set.of("new0", "new1", "new2"), cache.pinnedKeys());
+        assertTrue(tracker.hottest().stream().allMatch(hotKey -> hotKey.getShortUrl().startsWith("new")));
+    }
+
+    @Test
+    void testShortUrlsEvictedBeforeAgingArePinnedOnNextRequest() {
+        IntStream.range(0, 100).forEach(i -> request("hot"));
+        assertEquals(Set.of("hot"), cache.pinnedKeys());
+
+        // top-k short url whose mapping was evicted before it could be pinned
+        cache.evict("hot");
+        tracker.age();
+        assertEquals(Set.of(), cache.pinnedKeys());
+        request("hot");
+        assertEquals(Set.of("hot"), cache.pinnedKeys());
+    }
+
+    private void request(final String shortUrl) {
+        cache.get(shortUrl, () -> "https://example.com/" + shortUrl);
+        tracker.record(shortUrl);
+    }
+}
@@ -0,0 +1,182 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappingCacheTest {
+
+    @Test
+    void testKnownMappingsAreLoadedOnce() {
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)));
+        val loads = new AtomicInteger();
+
+        IntStream.range(0, 20).forEach(i -> assertEquals(
+                "https://example.com",
+                cache.get("abc", () -> {
+                    loads.incrementAndGet();
+                    return "https://example.com";
+                })
+        ));
+
+        assertEquals(1, loads.get());
+        assertEquals(19, cache.getNativeCache().stats().hitCount());
+        assertEquals("https://example.com", cache.get("abc", String.class));
+    }
+
+    @Test
+    void testUnknownMappingsAreCachedNegatively() {
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)));
+        val loads = new AtomicInteger();
+
+        IntStream.range(0, 20).forEach(i -> assertNull(cache.get("unknown", () -> {
+            loads.incrementAndGet();
+            return null;
+        })));
+        assertEquals(1, loads.get());
+
+        // cached miss is reported as present with null value
+        val wrapper = cache.get("unknown");
+        assertNotNull(wrapper);
+        assertNull(wrapper.get());
+
+        // mapping created afterwards replaces negative entry
+        cache.put("unknown", "https://example.com");
+        assertEquals("https://example.com", cache.get("unknown", String.class));
+    }
+
+    @Test
+    void testLoadsAreRecorded() {
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)));
+        cache.get("abc", () -> "https://example.com");
+        cache.get("abc", () -> "https://example.com");
+        cache.get("unknown", () -> null);
+        assertThrows(Cache.ValueRetrievalException.class, () -> cache.get("broken", () -> {
+            throw new IllegalStateException("storage down");
+        }));
+
+        val stats = cache.getNativeCache().stats();
+        assertEquals(1, stats.loadSuccessCount());
+        assertEquals(2, stats.loadFailureCount());
+        assertTrue(stats.totalLoadTime() > 0);
+    }
+
+    @Test
+    void testConcurrentLoadsAreCoalesced() throws InterruptedException {
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)));
+        val loads = new AtomicInteger();
+        val loadStarted = new CountDownLatch(1);
+        val releaseLoad = new CountDownLatch(1);
+        val numThreads = 10;
+        val results = ConcurrentHashMap.<Object>newKeySet();
+        val executorService = Executors.newFixedThreadPool(numThreads);
+
+        IntStream.range(0, numThreads).forEach(i -> executorService.execute(() -> results.add(cache.get("abc", () -> {
+            loads.incrementAndGet();
+            loadStarted.countDown();
+            releaseLoad.await();
+            return "https://example.com";
+        }))));
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        // loader does not hold any lock of the cache - other keys can be loaded meanwhile
+        assertEquals("https://other.com", cache.get("other", () -> "https://other.com"));
+        releaseLoad.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, loads.get());
+        assertEquals(Set.of("https://example.com"), results);
+    }
+
+    @Test
+    void testLoadEvictedWhileInFlightIsNotStored() throws Exception {
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)));
+        val loadStarted = new CountDownLatch(1);
+        val releaseLoad = new CountDownLatch(1);
+        val executorService = Executors.newSingleThreadExecutor();
+
+        // lookup before the mapping is created, storage answers it as unknown
+        val lookup = executorService.submit(() -> cache.get("abc", () -> {
+            loadStarted.countDown();
+            releaseLoad.await();
+            return null;
+        }));
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        cache.evict("abc");
+        releaseLoad.countDown();
+        assertNull(lookup.get(5, TimeUnit.SECONDS));
+        executorService.shutdown();
+
+        // not remembered as unknown, the next lookup loads again
+        assertNull(cache.get("abc"));
+        assertEquals("https://example.com", cache.get("abc", () -> "https://example.com"));
+    }
+
+    @Test
+    void testNegativeCachingDisabled() {
+        val cache = new MappingCache(config(100, Duration.ZERO));
+        assertFalse(cache.getUnknownMappingsCache().isPresent());
+        assertNull(cache.get("unknown", () -> null));
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        val maxSize = 50;
+        val cache = new MappingCache(config(maxSize, Duration.ZERO));
+        IntStream.range(0, 1000).forEach(i -> cache.put("short" + i, "https://example.com/" + i));
+
+        cache.getNativeCache().cleanUp();
+        assertTrue(cache.getNativeCache().estimatedSize() <= maxSize);
+        assertTrue(cache.getNativeCache().stats().evictionCount() > 0);
+    }
+
+    @Test
+    void testLongUrlsAreCachedEncoded() {
+        val codecConfig = new UrlCodecConfig();
+        codecConfig.setEnabled(true);
+        val cache = new MappingCache(config(100, Duration.ofSeconds(30)), new UrlCodec(codecConfig, Optional.empty()));
+        val longUrl = "https://www.example.com/products?utm_source=newsletter&utm_medium=email";
+
+        assertEquals(longUrl, cache.get("abc", () -> longUrl));
+        assertEquals(longUrl, cache.get("abc", String.class));
+        assertEquals(longUrl, cache.get("abc").get());
+        cache.put("def", longUrl);
+        assertEquals(longUrl, cache.get("def", String.class));
+
+        val stored = (String) cache.getNativeCache().getIfPresent("abc");
+        assertTrue(stored.length() < longUrl.length());
+        assertNull(cache.get("unknown", () -> null));
+        assertNotNull(cache.get("unknown"));
+    }
+
+    private static MappingCacheConfig config(final long maxSize, final Duration negativeTtl) {
+        val config = new MappingCacheConfig();
+        config.setMaxSize(maxSize);
+        config.setExpireAfterAccess(Duration.ofMinutes(10));
+        config.setExpireAfterWrite(Duration.ZERO);
+        config.setNegativeTtl(negativeTtl);
+        config.setNegativeMaxSize(maxSize);
+        return config;
+    }
+}
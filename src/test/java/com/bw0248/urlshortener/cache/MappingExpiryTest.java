@@ -0,0 +1,50 @@
+package com.bw0248.urlshortener.cache;
+
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.util.TestHelperUtil;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappingExpiryTest {
+
+    @Test
+    void testCachedMappingsAreEvictedAtTheirDeadline() throws InterruptedException {
+        val cache = new MappingCache(TestHelperUtil.mappingCacheConfig());
+        val expiry = TestHelperUtil.mappingExpiry(cache);   // 10ms ticks
+
+        val permanent = new UrlMapping("https://example.com/a", "a");
+        val expiring = new UrlMapping("https://example.com/b", "b", Instant.now().plusMillis(100));
+        assertTrue(expiry.track(permanent));
+        assertTrue(expiry.track(expiring));
+        cache.put("a", permanent.getLongUrl());
+        cache.put("b", expiring.getLongUrl());
+
+        expiry.advance();
+        assertEquals(expiring.getLongUrl(), cache.get("b", String.class));
+        assertFalse(expiry.isExpired("b"));
+
+        Thread.sleep(150);
+        expiry.advance();
+        assertNull(cache.get("b"));
+        assertTrue(expiry.isExpired("b"));
+        assertEquals(permanent.getLongUrl(), cache.get("a", String.class));
+        assertFalse(expiry.isExpired("a"));
+    }
+
+    @Test
+    void testExpiredMappingsAreNotTracked() {
+        val cache = new MappingCache(TestHelperUtil.mappingCacheConfig());
+        val expiry = TestHelperUtil.mappingExpiry(cache);
+
+        assertFalse(expiry.track(new UrlMapping("https://example.com", "c", Instant.now().minusSeconds(1))));
+        assertTrue(expiry.isExpired("c"));
+        assertFalse(expiry.isExpired("unknown"));
+    }
+}
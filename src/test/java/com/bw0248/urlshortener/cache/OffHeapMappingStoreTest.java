@@ -0,0 +1,74 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapMappingStoreTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Test
+    void testPutAndGet() {
+        val store = new OffHeapMappingStore(16 * SEGMENT_SIZE, SEGMENT_SIZE);
+        IntStream.range(0, 500).forEach(id -> store.put(id, longUrl(id)));
+
+        IntStream.range(0, 500).forEach(id -> assertEquals(longUrl(id), store.get(id)));
+        assertNull(store.get(500));
+        assertEquals(500, store.size());
+
+        store.put(42, "https://example.com/ü");
+        assertEquals("https://example.com/ü", store.get(42));
+        assertEquals(500, store.size());
+
+        store.clear();
+        assertNull(store.get(1));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testOldestSegmentIsEvicted() {
+        val store = new OffHeapMappingStore(4 * SEGMENT_SIZE, SEGMENT_SIZE);
+        val count = 10_000;
+        IntStream.range(0, count).forEach(id -> store.put(id, longUrl(id)));
+
+        // most recent entries are kept, all entries still present are intact
+        assertEquals(longUrl(count - 1), store.get(count - 1));
+        assertNull(store.get(0));
+        assertTrue(store.size() < count);
+        assertEquals(store.size(), IntStream.range(0, count).filter(id -> store.get(id) != null).count());
+        IntStream.range(0, count)
+                .filter(id -> store.get(id) != null)
+                .forEach(id -> assertEquals(longUrl(id), store.get(id)));
+        assertEquals(4 * SEGMENT_SIZE, store.memoryBytes());
+    }
+
+    @Test
+    void testConcurrentReadsDuringWrites() throws Exception {
+        val store = new OffHeapMappingStore(8 * SEGMENT_SIZE, SEGMENT_SIZE);
+        val executor = Executors.newFixedThreadPool(4);
+        val futures = new ArrayList<Future<?>>();
+        futures.add(executor.submit(() -> IntStream.range(0, 100_000).forEach(id -> store.put(id, longUrl(id)))));
+        IntStream.range(0, 3).forEach(i -> futures.add(executor.submit(() -> IntStream.range(0, 100_000).forEach(id -> {
+            val longUrl = store.get(id);
+            assertTrue(longUrl == null || longUrl.equals(longUrl(id)));
+        }))));
+
+        for (val future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private static String longUrl(final long id) {
+        return "https://example.com/" + id;
+    }
+}
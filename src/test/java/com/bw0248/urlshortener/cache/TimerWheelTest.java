@@ -0,0 +1,80 @@
+package com.bw0248.urlshortener.cache;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimerWheelTest {
+
+    @Test
+    void testKeysExpireAtTheirDeadline() {
+        val start = 1_000_003L;
+        val wheel = new TimerWheel(start);
+        val deadlines = new HashMap<String, Long>();
+        val random = new Random(42);
+        // deadlines on every level of the wheel
+        for (long delta : new long[] {1, 2, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144, 300_000}) {
+            deadlines.put("d" + delta, start + delta);
+        }
+        for (int i = 0; i < 1000; i++) {
+            deadlines.put("r" + i, start + 1 + random.nextInt(400_000));
+        }
+        deadlines.forEach(wheel::schedule);
+        assertEquals(deadlines.size(), wheel.size());
+
+        val fired = new HashMap<String, Long>();
+        for (long tick = start + 1; tick <= start + 400_000; tick++) {
+            val now = tick;
+            wheel.advance(tick, key -> fired.put(key, now));
+        }
+        assertEquals(deadlines, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testDeadlinesBeyondTheSpanAreParked() {
+        val wheel = new TimerWheel(0);
+        val farAway = (1L << 24) * 3 + 17;
+        wheel.schedule("far", farAway);
+
+        val fired = new ArrayList<Long>();
+        wheel.advance(farAway - 1, key -> fired.add(-1L));
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.size());
+        wheel.advance(farAway, key -> fired.add(farAway));
+        assertEquals(List.of(farAway), fired);
+    }
+
+    @Test
+    void testCancelAndReschedule() {
+        val wheel = new TimerWheel(0);
+        wheel.schedule("a", 10);
+        wheel.schedule("b", 100);
+        wheel.schedule("c", 5000);
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+        wheel.schedule("c", 20);
+        // deadlines in the past expire with the next tick
+        wheel.schedule("late", -5);
+
+        val fired = new HashMap<String, Long>();
+        advance(wheel, 10_000, fired);
+        assertEquals(Map.of("late", 1L, "a", 10L, "c", 20L), fired);
+    }
+
+    private static void advance(final TimerWheel wheel, final long until, final Map<String, Long> fired) {
+        while (wheel.getCurrentTick() < until) {
+            val tick = wheel.getCurrentTick() + 1;
+            wheel.advance(tick, key -> fired.put(key, tick));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.bw0248.urlshortener.codec;
+
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UrlCodecTest {
+
+    // stands in for the shared mongo collection
+    private static class InMemoryStore implements UrlDictionaryStore {
+        private final Map<Integer, UrlDictionary> dictionaries = new ConcurrentHashMap<>();
+
+        @Override
+        public List<UrlDictionary> findAll() {
+            return new ArrayList<>(dictionaries.values());
+        }
+
+        @Override
+        public Optional<UrlDictionary> find(final int version) {
+            return Optional.ofNullable(dictionaries.get(version));
+        }
+
+        @Override
+        public boolean insert(final UrlDictionary dictionary) {
+            return dictionaries.putIfAbsent(dictionary.getVersion(), dictionary) == null;
+        }
+    }
+
+    @Test
+    void testUrlsAreEncodedReversibly() {
+        val codec = codec(true, Optional.empty());
+        val urls = List.of(
+                "https://www.example.com/products?utm_source=newsletter&utm_medium=email&utm_campaign=spring",
+                "https://youtube.com/watch?v=dQw4w9WgXcQ",
+                "http://a.io",
+                "https://example.com/ümlaut",                 // not printable ASCII, stored as is
+                "\u0001https://example.com",                  // starts with the marker, escaped
+                "");
+        urls.forEach(url -> assertEquals(url, codec.decode(codec.encode(url))));
+
+        assertTrue(codec.encode(urls.get(0)).length() < urls.get(0).length() * 0.7);
+        assertEquals(urls.get(3), codec.encode(urls.get(3)));
+        assertEquals("ftp://x.y", codec.encode("ftp://x.y"));     // no tokens, not worth the header
+        assertTrue(codec.compressionRatio() < 1);
+
+        // plain urls, e.g. stored before the codec was enabled, are returned as is
+        assertEquals(urls.get(0), codec.decode(urls.get(0)));
+        // disabled codecs still decode
+        val encoded = codec.encode(urls.get(0));
+        assertEquals(urls.get(0), UrlCodec.disabled().decode(encoded));
+        assertEquals(urls.get(0), UrlCodec.disabled().encode(urls.get(0)));
+    }
+
+    @Test
+    void testTrainedDictionariesAreVersionedAndShared() {
+        val sample = IntStream.range(0, 1000)
+                .mapToObj(i -> "https://shop.acme-widgets.example/catalog/item-" + i
+                        + "?tracking_source=mailing&tracking_campaign=autumn-sale&session=" + i)
+                .collect(Collectors.toList());
+        val trained = UrlDictionary.train(2, sample, 100);
+        assertTrue(trained.getTokens().contains("https://shop.acme-widgets.example"));
+        assertTrue(trained.getTokens().contains("&tracking_campaign="));
+        assertTrue(trained.encodedLength(sample) < UrlDictionary.DEFAULT.encodedLength(sample) * 0.6);
+
+        val store = new InMemoryStore();
+        val codec = codec(true, Optional.of(store));
+        val encodedWithDefault = codec.encode(sample.get(0));
+        assertTrue(codec.adopt(trained));
+        val encodedWithTrained = codec.encode(sample.get(0));
+        assertTrue(encodedWithTrained.length() < encodedWithDefault.length());
+        assertEquals(sample.get(0), codec.decode(encodedWithDefault));
+        assertEquals(sample.get(0), codec.decode(encodedWithTrained));
+        assertThrows(IllegalArgumentException.class, () -> codec.adopt(trained));
+
+        // other instances load the dictionary on first use and encode with it after refresh
+        val other = codec(true, Optional.of(new InMemoryStore() {
+            @Override
+            public List<UrlDictionary> findAll() {
+                return List.of();
+            }
+
+            @Override
+            public Optional<UrlDictionary> find(final int version) {
+                return store.find(version);
+            }
+        }));
+        assertEquals(1, other.current().getVersion());
+        assertEquals(sample.get(0), other.decode(encodedWithTrained));
+        assertEquals(2, codec(true, Optional.of(store)).current().getVersion());
+
+        // concurrently trained versions are rejected, the stored one is used
+        val concurrent = codec(true, Optional.of(store));
+        store.dictionaries.put(3, UrlDictionary.train(3, sample, 10));
+        assertFalse(concurrent.adopt(UrlDictionary.train(3, sample, 20)));
+        assertEquals(10, concurrent.current().getTokens().size());
+
+        // unknown versions can not be decoded
+        assertThrows(IllegalStateException.class, () -> codec(true, Optional.empty()).decode(encodedWithTrained));
+    }
+
+    @Test
+    void testInvalidDictionaries() {
+        assertThrows(IllegalArgumentException.class, () -> new UrlDictionary(2, List.of("ab")));
+        assertThrows(IllegalArgumentException.class, () -> new UrlDictionary(2, List.of("\u0002abc")));
+        assertThrows(IllegalArgumentException.class, () -> new UrlDictionary(2, IntStream.range(0, UrlDictionary.MAX_TOKENS + 1)
+                .mapToObj(i -> "token" + i)
+                .collect(Collectors.toList())));
+        assertThrows(IllegalArgumentException.class, () -> UrlDictionary.DEFAULT.decode("\u0002", 0));
+        assertNull(UrlDictionary.DEFAULT.encode("https://example.com/\n"));
+        assertNotEquals(0, UrlDictionary.DEFAULT.getTokens().size());
+    }
+
+    private static UrlCodec codec(final boolean enabled, final Optional<UrlDictionaryStore> store) {
+        val config = new UrlCodecConfig();
+        config.setEnabled(enabled);
+        return new UrlCodec(config, store);
+    }
+}
@@ -0,0 +1,77 @@
+package com.bw0248.urlshortener.codec;
+
+import com.bw0248.urlshortener.config.UrlCodecConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UrlDictionaryTrainerTest {
+    private static final int SAMPLE_SIZE = 500;
+
+    private UrlStorage mockStorage;
+    private SimpleMeterRegistry meterRegistry;
+    private UrlCodecConfig config;
+    private UrlCodec codec;
+
+    @BeforeEach
+    void beforeEach() {
+        mockStorage = Mockito.mock(UrlStorage.class);
+        meterRegistry = new SimpleMeterRegistry();
+        config = new UrlCodecConfig();
+        config.setEnabled(true);
+        config.setSampleSize(SAMPLE_SIZE);
+        config.setMaxTokens(100);
+        config.setMinImprovement(0.05);
+        codec = new UrlCodec(config, Optional.empty());
+        // urls sharing parts the default dictionary does not know
+        when(mockStorage.sampleMappings(anyInt())).thenReturn(IntStream.range(0, SAMPLE_SIZE)
+                .mapToObj(i -> new UrlMapping("https://catalogue.widgetfactory.example/special-offers/widget-" + i, "s" + i))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testDictionaryIsTrainedOnASampleOfStoredMappings() {
+        val trainer = new UrlDictionaryTrainer(config, mockStorage, codec, meterRegistry);
+        val trained = trainer.retrain();
+
+        assertTrue(trained.isPresent());
+        assertEquals(trained.get(), codec.current());
+        verify(mockStorage).sampleMappings(SAMPLE_SIZE);
+        // not the first mappings in storage order, those are the oldest ones
+        verify(mockStorage, never()).streamAllMappings();
+        assertEquals(1, trainings("adopted"));
+
+        // a dictionary trained on the same sample does not encode it any shorter
+        assertTrue(trainer.retrain().isEmpty());
+        assertEquals(trained.get(), codec.current());
+        assertEquals(1, trainings("rejected"));
+    }
+
+    @Test
+    void testNothingIsTrainedWhenDisabled() {
+        config.setEnabled(false);
+        val trainer = new UrlDictionaryTrainer(config, mockStorage, codec, meterRegistry);
+        assertTrue(trainer.retrain().isEmpty());
+        verify(mockStorage, never()).sampleMappings(anyInt());
+        assertEquals(UrlDictionary.DEFAULT, codec.current());
+    }
+
+    private double trainings(final String outcome) {
+        return meterRegistry.get("shortener.url-codec.trainings").tag("outcome", outcome).counter().count();
+    }
+}
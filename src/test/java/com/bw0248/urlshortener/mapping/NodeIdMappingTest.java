@@ -0,0 +1,109 @@
+package com.bw0248.urlshortener.mapping;
+
+import com.bw0248.urlshortener.config.NodeIdMappingConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeIdMappingTest {
+    private static final String URL = "https://example.com";    // not important for this test
+
+    @Test
+    void testPermutationIsBijective() {
+        val permutation = new FeistelPermutation(16, "secret");
+        val permuted = new HashSet<Long>();
+        LongStream.range(0, 1 << 16).forEach(value -> {
+            val result = permutation.permute(value);
+            assertTrue(result >= 0 && result < 1 << 16);
+            assertEquals(value, permutation.invert(result));
+            permuted.add(result);
+        });
+        assertEquals(1 << 16, permuted.size());
+
+        // neighbouring ids are spread, other keys give other permutations
+        assertNotEquals(permutation.permute(1) + 1, permutation.permute(2));
+        assertNotEquals(permutation.permute(1), new FeistelPermutation(16, "other").permute(1));
+        assertThrows(IllegalArgumentException.class, () -> new FeistelPermutation(15, "secret"));
+    }
+
+    @Test
+    void testNodesGenerateDisjointShortUrls(@TempDir final Path dir) throws IOException {
+        val shortUrls = new HashSet<String>();
+        for (long node = 1; node <= 4; node++) {
+            val strategy = strategy(dir, node, "", 10_000);
+            assertFalse(strategy.usesSequence());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(shortUrls.add(strategy.map(URL, UrlMappingStrategy.NO_SEQUENCE)));
+            }
+        }
+        // node id in the upper bits, counter in the lower ones
+        assertEquals(3L << 10, strategy(dir.resolve("other"), 3, "", 10_000).nextId());
+    }
+
+    @Test
+    void testCounterContinuesAfterRestart(@TempDir final Path dir) throws IOException {
+        val permutation = new FeistelPermutation(20, "secret");
+        val ids = new HashSet<Long>();
+        for (int restart = 0; restart < 3; restart++) {
+            val strategy = strategy(dir, 1, "secret", 100);
+            for (int i = 0; i < 50; i++) {
+                val id = strategy.nextId();
+                assertTrue(id >= 0 && id < 1 << 20);
+                assertTrue(ids.add(id));
+                // permuted ids decode to node 1, the rest of a reserved block is lost on restart
+                assertEquals((1L << 10) | (restart * 100 + i), permutation.invert(id));
+            }
+        }
+    }
+
+    @Test
+    void testInvalidConfig(@TempDir final Path dir) {
+        assertThrows(IllegalArgumentException.class, () -> strategy(dir, 1024, "", 100));
+        assertThrows(IllegalArgumentException.class, () -> strategy(dir, -1, "", 100));
+        // reserved for the shared sequence
+        assertThrows(IllegalArgumentException.class, () -> strategy(dir, 0, "", 100));
+    }
+
+    @Test
+    void testShortUrlsDoNotCollideWithSharedSequence(@TempDir final Path dir) throws IOException {
+        val sequenceMapping = new SequenceMappingStrategy(SequenceMappingConfig.base36());
+        val sequenceShortUrls = new HashSet<String>();
+        LongStream.range(0, 1 << 10).forEach(id -> sequenceShortUrls.add(sequenceMapping.encode(id)));
+        val strategy = strategy(dir, 1, "", 10_000);
+        for (int i = 0; i < 1 << 10; i++) {
+            assertFalse(sequenceShortUrls.contains(strategy.map(URL, UrlMappingStrategy.NO_SEQUENCE)));
+        }
+        // permuted ids might still hit one
+        assertTrue(strategy.retryCollision("abc", 1));
+        assertFalse(strategy.retryCollision("abc", 4));
+    }
+
+    private static NodeIdMappingStrategy strategy(
+            final Path dir,
+            final long nodeId,
+            final String key,
+            final int blockSize) throws IOException {
+        val config = new NodeIdMappingConfig();
+        config.setNodeId(nodeId);
+        config.setNodeBits(10);
+        config.setIdBits(20);
+        config.setPermutationKey(key);
+        config.setDirectory(dir.toString());
+        config.setBlockSize(blockSize);
+        return new NodeIdMappingStrategy(
+                config, new SequenceMappingStrategy(SequenceMappingConfig.base36()), new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,138 @@
+package com.bw0248.urlshortener.mapping;
+
+import com.bw0248.urlshortener.config.RandomMappingConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RandomMappingTest {
+    private static final String URL = "https://example.com";    // not important for this test
+    private static final String TAKEN_CHARS = "abcdefghi";
+
+    private final UrlStorage storage = Mockito.mock(UrlStorage.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SequenceMappingStrategy sequenceMapping = new SequenceMappingStrategy(SequenceMappingConfig.base36());
+    private RandomMappingStrategy strategy;
+
+    @AfterEach
+    void afterEach() {
+        strategy.close();
+    }
+
+    @Test
+    void testTakenCandidatesAreNotHandedOut() {
+        // every candidate with 'a' to 'i' as second char is taken
+        when(storage.findMappingsByShortUrls(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .filter(shortUrl -> TAKEN_CHARS.indexOf(shortUrl.charAt(1)) >= 0)
+                        .map(shortUrl -> new UrlMapping(URL, shortUrl))
+                        .collect(Collectors.toList()));
+        strategy = strategy(1000);
+        strategy.refill();
+        verify(storage, atLeastOnce()).findMappingsByShortUrls(anyCollection());
+
+        val shortUrls = new HashSet<String>();
+        for (int i = 0; i < 500; i++) {
+            val shortUrl = strategy.map(URL, UrlMappingStrategy.NO_SEQUENCE);
+            assertEquals(8, shortUrl.length());
+            assertTrue(sequenceMapping.tryDecode(shortUrl).isPresent());
+            assertEquals(-1, TAKEN_CHARS.indexOf(shortUrl.charAt(1)));
+            shortUrls.add(shortUrl);
+        }
+        assertTrue(shortUrls.size() > 490);
+        assertFalse(strategy.usesSequence());
+        // 1 in 4 candidates is taken - high enough that a batch of 100 without any taken candidate is unlikely
+        assertTrue(strategy.getCollisionProbability() > 0.1 && strategy.getCollisionProbability() < 0.45);
+        assertEquals(0, meterRegistry.get("shortener.random-mapping.pool-misses").counter().count());
+    }
+
+    @Test
+    void testRefillRoundsAreLimited() {
+        // 2 in 5 candidates are taken
+        when(storage.findMappingsByShortUrls(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .filter(shortUrl -> "0123456789abcd".indexOf(shortUrl.charAt(1)) >= 0)
+                        .map(shortUrl -> new UrlMapping(URL, shortUrl))
+                        .collect(Collectors.toList()));
+        val config = config(2000);
+        config.setMaxRefillRounds(5);
+        strategy = new RandomMappingStrategy(config, SequenceMappingConfig.base36(), sequenceMapping, storage, meterRegistry);
+        strategy.refill();
+        // at most 5 batches of 100 for this refill and the one triggered on startup, the pool is far from full
+        assertTrue(meterRegistry.get("shortener.random-mapping.pool").gauge().value() <= 2 * 5 * 100);
+        assertEquals(0, meterRegistry.get("shortener.random-mapping.refill-backoffs").counter().count());
+    }
+
+    @Test
+    void testRefillsBackOffWhenMostCandidatesAreTaken() {
+        when(storage.findMappingsByShortUrls(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .map(shortUrl -> new UrlMapping(URL, shortUrl))
+                        .collect(Collectors.toList()));
+        strategy = strategy(1000);
+        strategy.refill();
+        // a single batch each for this refill and the one triggered on startup
+        assertTrue(meterRegistry.get("shortener.random-mapping.candidates").tag("outcome", "taken").counter().count() <= 2 * 100);
+        assertTrue(meterRegistry.get("shortener.random-mapping.refill-backoffs").counter().count() >= 1);
+        assertEquals(1, strategy.getCollisionProbability());
+    }
+
+    @Test
+    void testEmptyPoolAndCollisionRetries() {
+        when(storage.findMappingsByShortUrls(anyCollection())).thenThrow(new RuntimeException("db down"));
+        strategy = strategy(1000);
+
+        // candidates are generated inline if the pool can not be refilled
+        assertEquals(8, strategy.map(URL, UrlMappingStrategy.NO_SEQUENCE).length());
+        assertEquals(1, meterRegistry.get("shortener.random-mapping.pool-misses").counter().count());
+
+        assertTrue(strategy.retryCollision("abc", 1));
+        assertTrue(strategy.retryCollision("abc", 3));
+        assertFalse(strategy.retryCollision("abc", 4));
+        assertEquals(3, meterRegistry.get("shortener.random-mapping.collisions").counter().count());
+        assertEquals(1, meterRegistry.get("shortener.random-mapping.collision-retries-exhausted").counter().count());
+    }
+
+    @Test
+    void testInvalidConfig() {
+        strategy = strategy(1000);
+        val config = config(1000);
+        config.setLength(13);   // 36^13 > Long.MAX_VALUE
+        assertThrows(IllegalArgumentException.class, () -> new RandomMappingStrategy(
+                config, SequenceMappingConfig.base36(), sequenceMapping, storage, meterRegistry));
+    }
+
+    private RandomMappingStrategy strategy(final int poolSize) {
+        return new RandomMappingStrategy(
+                config(poolSize), SequenceMappingConfig.base36(), sequenceMapping, storage, meterRegistry);
+    }
+
+    private static RandomMappingConfig config(final int poolSize) {
+        val config = new RandomMappingConfig();
+        config.setLength(8);
+        config.setPoolSize(poolSize);
+        config.setRefillBatchSize(100);
+        config.setMaxRefillRounds(20);
+        config.setMinFreeRatio(0.5);
+        config.setRefillBackoffMs(60_000);
+        config.setMaxCollisionRetries(3);
+        return config;
+    }
+}
@@ -9,11 +9,13 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
 @ExtendWith(SpringExtension.class)
@@ -50,6 +52,60 @@ public class SequenceMappingTest {
         mapExhaustive(SequenceMappingConfig.base8(), 8);
     }
 
+    @Test
+    void testDecodeReversesMapping() {
+        val alphabets = List.of(
+                SequenceMappingConfig.withAlphabet("ab"),
+                SequenceMappingConfig.base4(),
+                SequenceMappingConfig.base8(),
+                SequenceMappingConfig.base36(),
+                SequenceMappingConfig.withAlphabet("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_")
+        );
+        val random = new Random(42);
+        for (val config : alphabets) {
+            val strategy = new SequenceMappingStrategy(config);
+            LongStream.concat(
+                    LongStream.of(0, 1, config.getBase() - 1, config.getBase(), Long.MAX_VALUE),
+                    random.longs(10_000, 0, Long.MAX_VALUE)
+            ).forEach(id -> {
+                val mapped = strategy.map(url, id);
+                assertEquals(referenceMapping(config, id), mapped);
+                assertEquals(id, strategy.decode(mapped));
+            });
+        }
+    }
+
+    @Test
+    void testDecodeRejectsInvalidMappings() {
+        val strategy = new SequenceMappingStrategy(SequenceMappingConfig.base36());
+        val invalidMappings = List.of(
+                "",
+                "ABC",                      // not in alphabet
+                "ab-c",
+                "abc",                      // leading zero digit -> not produced by mapping
+                "zzzzzzzzzzzzzzzzzzzzzz"    // overflows long
+        );
+        invalidMappings.forEach(invalid -> {
+            assertThat(strategy.tryDecode(invalid)).isEmpty();
+            assertThrows(IllegalArgumentException.class, () -> strategy.decode(invalid));
+        });
+        assertThrows(IllegalArgumentException.class, () -> strategy.map(url, -1));
+    }
+
+    // straight forward base n conversion the optimized mapping is checked against
+    private static String referenceMapping(final SequenceMappingConfig config, final long id) {
+        if (id == 0) {
+            return String.valueOf(config.getAlphabet().charAt(0));
+        }
+        val builder = new StringBuilder();
+        var number = id;
+        while (number > 0) {
+            builder.append(config.getAlphabet().charAt((int) (number % config.getBase())));
+            number = number / config.getBase();
+        }
+        return builder.reverse().toString();
+    }
+
     private MappingSet<String> mapExhaustive(final SequenceMappingConfig config, int maxCharsPerMapping) {
         val strategy = new SequenceMappingStrategy(config);
         long maxPossibleMappings = (long) Math.pow(config.getBase(), maxCharsPerMapping);
@@ -0,0 +1,110 @@
+package com.bw0248.urlshortener.service;
+
+import com.bw0248.urlshortener.ReactiveShortenerService;
+import com.bw0248.urlshortener.cache.MappingCache;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.config.ServiceConfig;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.ReactiveUrlStorage;
+import com.bw0248.urlshortener.util.TestHelperUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReactiveServiceTest {
+    private static final int MAX_RETRIES = 5;
+
+    private ReactiveUrlStorage mockStorage;
+    private ReactiveShortenerService service;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        mockStorage = Mockito.mock(ReactiveUrlStorage.class);
+        meterRegistry = new SimpleMeterRegistry();
+        val serviceConfig = new ServiceConfig();
+        serviceConfig.setMaxRetries(MAX_RETRIES);
+        val cacheConfig = new MappingCacheConfig();
+        cacheConfig.setMaxSize(100);
+        cacheConfig.setExpireAfterAccess(Duration.ofMinutes(10));
+        cacheConfig.setExpireAfterWrite(Duration.ZERO);
+        cacheConfig.setNegativeTtl(Duration.ofSeconds(30));
+        cacheConfig.setNegativeMaxSize(100);
+        val mappingCache = new MappingCache(cacheConfig);
+        service = new ReactiveShortenerService(
+                mockStorage,
+                new SequenceMappingStrategy(SequenceMappingConfig.base4()),
+                serviceConfig,
+                mappingCache,
+                TestHelperUtil.mappingExpiry(mappingCache),
+                new ShortenerMetrics(meterRegistry));
+    }
+
+    @Test
+    void testStorageErrorRetry() {
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(mockStorage.nextUniqueId()).thenReturn(Mono.just(4L));
+
+        // fail on first two tries, succeed on third try - retries are scheduled without blocking
+        when(mockStorage.insertMapping(any()))
+                .thenReturn(Mono.error(new StorageException("db down", null)))
+                .thenReturn(Mono.error(new StorageException("db down", null)))
+                .thenReturn(Mono.just(exampleMapping));
+        StepVerifier.withVirtualTime(() -> service.shorten(exampleMapping.getLongUrl()))
+                .thenAwait(Duration.ofMinutes(1))
+                .expectNext(exampleMapping)
+                .verifyComplete();
+        // sequence id is reserved once and the same mapping is retried
+        verify(mockStorage, times(1)).nextUniqueId();
+        verify(mockStorage, times(3)).insertMapping(argThat(mapping -> mapping.getShortUrl().equals("ba")));
+        assertEquals(2, retries("false"));
+        assertEquals(1, meterRegistry.get("shortener.sequence.allocation").timer().count());
+
+        // max out on tries - nothing stored, empty result
+        Mockito.reset(mockStorage);
+        when(mockStorage.nextUniqueId()).thenReturn(Mono.just(4L));
+        when(mockStorage.insertMapping(any())).thenReturn(Mono.error(new StorageException("db down", null)));
+        StepVerifier.withVirtualTime(() -> service.shorten(exampleMapping.getLongUrl()))
+                .thenAwait(Duration.ofMinutes(1))
+                .verifyComplete();
+        verify(mockStorage, times(MAX_RETRIES + 1)).insertMapping(any());
+        assertEquals(2 + MAX_RETRIES, retries("false"));
+        assertEquals(1, retries("true"));
+    }
+
+    @Test
+    void testResolvedMappingsAreCached() {
+        when(mockStorage.findMappingByShortUrl("abc")).thenReturn(Mono.just(TestHelperUtil.exampleMapping()));
+        when(mockStorage.findMappingByShortUrl("unknown")).thenReturn(Mono.empty());
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(service.getMappedLongUrl("abc"))
+                    .expectNext(TestHelperUtil.exampleMapping().getLongUrl())
+                    .verifyComplete();
+            StepVerifier.create(service.getMappedLongUrl("unknown"))
+                    .verifyComplete();
+        }
+        verify(mockStorage, times(1)).findMappingByShortUrl("abc");
+        verify(mockStorage, times(1)).findMappingByShortUrl("unknown");
+    }
+
+    private double retries(final String exhausted) {
+        return meterRegistry.get("shortener.storage.retries").tag("exhausted", exhausted).counter().count();
+    }
+}
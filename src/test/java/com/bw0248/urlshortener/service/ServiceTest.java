@@ -1,12 +1,20 @@
 package com.bw0248.urlshortener.service;
 
 import com.bw0248.urlshortener.ShortenerService;
+import com.bw0248.urlshortener.cache.MappingCache;
 import com.bw0248.urlshortener.config.SequenceMappingConfig;
 import com.bw0248.urlshortener.config.ServiceConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
 import com.bw0248.urlshortener.exception.StorageException;
 import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.storage.ResilientUrlStorage;
 import com.bw0248.urlshortener.storage.mongo.MongoUrlStorage;
 import com.bw0248.urlshortener.util.TestHelperUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.val;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,17 +24,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
@@ -38,10 +49,12 @@ public class ServiceTest {
     @Autowired private MongoUrlStorage mockStorage;
     @Autowired ShortenerService service;
     @Autowired CacheManager cacheManager;
+    @Autowired MappingCache mappingCache;
 
     @BeforeEach
     void beforeEach() {
         Mockito.reset(mockStorage);
+        mappingCache.clear();
     }
 
     @Test
@@ -70,6 +83,115 @@ public class ServiceTest {
         assertEquals(exampleMapping.getShortUrl(), successfulShorten.get().getShortUrl());
     }
 
+    @Test
+    void testCollisionRetryPolicy() {
+        // strategy hands out a, b, c, ... without sequence ids and retries two collisions
+        val next = new AtomicInteger();
+        val strategy = new UrlMappingStrategy() {
+            @Override
+            public String map(final String url, final long sequence) {
+                return String.valueOf((char) ('a' + next.getAndIncrement()));
+            }
+
+            @Override
+            public boolean usesSequence() {
+                return false;
+            }
+
+            @Override
+            public boolean retryCollision(final String shortUrl, final int attempt) {
+                return attempt <= 2;
+            }
+        };
+        val randomService = new ShortenerService(
+                mockStorage,
+                strategy,
+                new ServiceConfig(),
+                new ShortenerMetrics(new SimpleMeterRegistry()),
+                TestHelperUtil.mappingExpiry(mappingCache),
+                mappingCache
+        );
+        when(mockStorage.insertMapping(any()))
+                .thenThrow(new DuplicateShortUrlException("duplicate", null))
+                .thenThrow(new DuplicateShortUrlException("duplicate", null))
+                .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+        assertEquals("c", randomService.shorten("https://example.com").get().getShortUrl());
+        verify(mockStorage, Mockito.never()).nextUniqueId();
+
+        // retries exhausted
+        Mockito.reset(mockStorage);
+        when(mockStorage.insertMapping(any())).thenThrow(new DuplicateShortUrlException("duplicate", null));
+        assertThrows(DuplicateShortUrlException.class, () -> randomService.shorten("https://example.com"));
+        verify(mockStorage, Mockito.times(3)).insertMapping(any());
+
+        // strategies without retry policy fail right away
+        Mockito.reset(mockStorage);
+        when(mockStorage.insertMapping(any())).thenThrow(new DuplicateShortUrlException("duplicate", null));
+        assertThrows(DuplicateShortUrlException.class, () -> service.shorten("https://example.com"));
+        verify(mockStorage, Mockito.times(1)).insertMapping(any());
+    }
+
+    @Test
+    void testShortenAll() {
+        val urls = List.of("https://example.com/1", "https://example.com/2", "https://example.com/3");
+        when(mockStorage.reserveUniqueIds(urls.size())).thenReturn(4L);
+        // second mapping fails to be inserted
+        when(mockStorage.insertMappings(any())).thenAnswer(invocation -> {
+            List<UrlMapping> mappings = invocation.getArgument(0);
+            return List.of(Optional.of(mappings.get(0)), Optional.empty(), Optional.of(mappings.get(2)));
+        });
+
+        val shortened = service.shortenAll(urls);
+
+        // ids reserved with a single round trip, mapped in order of supplied urls
+        verify(mockStorage, Mockito.times(1)).reserveUniqueIds(urls.size());
+        verify(mockStorage, Mockito.never()).nextUniqueId();
+        assertEquals(3, shortened.size());
+        assertEquals("ba", shortened.get(0).get().getShortUrl());    // 4 -> 10 in base 4
+        assertFalse(shortened.get(1).isPresent());
+        assertEquals("bc", shortened.get(2).get().getShortUrl());    // 6 -> 12 in base 4
+        assertEquals(urls.get(2), shortened.get(2).get().getLongUrl());
+
+        // whole batch failed
+        Mockito.doThrow(StorageException.class).when(mockStorage).insertMappings(any());
+        assertTrue(service.shortenAll(urls).stream().noneMatch(Optional::isPresent));
+    }
+
+    @Test
+    void testDeduplication() {
+        val serviceConfig = new ServiceConfig();
+        serviceConfig.setDeduplicate(true);
+        serviceConfig.setDedupCacheSize(10);
+        val dedupService = new ShortenerService(
+                mockStorage,
+                new SequenceMappingStrategy(SequenceMappingConfig.base4()),
+                serviceConfig,
+                new ShortenerMetrics(new SimpleMeterRegistry()),
+                TestHelperUtil.mappingExpiry(mappingCache),
+                mappingCache
+        );
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(mockStorage.findMappingByLongUrl(exampleMapping.getLongUrl())).thenReturn(Optional.of(exampleMapping));
+
+        // existing mapping is looked up in storage only once, no new mappings are created
+        IntStream.range(0, 5).forEach(i -> assertEquals(
+                exampleMapping.getShortUrl(),
+                dedupService.shorten(exampleMapping.getLongUrl()).get().getShortUrl()
+        ));
+        verify(mockStorage, Mockito.times(1)).findMappingByLongUrl(exampleMapping.getLongUrl());
+        verify(mockStorage, Mockito.never()).nextUniqueId();
+        verify(mockStorage, Mockito.never()).insertMapping(any());
+
+        // new url is shortened once, afterwards served from memory
+        val newUrl = "https://example.com/new";
+        val newMapping = new UrlMapping(newUrl, "b");
+        when(mockStorage.findMappingByLongUrl(newUrl)).thenReturn(Optional.empty());
+        when(mockStorage.insertMapping(any())).thenReturn(Optional.of(newMapping));
+        assertEquals(newMapping.getShortUrl(), dedupService.shorten(newUrl).get().getShortUrl());
+        assertEquals(newMapping.getShortUrl(), dedupService.shorten(newUrl).get().getShortUrl());
+        verify(mockStorage, Mockito.times(1)).insertMapping(any());
+    }
+
     @Test
     void testCaching() {
         val exampleMapping = TestHelperUtil.exampleMapping();
@@ -103,12 +225,40 @@ public class ServiceTest {
                 .findMappingByShortUrl(exampleMapping.getShortUrl());
     }
 
+    @Test
+    void testShortUrlsLookedUpBeforeCreationAreNotCachedAsUnknown() {
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(mockStorage.findMappingByShortUrl(exampleMapping.getShortUrl())).thenReturn(Optional.empty());
+        assertTrue(service.getMappedLongUrl(exampleMapping.getShortUrl()).isEmpty());
+
+        when(mockStorage.insertMapping(any())).thenReturn(Optional.of(exampleMapping));
+        when(mockStorage.findMappingByShortUrl(exampleMapping.getShortUrl())).thenReturn(Optional.of(exampleMapping));
+        service.shorten(exampleMapping.getLongUrl());
+        assertEquals(Optional.of(exampleMapping.getLongUrl()), service.getMappedLongUrl(exampleMapping.getShortUrl()));
+
+        // same for batches
+        val batchMapping = new UrlMapping("https://example.com/batch", "b");
+        when(mockStorage.findMappingByShortUrl("b")).thenReturn(Optional.empty());
+        assertTrue(service.getMappedLongUrl("b").isEmpty());
+        when(mockStorage.insertMappings(any())).thenReturn(List.of(Optional.of(batchMapping)));
+        when(mockStorage.findMappingByShortUrl("b")).thenReturn(Optional.of(batchMapping));
+        service.shortenAll(List.of(batchMapping.getLongUrl()));
+        assertEquals(Optional.of(batchMapping.getLongUrl()), service.getMappedLongUrl("b"));
+    }
+
     @EnableCaching
     @TestConfiguration
     public static class CachingTestConfig {
+        @Bean
+        MappingCache mappingCache() {
+            return new MappingCache(TestHelperUtil.mappingCacheConfig());
+        }
+
         @Bean
         CacheManager cacheManager() {
-            return new ConcurrentMapCacheManager("mappings");
+            val cacheManager = new SimpleCacheManager();
+            cacheManager.setCaches(List.of(mappingCache()));
+            return cacheManager;
         }
         @Bean
         @Primary
@@ -116,15 +266,22 @@ public class ServiceTest {
             return Mockito.mock(MongoUrlStorage.class);
         }
 
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
         @Bean
         @Primary
         public ShortenerService shortenerService() {
-            val serviceConfig = new ServiceConfig();
-            serviceConfig.setMaxRetries(3);
+            val metrics = new ShortenerMetrics(meterRegistry());
             return new ShortenerService(
-                    mockStorage(),
+                    new ResilientUrlStorage(mockStorage(), TestHelperUtil.resilienceConfig(), metrics, meterRegistry()),
                     new SequenceMappingStrategy(SequenceMappingConfig.base4()),
-                    serviceConfig
+                    new ServiceConfig(),
+                    metrics,
+                    TestHelperUtil.mappingExpiry(mappingCache()),
+                    mappingCache()
             );
         }
     }
@@ -0,0 +1,47 @@
+package com.bw0248.urlshortener.storage;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BloomFilterTest {
+    private static final int INSERTIONS = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void testNoFalseNegatives() {
+        val filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        IntStream.range(0, INSERTIONS).forEach(i -> filter.put("short" + i));
+        IntStream.range(0, INSERTIONS).forEach(i -> assertTrue(filter.mightContain("short" + i)));
+    }
+
+    @Test
+    void testFalsePositiveRate() {
+        val filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        IntStream.range(0, INSERTIONS).forEach(i -> filter.put("short" + i));
+
+        val falsePositives = IntStream.range(0, INSERTIONS)
+                .filter(i -> filter.mightContain("unknown" + i))
+                .count();
+        val measuredRate = (double) falsePositives / INSERTIONS;
+
+        // allow some slack, measured rate is subject to chance
+        assertTrue(measuredRate < FALSE_POSITIVE_RATE * 1.5, "false positive rate too high: " + measuredRate);
+        assertTrue(filter.expectedFalsePositiveRate() < FALSE_POSITIVE_RATE * 1.5);
+    }
+
+    @Test
+    void testClear() {
+        val filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        filter.put("abc");
+        assertTrue(filter.mightContain("abc"));
+        filter.clear();
+        assertFalse(filter.mightContain("abc"));
+        assertEquals(0, filter.approximateInsertions());
+    }
+}
@@ -0,0 +1,122 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.cache.OffHeapMappingStore;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OffHeapCachingUrlStorageTest {
+    private static final int SEGMENT_SIZE = 4096;
+    private static final SequenceMappingStrategy BASE_4 = new SequenceMappingStrategy(SequenceMappingConfig.base4());
+
+    private UrlStorage mockStorage;
+    private OffHeapMappingStore store;
+    private SimpleMeterRegistry meterRegistry;
+    private OffHeapCachingUrlStorage storage;
+
+    @BeforeEach
+    void beforeEach() {
+        mockStorage = Mockito.mock(UrlStorage.class);
+        store = new OffHeapMappingStore(16 * SEGMENT_SIZE, SEGMENT_SIZE);
+        meterRegistry = new SimpleMeterRegistry();
+        storage = new OffHeapCachingUrlStorage(mockStorage, store, BASE_4, meterRegistry);
+    }
+
+    @Test
+    void testLookupsAreAnsweredFromTheStoreAfterAMiss() {
+        val mapping = new UrlMapping("https://example.com/7", BASE_4.encode(7));
+        when(mockStorage.findMappingByShortUrl(mapping.getShortUrl())).thenReturn(Optional.of(mapping));
+
+        assertEquals(Optional.of(mapping), storage.findMappingByShortUrl(mapping.getShortUrl()));
+        // hits are rebuilt from the store
+        assertEquals(mapping.getLongUrl(), storage.findMappingByShortUrl(mapping.getShortUrl()).get().getLongUrl());
+        verify(mockStorage, times(1)).findMappingByShortUrl(mapping.getShortUrl());
+        assertEquals(1, lookups("hit"));
+        assertEquals(1, lookups("miss"));
+
+        // unknown mappings are not remembered
+        val unknown = BASE_4.encode(8);
+        when(mockStorage.findMappingByShortUrl(unknown)).thenReturn(Optional.empty());
+        assertTrue(storage.findMappingByShortUrl(unknown).isEmpty());
+        assertTrue(storage.findMappingByShortUrl(unknown).isEmpty());
+        verify(mockStorage, times(2)).findMappingByShortUrl(unknown);
+        assertEquals(3, lookups("miss"));
+    }
+
+    @Test
+    void testInsertedMappingsAreAddedToTheStore() {
+        val mapping = new UrlMapping("https://example.com/5", BASE_4.encode(5));
+        when(mockStorage.insertMapping(mapping)).thenReturn(Optional.of(mapping));
+
+        storage.insertMapping(mapping);
+        val found = storage.findMappingByShortUrl(mapping.getShortUrl()).get();
+        assertEquals(mapping.getLongUrl(), found.getLongUrl());
+        assertEquals(mapping.getShortUrl(), found.getShortUrl());
+        verify(mockStorage, Mockito.never()).findMappingByShortUrl(mapping.getShortUrl());
+        assertEquals(1, lookups("hit"));
+    }
+
+    @Test
+    void testExpiringMappingsAreAlwaysLookedUpInTheStorage() {
+        val mapping = new UrlMapping(
+                "https://example.com/3", BASE_4.encode(3), Instant.now().plusSeconds(60));
+        when(mockStorage.insertMapping(mapping)).thenReturn(Optional.of(mapping));
+        when(mockStorage.findMappingByShortUrl(mapping.getShortUrl())).thenReturn(Optional.of(mapping));
+
+        storage.insertMapping(mapping);
+        assertEquals(Optional.of(mapping), storage.findMappingByShortUrl(mapping.getShortUrl()));
+        assertEquals(Optional.of(mapping), storage.findMappingByShortUrl(mapping.getShortUrl()));
+        verify(mockStorage, times(2)).findMappingByShortUrl(mapping.getShortUrl());
+        assertEquals(0, store.size());
+        assertEquals(2, lookups("miss"));
+    }
+
+    @Test
+    void testShortUrlsThatAreNotSequenceMappingsBypassTheStore() {
+        // e.g. a custom short url, not a valid base 4 number
+        val mapping = new UrlMapping("https://example.com/custom", "custom");
+        when(mockStorage.insertMapping(mapping)).thenReturn(Optional.of(mapping));
+        when(mockStorage.findMappingByShortUrl("custom")).thenReturn(Optional.of(mapping));
+
+        storage.insertMapping(mapping);
+        assertEquals(Optional.of(mapping), storage.findMappingByShortUrl("custom"));
+        assertEquals(Optional.of(mapping), storage.findMappingByShortUrl("custom"));
+        verify(mockStorage, times(2)).findMappingByShortUrl("custom");
+        assertEquals(0, store.size());
+        // neither counted as hit nor as miss
+        assertEquals(0, lookups("hit"));
+        assertEquals(0, lookups("miss"));
+    }
+
+    @Test
+    void testDeleteAllMappingsClearsTheStore() {
+        val mapping = new UrlMapping("https://example.com/2", BASE_4.encode(2));
+        when(mockStorage.insertMapping(mapping)).thenReturn(Optional.of(mapping));
+        storage.insertMapping(mapping);
+        assertEquals(1, store.size());
+
+        storage.deleteAllMappings();
+        verify(mockStorage).deleteAllMappings();
+        assertEquals(0, store.size());
+        when(mockStorage.findMappingByShortUrl(mapping.getShortUrl())).thenReturn(Optional.empty());
+        assertTrue(storage.findMappingByShortUrl(mapping.getShortUrl()).isEmpty());
+    }
+
+    private double lookups(final String result) {
+        return meterRegistry.get("shortener.off-heap.lookups").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,118 @@
+package com.bw0248.urlshortener.storage;
+
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.exception.StorageUnavailableException;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import com.bw0248.urlshortener.util.TestHelperUtil;
+import dev.failsafe.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResilientUrlStorageTest {
+    private UrlStorage mockStorage;
+    private SimpleMeterRegistry meterRegistry;
+    private ResilientUrlStorage storage;
+
+    @BeforeEach
+    void beforeEach() {
+        mockStorage = Mockito.mock(UrlStorage.class);
+        meterRegistry = new SimpleMeterRegistry();
+        storage = new ResilientUrlStorage(
+                mockStorage,
+                TestHelperUtil.resilienceConfig(),
+                new ShortenerMetrics(meterRegistry),
+                meterRegistry);
+    }
+
+    @Test
+    void testFailedCallsAreRetried() {
+        val exampleMapping = TestHelperUtil.exampleMapping();
+        when(mockStorage.insertMapping(any()))
+                .thenThrow(new StorageException("db down", null))
+                .thenThrow(new StorageException("db down", null))
+                .thenReturn(Optional.of(exampleMapping));
+        assertEquals(Optional.of(exampleMapping), storage.insertMapping(exampleMapping));
+        assertEquals(2, retries("false"));
+
+        when(mockStorage.findMappingByShortUrl("abc")).thenThrow(new DataAccessResourceFailureException("timeout"));
+        assertThrows(DataAccessResourceFailureException.class, () -> storage.findMappingByShortUrl("abc"));
+        verify(mockStorage, times(4)).findMappingByShortUrl("abc");
+        assertEquals(1, retries("true"));
+
+        // errors that are not storage failures are neither retried nor counted by the breaker
+        when(mockStorage.findMappingByLongUrl("invalid")).thenThrow(new IllegalArgumentException());
+        assertThrows(IllegalArgumentException.class, () -> storage.findMappingByLongUrl("invalid"));
+        verify(mockStorage, times(1)).findMappingByLongUrl("invalid");
+    }
+
+    @Test
+    void testOpenCircuitBreakerRejectsCalls() {
+        when(mockStorage.mappingsCount()).thenThrow(new StorageException("db down", null));
+        // 3 calls with up to 4 failed attempts each exceed minimum calls and failure rate,
+        // retries of the third call are cut short once the breaker opens
+        for (int i = 0; i < 3; i++) {
+            assertThrows(StorageException.class, () -> storage.mappingsCount());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, storage.getCircuitBreaker().getState());
+        assertEquals(1, meterRegistry.get("shortener.storage.circuit-breaker.state").tag("state", "open").gauge().value());
+        verify(mockStorage, times(10)).mappingsCount();
+
+        Mockito.reset(mockStorage);
+        val rejectedBefore = rejected("circuit_open");
+        assertThrows(StorageUnavailableException.class, () -> storage.findMappingByShortUrl("abc"));
+        verify(mockStorage, Mockito.never()).findMappingByShortUrl(any());
+        assertEquals(rejectedBefore + 1, rejected("circuit_open"));
+    }
+
+    @Test
+    void testBulkheadShedsLoad() throws InterruptedException {
+        val release = new CountDownLatch(1);
+        val started = new CountDownLatch(2);
+        when(mockStorage.findMappingByShortUrl(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return Optional.empty();
+        });
+        val executor = Executors.newFixedThreadPool(2);
+        executor.submit(() -> storage.findMappingByShortUrl("a"));
+        executor.submit(() -> storage.findMappingByShortUrl("b"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // both read slots are taken, writes have their own slots
+        assertThrows(StorageUnavailableException.class, () -> storage.findMappingByShortUrl("c"));
+        assertEquals(1, meterRegistry.get("shortener.storage.rejected").tag("reason", "bulkhead_full").tag("path", "read").counter().count());
+        assertEquals(0, meterRegistry.get("shortener.storage.bulkhead.available").tag("path", "read").gauge().value());
+        when(mockStorage.nextUniqueId()).thenReturn(42L);
+        assertEquals(42L, storage.nextUniqueId());
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, meterRegistry.get("shortener.storage.bulkhead.available").tag("path", "read").gauge().value());
+    }
+
+    private double retries(final String exhausted) {
+        return meterRegistry.get("shortener.storage.retries").tag("exhausted", exhausted).counter().count();
+    }
+
+    private double rejected(final String reason) {
+        return meterRegistry.get("shortener.storage.rejected").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,75 @@
+package com.bw0248.urlshortener.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SequenceBlockAllocatorTest {
+
+    @Test
+    void testIdsAreHandedOutFromReservedBlocks() throws InterruptedException {
+        val counter = new AtomicLong();
+        val reservations = new AtomicInteger();
+        val allocator = new SequenceBlockAllocator(
+                n -> {
+                    reservations.incrementAndGet();
+                    return counter.getAndAdd(n);
+                },
+                10,
+                0.2,
+                new SimpleMeterRegistry()
+        );
+
+        for (long expected = 0; expected < 10; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+        // first block reserved synchronously, second one prefetched in the background once threshold was reached
+        for (int i = 0; i < 100 && allocator.headroom() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, allocator.headroom());
+        assertEquals(10, allocator.nextId());
+        assertEquals(2, reservations.get());
+    }
+
+    /**
+     * Test concurrent access - this is non-deterministic, so it's not perfect but a start
+     * @throws InterruptedException
+     */
+    @Test
+    void testConcurrentIdsAreUnique() throws InterruptedException {
+        val counter = new AtomicLong();
+        val allocator = new SequenceBlockAllocator(n -> counter.getAndAdd(n), 16, 0.25, new SimpleMeterRegistry());
+        int numThreads = 20;
+        int idsPerThread = 500;
+        Set<Long> retrievedIds = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch latch = new CountDownLatch(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            executorService.execute(() -> {
+                try {
+                    for (int j = 0; j < idsPerThread; j++) {
+                        retrievedIds.add(allocator.nextId());
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        // any id handed out twice would shrink the set
+        assertEquals(numThreads * idsPerThread, retrievedIds.size());
+        assertTrue(retrievedIds.stream().allMatch(id -> id < counter.get()));
+    }
+}
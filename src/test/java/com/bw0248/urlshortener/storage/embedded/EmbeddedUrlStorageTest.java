@@ -0,0 +1,233 @@
+package com.bw0248.urlshortener.storage.embedded;
+
+import com.bw0248.urlshortener.config.EmbeddedStorageConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.metrics.ShortenerMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmbeddedUrlStorageTest {
+    // small regions so tests cross region boundaries
+    private static final int REGION_SIZE = 4096;
+    private static final long ID_RESERVATION_SIZE = 10;
+
+    @TempDir Path directory;
+    private EmbeddedUrlStorage storage;
+
+    @AfterEach
+    void afterEach() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void testInsertAndFind() {
+        storage = open();
+        IntStream.range(0, 1000).forEach(i -> storage.insertMapping(mapping(i)));
+
+        assertEquals(1000, storage.mappingsCount());
+        assertEquals("https://example.com/42", storage.findMappingByShortUrl("s42").get().getLongUrl());
+        assertEquals("s42", storage.findMappingByLongUrl("https://example.com/42").get().getShortUrl());
+        assertFalse(storage.findMappingByShortUrl("unknown").isPresent());
+        assertFalse(storage.findMappingByLongUrl("https://unknown.com").isPresent());
+        assertThrows(DuplicateShortUrlException.class, () -> storage.insertMapping(new UrlMapping("https://other.com", "s42")));
+        assertEquals(
+                List.of(Optional.empty(), Optional.of("s1000")),
+                storage.insertMappings(List.of(mapping(1), mapping(1000))).stream()
+                        .map(mapping -> mapping.map(UrlMapping::getShortUrl))
+                        .collect(Collectors.toList())
+        );
+    }
+
+    @Test
+    void testPagination() {
+        storage = open();
+        List.of("c", "a", "e", "b", "d").forEach(shortUrl -> storage.insertMapping(new UrlMapping("https://example.com", shortUrl)));
+
+        assertEquals(List.of("a", "b"), shortUrls(storage.findMappings(null, 2)));
+        assertEquals(List.of("c", "d"), shortUrls(storage.findMappings("b", 2)));
+        assertEquals(List.of("e"), shortUrls(storage.findMappings("d", 2)));
+    }
+
+    @Test
+    void testMappingsAndIdsSurviveRestart() throws IOException {
+        storage = open();
+        IntStream.range(0, 100).forEach(i -> storage.insertMapping(mapping(i)));
+        val lastId = storage.reserveUniqueIds(10) + 9;
+        storage.close();
+
+        storage = open();
+        assertEquals(100, storage.mappingsCount());
+        assertEquals("https://example.com/99", storage.findMappingByShortUrl("s99").get().getLongUrl());
+        assertTrue(storage.nextUniqueId() > lastId);
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnRecovery() throws IOException {
+        storage = open();
+        IntStream.range(0, 10).forEach(i -> storage.insertMapping(mapping(i)));
+        val size = storage.streamAllMappings().count();
+        storage.close();
+
+        // simulate crash while appending: record length is written, but body is garbage
+        val logSize = logSize();
+        try (val channel = FileChannel.open(directory.resolve(EmbeddedUrlStorage.LOG_FILE), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(12).putInt(0, 100).putInt(4, 12345), logSize);
+        }
+
+        storage = open();
+        assertEquals(size, storage.mappingsCount());
+        storage.insertMapping(mapping(10));
+        storage.close();
+        storage = open();
+        assertEquals(size + 1, storage.mappingsCount());
+        assertTrue(storage.findMappingByShortUrl("s10").isPresent());
+    }
+
+    @Test
+    void testCompaction() throws IOException {
+        storage = open();
+        IntStream.range(0, 200).forEach(i -> {
+            storage.insertMapping(mapping(i));
+            // superseded reservation records are garbage
+            IntStream.range(0, 5).forEach(j -> storage.reserveUniqueIds(ID_RESERVATION_SIZE));
+        });
+        // expired mappings are dropped
+        val expiresAt = Instant.ofEpochMilli(System.currentTimeMillis() + 60_000);
+        storage.insertMapping(new UrlMapping("https://example.com/expiring", "expiring", expiresAt));
+        storage.insertMapping(new UrlMapping("https://example.com/expired", "expired", Instant.now().minusSeconds(1)));
+        val sizeBefore = Files.size(directory.resolve(EmbeddedUrlStorage.LOG_FILE));
+        val nextId = storage.nextUniqueId();
+
+        storage.compactIfNeeded();
+        assertEquals(201, storage.mappingsCount());
+        assertFalse(storage.findMappingByShortUrl("expired").isPresent());
+        assertEquals(expiresAt, storage.findMappingByShortUrl("expiring").get().getExpiresAt());
+        assertEquals("https://example.com/7", storage.findMappingByShortUrl("s7").get().getLongUrl());
+        assertTrue(storage.nextUniqueId() > nextId);
+        assertFalse(Files.exists(directory.resolve(EmbeddedUrlStorage.LOG_FILE + ".compact")));
+        // live bytes match the compacted log, nothing left to compact
+        val compactedLog = fileKey(EmbeddedUrlStorage.LOG_FILE);
+        storage.compactIfNeeded();
+        assertEquals(compactedLog, fileKey(EmbeddedUrlStorage.LOG_FILE));
+        storage.close();
+
+        assertTrue(Files.size(directory.resolve(EmbeddedUrlStorage.LOG_FILE)) < sizeBefore);
+        storage = open();
+        assertEquals(201, storage.mappingsCount());
+        assertEquals(expiresAt, storage.findMappingByShortUrl("expiring").get().getExpiresAt());
+        assertTrue(storage.nextUniqueId() > nextId);
+    }
+
+    @Test
+    void testSampleMappings() {
+        storage = open();
+        IntStream.range(0, 1000).forEach(i -> storage.insertMapping(mapping(i)));
+
+        val sample = shortUrls(storage.sampleMappings(100));
+        assertEquals(100, sample.size());
+        assertEquals(100, sample.stream().distinct().count());
+        // not just the oldest mappings
+        assertTrue(sample.stream().anyMatch(shortUrl -> Integer.parseInt(shortUrl.substring(1)) >= 100));
+        assertEquals(1000, storage.sampleMappings(2000).size());
+    }
+
+    @Test
+    void testDeleteAllMappings() throws IOException {
+        storage = open();
+        IntStream.range(0, 10).forEach(i -> storage.insertMapping(mapping(i)));
+        val id = storage.nextUniqueId();
+        storage.deleteAllMappings();
+
+        assertEquals(0, storage.mappingsCount());
+        assertFalse(storage.findMappingByShortUrl("s1").isPresent());
+        storage.insertMapping(mapping(1));
+        storage.close();
+
+        storage = open();
+        assertEquals(1, storage.mappingsCount());
+        assertTrue(storage.nextUniqueId() > id);
+    }
+
+    @Test
+    void testReopenWithDifferentRegionSizeKeepsRegionSizeOfLog() throws IOException {
+        storage = open();
+        IntStream.range(0, 1000).forEach(i -> storage.insertMapping(mapping(i)));
+        storage.close();
+
+        val config = config(directory);
+        config.setRegionSize(REGION_SIZE * 2);
+        storage = new EmbeddedUrlStorage(config, new ShortenerMetrics(new SimpleMeterRegistry()));
+        assertEquals(1000, storage.mappingsCount());
+        storage.insertMapping(mapping(1000));
+        storage.close();
+
+        storage = open();
+        assertEquals(1001, storage.mappingsCount());
+        assertEquals("https://example.com/999", storage.findMappingByShortUrl("s999").get().getLongUrl());
+        assertEquals("https://example.com/1000", storage.findMappingByShortUrl("s1000").get().getLongUrl());
+    }
+
+    private EmbeddedUrlStorage open() {
+        try {
+            return new EmbeddedUrlStorage(config(directory), new ShortenerMetrics(new SimpleMeterRegistry()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // offset behind the last record, determined by the end marker
+    private long logSize() throws IOException {
+        val bytes = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(EmbeddedUrlStorage.LOG_FILE)));
+        var offset = MappedLog.HEADER_SIZE;
+        while (bytes.getInt(offset) != 0) {
+            offset += bytes.getInt(offset) == -1
+                    ? REGION_SIZE - offset % REGION_SIZE
+                    : MappedLog.RECORD_HEADER_SIZE + bytes.getInt(offset);
+        }
+        return offset;
+    }
+
+    // identifies the file itself, a rewritten log gets a new one
+    private Object fileKey(final String file) throws IOException {
+        return Files.readAttributes(directory.resolve(file), BasicFileAttributes.class).fileKey();
+    }
+
+    private static UrlMapping mapping(final int i) {
+        return new UrlMapping("https://example.com/" + i, "s" + i);
+    }
+
+    private static List<String> shortUrls(final List<UrlMapping> mappings) {
+        return mappings.stream().map(UrlMapping::getShortUrl).collect(Collectors.toList());
+    }
+
+    private static EmbeddedStorageConfig config(final Path directory) {
+        val config = new EmbeddedStorageConfig();
+        config.setDirectory(directory.toString());
+        config.setRegionSize(REGION_SIZE);
+        config.setIdReservationSize(ID_RESERVATION_SIZE);
+        config.setCompactionThreshold(0.3);
+        return config;
+    }
+}
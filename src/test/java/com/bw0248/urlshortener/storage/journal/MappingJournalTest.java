@@ -0,0 +1,136 @@
+package com.bw0248.urlshortener.storage.journal;
+
+import com.bw0248.urlshortener.config.JournalConfig;
+import com.bw0248.urlshortener.exception.DuplicateShortUrlException;
+import com.bw0248.urlshortener.exception.StorageException;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.storage.UrlStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MappingJournalTest {
+    // small segments so tests rotate
+    private static final long SEGMENT_SIZE = 1024;
+
+    @TempDir Path directory;
+    private UrlStorage mockStorage;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        mockStorage = Mockito.mock(UrlStorage.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(mockStorage.insertMappings(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0))
+                .stream()
+                .map(Optional::of)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testPendingMappingsAreFlushed() throws IOException {
+        val journal = open();
+        IntStream.range(0, 100).forEach(i -> journal.append(mapping(i)));
+
+        assertEquals(100, journal.pendingCount());
+        assertEquals("https://example.com/42", journal.findByShortUrl("s42").get().getLongUrl());
+        assertEquals("s42", journal.findByLongUrl("https://example.com/42").get().getShortUrl());
+        assertThrows(DuplicateShortUrlException.class, () -> journal.append(new UrlMapping("https://other.com", "s42")));
+        verify(mockStorage, never()).insertMappings(anyList());
+        assertTrue(segmentCount() > 1);
+
+        journal.flush();
+        assertEquals(0, journal.pendingCount());
+        assertFalse(journal.findByShortUrl("s42").isPresent());
+        // all rotated segments are flushed and deleted
+        assertEquals(1, segmentCount());
+        journal.close();
+    }
+
+    @Test
+    void testPendingMappingsAreReplayed() throws IOException {
+        val journal = open();
+        IntStream.range(0, 100).forEach(i -> journal.append(mapping(i)));
+        // simulate crash: no flush, no close
+
+        val reopened = open();
+        assertEquals(100, reopened.pendingCount());
+        assertEquals("https://example.com/99", reopened.findByShortUrl("s99").get().getLongUrl());
+        reopened.flush();
+        assertEquals(0, reopened.pendingCount());
+        reopened.close();
+
+        assertEquals(0, open().pendingCount());
+    }
+
+    @Test
+    void testMappingsAreKeptWhileStorageIsUnavailable() throws IOException {
+        val journal = open();
+        IntStream.range(0, 10).forEach(i -> journal.append(mapping(i)));
+        when(mockStorage.insertMappings(anyList())).thenThrow(new StorageException("db down", null));
+        journal.flush();
+        assertEquals(10, journal.pendingCount());
+
+        // rejected mappings are confirmed if they are stored already, e.g. written before a restart
+        doAnswer(invocation -> ((List<?>) invocation.getArgument(0))
+                .stream()
+                .map(mapping -> Optional.empty())
+                .collect(Collectors.toList()))
+                .when(mockStorage).insertMappings(anyList());
+        when(mockStorage.findMappingByShortUrl(any())).thenReturn(Optional.empty());
+        when(mockStorage.findMappingByShortUrl("s3")).thenReturn(Optional.of(mapping(3)));
+        journal.flush();
+        assertEquals(9, journal.pendingCount());
+        assertFalse(journal.findByShortUrl("s3").isPresent());
+        assertEquals(1, meterRegistry.get("shortener.journal.flushed").counter().count());
+
+        // mappings conflicting with a stored one are dropped, but not counted as flushed
+        when(mockStorage.findMappingByShortUrl("s4")).thenReturn(Optional.of(new UrlMapping("https://other.com", "s4")));
+        journal.flush();
+        assertEquals(8, journal.pendingCount());
+        assertFalse(journal.findByShortUrl("s4").isPresent());
+        assertEquals(1, meterRegistry.get("shortener.journal.flushed").counter().count());
+        assertEquals(1, meterRegistry.get("shortener.journal.conflicts").counter().count());
+        journal.close();
+    }
+
+    private MappingJournal open() throws IOException {
+        val config = new JournalConfig();
+        config.setDirectory(directory.toString());
+        config.setSegmentSize(SEGMENT_SIZE);
+        config.setFlushBatchSize(16);
+        return new MappingJournal(mockStorage, config, meterRegistry);
+    }
+
+    private long segmentCount() throws IOException {
+        try (val files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static UrlMapping mapping(final int i) {
+        return new UrlMapping("https://example.com/" + i, "s" + i);
+    }
+}
@@ -0,0 +1,76 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.MongoLayoutConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import lombok.val;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CompactLayoutMigrationTest {
+
+    @Test
+    void testClassicCollectionIsCopiedInBatches() {
+        val ids = List.of(new ObjectId(), new ObjectId(), new ObjectId());
+        val mongoTemplate = Mockito.mock(MongoTemplate.class);
+        val bulk = Mockito.mock(BulkOperations.class);
+        when(bulk.replaceOne(any(), any(), any())).thenReturn(bulk);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CompactUrlMappingDocument.class)).thenReturn(bulk);
+        when(mongoTemplate.find(any(), eq(UrlMappingDocument.class)))
+                .thenReturn(List.of(document(ids.get(0), "b"), document(ids.get(1), "ab")))
+                .thenReturn(List.of(document(ids.get(2), "bab")))
+                .thenReturn(List.of());
+
+        val config = new MongoLayoutConfig();
+        config.setMigrationBatchSize(2);
+        val migration = new CompactLayoutMigration(
+                mongoTemplate, new SequenceMappingStrategy(SequenceMappingConfig.base4()), UrlCodec.disabled(), config);
+        // "ab" does not decode to a sequence id and is skipped
+        assertEquals(2, migration.migrate());
+
+        // keyset pagination by ObjectId
+        val queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(3)).find(queries.capture(), eq(UrlMappingDocument.class));
+        assertEquals(new Document(), queries.getAllValues().get(0).getQueryObject());
+        assertEquals(2, queries.getAllValues().get(0).getLimit());
+        assertEquals(new Document("_id", new Document("$gt", ids.get(1))), queries.getAllValues().get(1).getQueryObject());
+        assertEquals(new Document("_id", new Document("$gt", ids.get(2))), queries.getAllValues().get(2).getQueryObject());
+
+        // idempotent upserts keyed by sequence id
+        val replacements = ArgumentCaptor.forClass(Object.class);
+        verify(bulk, times(2)).replaceOne(any(), replacements.capture(), any());
+        verify(bulk, times(2)).execute();
+        assertEquals(
+                List.of(1L, 17L),
+                replacements.getAllValues().stream()
+                        .map(replacement -> ((CompactUrlMappingDocument) replacement).getId())
+                        .collect(Collectors.toList()));
+    }
+
+    private static UrlMappingDocument document(final ObjectId id, final String shortUrl) {
+        return UrlMappingDocument.builder()
+                .id(id.toHexString())
+                .longUrl("https://example.com/" + shortUrl)
+                .shortUrl(shortUrl)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,58 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import lombok.val;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactMappingLayoutTest {
+    private final CompactMappingLayout layout =
+            new CompactMappingLayout(new SequenceMappingStrategy(SequenceMappingConfig.base4()), UrlCodec.disabled());
+
+    @Test
+    void testDocumentsAreKeyedBySequenceId() {
+        val expiresAt = Instant.now().plus(1, ChronoUnit.DAYS);
+        val mapping = new UrlMapping("https://example.com", "bab", expiresAt);
+        val document = (CompactUrlMappingDocument) layout.toDocument(mapping);
+        assertEquals(17, document.getId());    // "bab" in base 4 (abcd)
+        assertEquals(expiresAt, document.getExpiresAt());
+        val converted = layout.toUrlMapping(document);
+        assertEquals(mapping.getShortUrl(), converted.getShortUrl());
+        assertEquals(mapping.getLongUrl(), converted.getLongUrl());
+        assertEquals(expiresAt, converted.getExpiresAt());
+
+        // short urls that do not decode can not be stored and are not looked up
+        assertThrows(IllegalArgumentException.class, () -> layout.toDocument(new UrlMapping("https://example.com", "ab")));
+        assertEquals(Optional.empty(), layout.byShortUrl("ab"));
+        assertEquals(Optional.empty(), layout.byShortUrl("xyz"));
+        assertFalse(layout.storesShortUrls());
+    }
+
+    @Test
+    void testLookupsUseIdIndex() {
+        assertEquals(new Document("_id", 17L), layout.byShortUrl("bab").orElseThrow().getCriteriaObject());
+        assertEquals(
+                new Document("_id", new Document("$in", List.of(1L, 17L))),
+                layout.byShortUrls(List.of("b", "ab", "bab")).getCriteriaObject());
+
+        val firstPage = layout.page(null, 10);
+        assertTrue(firstPage.getQueryObject().isEmpty());
+        assertEquals(new Document("_id", 1), firstPage.getSortObject());
+        assertEquals(10, firstPage.getLimit());
+        assertEquals(new Document("_id", new Document("$gt", 17L)), layout.page("bab", 10).getQueryObject());
+        assertEquals(new Document("_id", new Document("$exists", false)), layout.page("ab", 10).getQueryObject());
+    }
+}
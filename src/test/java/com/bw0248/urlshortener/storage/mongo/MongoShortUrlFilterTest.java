@@ -0,0 +1,151 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.config.BloomFilterConfig;
+import com.bw0248.urlshortener.config.JournalConfig;
+import com.bw0248.urlshortener.config.SequenceConfig;
+import com.bw0248.urlshortener.config.SequenceMappingConfig;
+import com.bw0248.urlshortener.mapping.SequenceMappingStrategy;
+import com.bw0248.urlshortener.mapping.UrlMappingStrategy;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+// mongo stand-in: a collection of short urls and the shared sequence counter
+public class MongoShortUrlFilterTest {
+    private static final SequenceMappingStrategy BASE_4 = new SequenceMappingStrategy(SequenceMappingConfig.base4());
+
+    private final List<String> shortUrls = new ArrayList<>();
+    private final AtomicLong counter = new AtomicLong();
+
+    @Test
+    void testMissesAreDefiniteOnlyForSequenceIdsReservedBeforeThePreviousRefresh() {
+        create(10);
+        val filter = filter(1, BASE_4, false);
+        // not loaded yet, every lookup has to be checked
+        assertTrue(filter.mightExist("xyz"));
+        filter.initialLoad();
+        // no previous refresh yet, misses are unconfirmed
+        assertTrue(filter.mightExist(BASE_4.encode(9)));
+
+        create(10);
+        filter.refresh();
+        // 9 was reserved before the previous refresh and is not in the filter
+        assertFalse(filter.mightExist(BASE_4.encode(9)));
+        assertTrue(filter.mightExist(BASE_4.encode(4)));
+        assertTrue(filter.mightExist(BASE_4.encode(11)));
+        // created by another instance after the refresh - not picked up yet, must be checked
+        shortUrls.add(BASE_4.encode(counter.getAndIncrement()));
+        assertTrue(filter.mightExist(BASE_4.encode(20)));
+        assertTrue(filter.mightExist(BASE_4.encode(100)));
+        // not a sequence mapping, e.g. created by the random strategy
+        assertTrue(filter.mightExist("xyz"));
+
+        filter.refresh();
+        assertTrue(filter.mightExist(BASE_4.encode(20)));
+        assertFalse(filter.mightExist(BASE_4.encode(11)));
+    }
+
+    @Test
+    void testNoMissIsDefiniteWithBlockAllocation() {
+        create(10);
+        val filter = filter(1000, BASE_4, false);
+        filter.initialLoad();
+        counter.addAndGet(1000);
+        filter.refresh();
+        filter.refresh();
+        assertTrue(filter.mightExist(BASE_4.encode(9)));
+        assertTrue(filter.mightExist(BASE_4.encode(5)));
+    }
+
+    @Test
+    void testNoMissIsDefiniteWithOtherMappingStrategies() {
+        create(10);
+        // e.g. random codes, which decode to arbitrary sequence ids
+        val filter = filter(1, (url, sequence) -> "random", false);
+        filter.initialLoad();
+        counter.addAndGet(10);
+        filter.refresh();
+        filter.refresh();
+        assertTrue(filter.mightExist(BASE_4.encode(9)));
+        assertTrue(filter.mightExist(BASE_4.encode(5)));
+    }
+
+    @Test
+    void testNoMissIsDefiniteWithTheJournalEnabled() {
+        create(10);
+        val filter = filter(1, BASE_4, true);
+        filter.initialLoad();
+        // reserved by another instance at shorten, still in its journal
+        val journaled = counter.getAndIncrement();
+        filter.refresh();
+        filter.refresh();
+        assertTrue(filter.mightExist(BASE_4.encode(journaled)));
+        // the journal is flushed after the refresh
+        shortUrls.add(BASE_4.encode(journaled));
+        assertTrue(filter.mightExist(BASE_4.encode(journaled)));
+        assertTrue(filter.mightExist(BASE_4.encode(9)));
+    }
+
+    // ids 0 .. n - 1 of the counter are reserved, only even ones are inserted
+    private void create(final int n) {
+        for (int i = 0; i < n; i++) {
+            val id = counter.getAndIncrement();
+            if (id % 2 == 0) {
+                shortUrls.add(BASE_4.encode(id));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoShortUrlFilter filter(
+            final int blockSize, final UrlMappingStrategy activeMapping, final boolean journalEnabled) {
+        val mongoTemplate = Mockito.mock(MongoTemplate.class, Mockito.RETURNS_DEEP_STUBS);
+        val documents = (FindIterable<Document>) Mockito.mock(FindIterable.class);
+        when(mongoTemplate.getCollection(any()).find(any(Bson.class)).projection(any()).batchSize(anyInt()))
+                .thenReturn(documents);
+        // refreshes pick up all short urls again, the filter does not mind
+        when(documents.iterator()).thenAnswer(invocation -> {
+            val iterator = List.copyOf(shortUrls).iterator();
+            val cursor = (MongoCursor<Document>) Mockito.mock(MongoCursor.class);
+            when(cursor.hasNext()).thenAnswer(call -> iterator.hasNext());
+            when(cursor.next()).thenAnswer(call -> new Document(UrlMappingDocument.SHORT_URL, iterator.next()));
+            return cursor;
+        });
+        when(mongoTemplate.findOne(any(Query.class), eq(SequenceDocument.class)))
+                .thenAnswer(invocation -> SequenceDocument.builder().id(counter.get()).build());
+
+        val layout = Mockito.mock(MongoMappingLayout.class);
+        when(layout.storesShortUrls()).thenReturn(true);
+        val config = new BloomFilterConfig();
+        config.setEnabled(true);
+        config.setExpectedInsertions(1000);
+        config.setFalsePositiveRate(0.0001);
+        val sequenceConfig = new SequenceConfig();
+        sequenceConfig.setBlockSize(blockSize);
+        val activeMappingProvider = (ObjectProvider<UrlMappingStrategy>) Mockito.mock(ObjectProvider.class);
+        when(activeMappingProvider.getObject()).thenReturn(activeMapping);
+        val journalConfig = new JournalConfig();
+        journalConfig.setEnabled(journalEnabled);
+        return new MongoShortUrlFilter(mongoTemplate, layout, config, BASE_4, activeMappingProvider, sequenceConfig,
+                journalConfig, new SimpleMeterRegistry());
+    }
+}
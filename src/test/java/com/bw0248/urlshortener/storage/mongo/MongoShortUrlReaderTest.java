@@ -0,0 +1,137 @@
+package com.bw0248.urlshortener.storage.mongo;
+
+import com.bw0248.urlshortener.codec.UrlCodec;
+import com.bw0248.urlshortener.config.MongoReadConfig;
+import com.bw0248.urlshortener.mapping.UrlMapping;
+import com.bw0248.urlshortener.util.TestHelperUtil;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.ReadPreference;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// replica set stand-in: reads per read preference answer after a configured delay, with a configured result
+public class MongoShortUrlReaderTest {
+    private static final UrlMapping MAPPING = TestHelperUtil.exampleMapping();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<ReadPreference, Node> nodes = new ConcurrentHashMap<>();
+    private MongoShortUrlReader reader;
+
+    private static class Node {
+        private final Duration delay;
+        private final Optional<UrlMapping> mapping;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private Node(final Duration delay, final Optional<UrlMapping> mapping) {
+            this.delay = delay;
+            this.mapping = mapping;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        reader.close();
+    }
+
+    @Test
+    void testMissOnSecondaryFallsBackToPrimary() {
+        reader = reader("secondaryPreferred", false);
+        nodes.put(ReadPreference.secondaryPreferred(), new Node(Duration.ZERO, Optional.empty()));
+        nodes.put(ReadPreference.primary(), new Node(Duration.ZERO, Optional.of(MAPPING)));
+
+        assertEquals(Optional.of(MAPPING), reader.findByShortUrl(MAPPING.getShortUrl()));
+        assertEquals(1, nodes.get(ReadPreference.primary()).reads.get());
+        assertEquals(1, meterRegistry.get("shortener.mongo.reads.primary-fallbacks").counter().count());
+
+        // replicated mappings are answered by secondaries alone
+        nodes.put(ReadPreference.secondaryPreferred(), new Node(Duration.ZERO, Optional.of(MAPPING)));
+        assertEquals(Optional.of(MAPPING), reader.findByShortUrl(MAPPING.getShortUrl()));
+        assertEquals(1, nodes.get(ReadPreference.primary()).reads.get());
+    }
+
+    @Test
+    void testSlowReadIsHedged() {
+        reader = reader("primary", true);
+        nodes.put(ReadPreference.primary(), new Node(Duration.ofSeconds(2), Optional.of(MAPPING)));
+        nodes.put(ReadPreference.nearest(), new Node(Duration.ZERO, Optional.of(MAPPING)));
+
+        val startedAt = System.nanoTime();
+        assertEquals(Optional.of(MAPPING), reader.findByShortUrl(MAPPING.getShortUrl()));
+        assertTrue(Duration.ofNanos(System.nanoTime() - startedAt).compareTo(Duration.ofSeconds(1)) < 0);
+        assertEquals(1, meterRegistry.get("shortener.mongo.reads.hedged").counter().count());
+        assertEquals(1, meterRegistry.get("shortener.mongo.reads.hedge-wins").counter().count());
+
+        // fast reads are not hedged
+        nodes.put(ReadPreference.primary(), new Node(Duration.ZERO, Optional.of(MAPPING)));
+        assertEquals(Optional.of(MAPPING), reader.findByShortUrl(MAPPING.getShortUrl()));
+        assertEquals(1, nodes.get(ReadPreference.nearest()).reads.get());
+    }
+
+    @Test
+    void testFailedHedgeWaitsForFirstRead() {
+        reader = reader("primary", true);
+        nodes.put(ReadPreference.primary(), new Node(Duration.ofMillis(200), Optional.empty()));
+        nodes.put(ReadPreference.nearest(), new Node(Duration.ZERO, null));  // fails
+
+        assertFalse(reader.findByShortUrl(MAPPING.getShortUrl()).isPresent());
+        assertEquals(0, meterRegistry.get("shortener.mongo.reads.hedge-wins").counter().count());
+
+        // failure of the first read is reported
+        nodes.put(ReadPreference.primary(), new Node(Duration.ZERO, null));
+        assertThrows(MongoTimeoutException.class, () -> reader.findByShortUrl(MAPPING.getShortUrl()));
+    }
+
+    @Test
+    void testMissOfHedgeOnSecondaryWaitsForFirstRead() {
+        reader = reader("primary", true);
+        // mapping is not replicated to the node read by the hedge yet
+        nodes.put(ReadPreference.primary(), new Node(Duration.ofMillis(200), Optional.of(MAPPING)));
+        nodes.put(ReadPreference.nearest(), new Node(Duration.ZERO, Optional.empty()));
+
+        assertEquals(Optional.of(MAPPING), reader.findByShortUrl(MAPPING.getShortUrl()));
+        assertEquals(1, nodes.get(ReadPreference.nearest()).reads.get());
+        assertEquals(0, meterRegistry.get("shortener.mongo.reads.hedge-wins").counter().count());
+    }
+
+    private MongoShortUrlReader reader(final String readPreference, final boolean hedge) {
+        val config = new MongoReadConfig();
+        config.setReadPreference(readPreference);
+        config.setHedgeEnabled(hedge);
+        config.setHedgeReadPreference("nearest");
+        config.setHedgePercentile(0.95);
+        config.setHedgeMinDelay(Duration.ofMillis(20));
+        config.setHedgeMaxDelay(Duration.ofMillis(20));
+        config.setHedgeMaxConcurrent(4);
+        return new MongoShortUrlReader(Mockito.mock(MongoTemplate.class), new ClassicMappingLayout(UrlCodec.disabled()), config, meterRegistry) {
+            @Override
+            Optional<UrlMapping> read(final ReadPreference readPreference, final String shortUrl) {
+                val node = nodes.get(readPreference);
+                node.reads.incrementAndGet();
+                try {
+                    Thread.sleep(node.delay.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (node.mapping == null) {
+                    throw new MongoTimeoutException("node not reachable");
+                }
+                return node.mapping;
+            }
+        };
+    }
+}
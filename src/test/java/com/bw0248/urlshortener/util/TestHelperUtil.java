@@ -1,9 +1,58 @@
 package com.bw0248.urlshortener.util;
 
+import com.bw0248.urlshortener.cache.MappingCache;
+import com.bw0248.urlshortener.cache.MappingExpiry;
+import com.bw0248.urlshortener.config.ExpiryConfig;
+import com.bw0248.urlshortener.config.MappingCacheConfig;
+import com.bw0248.urlshortener.config.ResilienceConfig;
 import com.bw0248.urlshortener.mapping.UrlMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+
+import java.time.Duration;
 
 public class TestHelperUtil {
     public static UrlMapping exampleMapping() {
         return new UrlMapping("example.com", "abc");
     }
+
+    // short delays, breaker opens after 10 calls with at least 50% failures
+    public static ResilienceConfig resilienceConfig() {
+        val config = new ResilienceConfig();
+        config.setMaxRetries(3);
+        config.setRetryDelay(Duration.ofMillis(1));
+        config.setRetryMaxDelay(Duration.ofMillis(10));
+        config.setRetryJitter(0.5);
+        config.setFailureRateThreshold(50);
+        config.setMinimumCalls(10);
+        config.setFailurePeriod(Duration.ofMinutes(1));
+        config.setOpenDuration(Duration.ofMinutes(1));
+        config.setHalfOpenCalls(1);
+        config.setMaxConcurrentReads(2);
+        config.setMaxConcurrentWrites(2);
+        config.setMaxWait(Duration.ofMillis(10));
+        return config;
+    }
+
+    public static MappingCacheConfig mappingCacheConfig() {
+        val config = new MappingCacheConfig();
+        config.setMaxSize(100);
+        config.setExpireAfterAccess(Duration.ofMinutes(10));
+        config.setExpireAfterWrite(Duration.ZERO);
+        config.setNegativeTtl(Duration.ofSeconds(30));
+        config.setNegativeMaxSize(100);
+        return config;
+    }
+
+    public static ExpiryConfig expiryConfig() {
+        val config = new ExpiryConfig();
+        config.setTickMs(10);
+        config.setGoneTtl(Duration.ofMinutes(1));
+        config.setGoneMaxSize(100);
+        return config;
+    }
+
+    public static MappingExpiry mappingExpiry(final MappingCache cache) {
+        return new MappingExpiry(cache, expiryConfig(), new SimpleMeterRegistry());
+    }
 }